@@ -0,0 +1,408 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Arrays;
+
+/**
+ * Least recently used cache for more than {@code Integer.MAX_VALUE} entries.
+ * <p/>
+ * Unlike {@link LruHashCache}, the hashtable is not a single array but
+ * a list of fixed size chunks, and all sizes and counts are {@code long}s.
+ * The table grows with linear hashing: one bucket is split every time the
+ * load factor is exceeded, so the table grows by a single bucket at a time,
+ * by adding a chunk when needed, and nothing is ever copied or rehashed as
+ * a whole. The least recently used order is kept by links inside the entries
+ * themselves, which saves a node object per entry.
+ * <p/>
+ * Hash codes have only 32 bits, so beyond about 4 billion entries hash
+ * collisions make the chains grow longer.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BigLruHashCache<K, V> implements Cache<K, V> {
+
+    /**
+     * Entry of the hashtable and of the lru list.
+     */
+    static final class Entry<K, V> {
+        final K key;
+        V value;
+        final long hash;
+
+        /** The next entry of the bucket. */
+        Entry<K, V> next;
+
+        /** The neighbours in the lru list. */
+        Entry<K, V> before;
+        Entry<K, V> after;
+
+        Entry(K key, V value, long hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+    }
+
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final float DEFAULT_LOAD_FACTOR = 0.75F;
+
+    private final long size;
+    private final float loadFactor;
+
+    private Entry<K, V>[][] chunks;
+
+    /** The number of buckets is {@code 2^level + splitIndex}. */
+    private int level;
+
+    /** The next bucket to split. */
+    private long splitIndex;
+    private long bucketCount;
+
+    /** The sentinel of the lru list; its {@code after} is the eldest entry. */
+    private final Entry<K, V> header = new Entry<K, V>(null, null, 0);
+    private long entryCount;
+
+    private long hitCount;
+    private long lookupCount;
+
+    /**
+     * Creates a new cache.
+     * 
+     * @param size the maximum number of entries
+     * @param loadFactor the maximum average number of entries per bucket
+     * @throws IllegalArgumentException if the size or the load factor is
+     * not positive
+     */
+    public BigLruHashCache(long size, float loadFactor) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Illegal size: "+size);
+        }
+        if (!(loadFactor > 0)) {
+            throw new IllegalArgumentException("Illegal load factor: "+loadFactor);
+        }
+        this.size = size;
+        this.loadFactor = loadFactor;
+        clear();
+    }
+
+    /**
+     * Creates a new cache with the default load factor (0.75).
+     * 
+     * @param size the maximum number of entries
+     */
+    public BigLruHashCache(long size) {
+        this(size, DEFAULT_LOAD_FACTOR);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getNumberOfEntries() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the current number of buckets.
+     * 
+     * @return the number of buckets
+     */
+    long getNumberOfBuckets() {
+        return bucketCount;
+    }
+
+    @Override
+    public V lookUp(K key) {
+        lookupCount++;
+        Entry<K, V> entry = find(key, hash(key));
+        if (entry == null) {
+            return null;
+        }
+        hitCount++;
+        moveToBack(entry);
+        return entry.value;
+    }
+
+    @Override
+    public void store(K key, V value) {
+        long hash = hash(key);
+        Entry<K, V> entry = find(key, hash);
+        if (entry != null) {
+            entry.value = value;
+            moveToBack(entry);
+        } else {
+            insert(key, value, hash);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        long hash = hash(key);
+        long bucket = bucketOf(hash);
+        Entry<K, V> previous = null;
+        for (Entry<K, V> e = bucket(bucket); e != null; previous = e, e = e.next) {
+            if (e.hash == hash && e.key.equals(key)) {
+                unlink(bucket, previous, e);
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V storeIfAbsent(K key, V value) {
+        long hash = hash(key);
+        Entry<K, V> entry = find(key, hash);
+        if (entry != null) {
+            moveToBack(entry);
+            return entry.value;
+        }
+        insert(key, value, hash);
+        return null;
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        Entry<K, V> entry = find(key, hash(key));
+        if (entry == null || !(expected == null
+                ? entry.value == null
+                : expected.equals(entry.value))) {
+            return false;
+        }
+        entry.value = newValue;
+        moveToBack(entry);
+        return true;
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        long hash = hash(key);
+        long bucket = bucketOf(hash);
+        Entry<K, V> previous = null;
+        Entry<K, V> entry = bucket(bucket);
+        while (entry != null && !(entry.hash == hash && entry.key.equals(key))) {
+            previous = entry;
+            entry = entry.next;
+        }
+
+        V newValue = computation.compute(key, entry == null ? null : entry.value);
+        if (newValue == null) {
+            if (entry != null) {
+                unlink(bucket, previous, entry);
+            }
+        } else if (entry != null) {
+            entry.value = newValue;
+            moveToBack(entry);
+        } else {
+            insert(key, newValue, hash);
+        }
+        return newValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The table is dropped as a whole and starts growing again from
+     * a single chunk.
+     */
+    @Override
+    public void invalidateAll() {
+        clear();
+    }
+
+    public double getHitRatio() {
+        return hitCount / (double) lookupCount;
+    }
+
+    public long getHits() {
+        return hitCount;
+    }
+
+    public long getMisses() {
+        return lookupCount - hitCount;
+    }
+
+    public long getNumberOfLookUps() {
+        return lookupCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void clear() {
+        chunks = (Entry<K, V>[][]) new Entry<?, ?>[1][CHUNK_SIZE];
+        level = CHUNK_BITS;
+        splitIndex = 0;
+        bucketCount = CHUNK_SIZE;
+        header.before = header;
+        header.after = header;
+        entryCount = 0;
+    }
+
+    private Entry<K, V> find(K key, long hash) {
+        for (Entry<K, V> e = bucket(bucketOf(hash)); e != null; e = e.next) {
+            if (e.hash == hash && e.key.equals(key)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private void insert(K key, V value, long hash) {
+        Entry<K, V> entry = new Entry<K, V>(key, value, hash);
+        long bucket = bucketOf(hash);
+        entry.next = bucket(bucket);
+        setBucket(bucket, entry);
+        // link as the most recently used
+        entry.before = header.before;
+        entry.after = header;
+        header.before.after = entry;
+        header.before = entry;
+        entryCount++;
+
+        if (entryCount > size) {
+            Entry<K, V> eldest = header.after;
+            unlink(bucketOf(eldest.hash), null, eldest);
+        } else {
+            while (entryCount > (double) loadFactor * bucketCount) {
+                split();
+            }
+        }
+    }
+
+    /**
+     * Removes the given entry from its bucket and from the lru list.
+     * 
+     * @param bucket the bucket of the entry
+     * @param previous the entry before the given one in the bucket or
+     * {@code null} if unknown
+     * @param entry the entry to remove
+     */
+    private void unlink(long bucket, Entry<K, V> previous, Entry<K, V> entry) {
+        if (previous == null) {
+            Entry<K, V> first = bucket(bucket);
+            if (first == entry) {
+                setBucket(bucket, entry.next);
+            } else {
+                previous = first;
+                while (previous.next != entry) {
+                    previous = previous.next;
+                }
+            }
+        }
+        if (previous != null) {
+            previous.next = entry.next;
+        }
+        entry.next = null;
+        entry.before.after = entry.after;
+        entry.after.before = entry.before;
+        entry.before = null;
+        entry.after = null;
+        entryCount--;
+    }
+
+    private void moveToBack(Entry<K, V> entry) {
+        if (entry.after == header) {
+            return;
+        }
+        entry.before.after = entry.after;
+        entry.after.before = entry.before;
+        entry.before = header.before;
+        entry.after = header;
+        header.before.after = entry;
+        header.before = entry;
+    }
+
+    /**
+     * Adds a bucket by splitting the entries of the next bucket to split
+     * between it and the new one.
+     */
+    private void split() {
+        long newBucket = bucketCount;
+        int chunk = (int) (newBucket >>> CHUNK_BITS);
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = newChunk();
+        }
+
+        long highBit = 1L << level;
+        Entry<K, V> e = bucket(splitIndex);
+        Entry<K, V> stay = null;
+        Entry<K, V> move = null;
+        while (e != null) {
+            Entry<K, V> next = e.next;
+            if ((e.hash & highBit) == 0) {
+                e.next = stay;
+                stay = e;
+            } else {
+                e.next = move;
+                move = e;
+            }
+            e = next;
+        }
+        setBucket(splitIndex, stay);
+        setBucket(newBucket, move);
+
+        bucketCount++;
+        if (++splitIndex == highBit) {
+            level++;
+            splitIndex = 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<K, V>[] newChunk() {
+        return (Entry<K, V>[]) new Entry<?, ?>[CHUNK_SIZE];
+    }
+
+    private long bucketOf(long hash) {
+        long bucket = hash & ((1L << level) - 1);
+        if (bucket < splitIndex) {
+            // already split: use one more bit
+            bucket = hash & ((1L << (level + 1)) - 1);
+        }
+        return bucket;
+    }
+
+    private Entry<K, V> bucket(long bucket) {
+        return chunks[(int) (bucket >>> CHUNK_BITS)][(int) bucket & CHUNK_MASK];
+    }
+
+    private void setBucket(long bucket, Entry<K, V> entry) {
+        chunks[(int) (bucket >>> CHUNK_BITS)][(int) bucket & CHUNK_MASK] = entry;
+    }
+
+    /**
+     * Spreads the hash code of the key over 64 bits, since the table may
+     * have more than 2<sup>32</sup> buckets.
+     */
+    private static long hash(Object key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h & Long.MAX_VALUE;
+    }
+}
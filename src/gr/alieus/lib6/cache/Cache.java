@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Key-value store of limited size.
+ * A cache may drop any of its entries at any time (e.g. to free space for
+ * new ones), so a key that was stored may later not be found.
+ * <p/>
+ * {@code null} values are treated as absent by the conditional operations
+ * and should not be stored.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see LruHashCache
+ */
+public interface Cache<K, V> {
+
+    /**
+     * Returns the value cached for the given key.
+     * 
+     * @param key the key to look up
+     * @return the value of {@code key} or {@code null} if it is not cached
+     */
+    V lookUp(K key);
+
+    /**
+     * Caches the given value for the given key.
+     * Any value already cached for the key is replaced.
+     * 
+     * @param key the key
+     * @param value the value of {@code key}
+     */
+    void store(K key, V value);
+
+    /**
+     * Removes the given key from the cache.
+     * 
+     * @param key the key to remove
+     * @return the value that was cached for {@code key} or {@code null}
+     */
+    V remove(K key);
+
+    /**
+     * Caches the given value only if the given key is not already cached.
+     * 
+     * @param key the key
+     * @param value the value to cache if {@code key} is not cached
+     * @return the value already cached for {@code key} or {@code null} if the
+     * given value was stored
+     */
+    V storeIfAbsent(K key, V value);
+
+    /**
+     * Replaces the value of the given key only if it is currently equal to
+     * the expected one.
+     * 
+     * @param key the key
+     * @param expected the value {@code key} is expected to have
+     * @param newValue the new value of {@code key}
+     * @return {@code true} if the value was replaced
+     */
+    boolean replace(K key, V expected, V newValue);
+
+    /**
+     * Computes a new value for the given key from its current one.
+     * The current value is {@code null} if the key is not cached.
+     * If the computed value is {@code null} the key is removed,
+     * otherwise the computed value is stored.
+     * 
+     * @param key the key
+     * @param computation computes the new value of {@code key}
+     * @return the computed value
+     */
+    V compute(K key, Computation<? super K, V> computation);
+
+    /**
+     * Removes all the entries of the cache.
+     * Implementations may reclaim the space of the removed entries lazily.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Loads the values of keys missing from a cache from their origin.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see LoadingCache
+ */
+public interface CacheLoader<K, V> {
+
+    /**
+     * Loads the value of the given key.
+     * 
+     * @param key the key to load
+     * @return the value of {@code key} or {@code null} if the key does not
+     * exist at the origin
+     */
+    V load(K key);
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Common operations over caches.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class CacheUtil {
+    private CacheUtil() {}
+
+    /**
+     * Returns a thread safe cache backed by the given cache.
+     * Every operation of the returned cache, including the conditional ones
+     * and {@code compute}, is performed atomically while holding the monitor
+     * of the returned cache. The computation of {@code compute} runs while
+     * the monitor is held, so it should be short and must not access the cache.
+     * <p/>
+     * The given cache must not be accessed directly afterwards.
+     * 
+     * @param cache the cache to synchronize
+     * @return a thread safe view of the given cache
+     */
+    public static <K, V> Cache<K, V> synchronizedCache(Cache<K, V> cache) {
+        return new SynchronizedCache<K, V>(cache);
+    }
+
+    /**
+     * Returns a cache backed by the given cache that records the key of
+     * every lookup in the given tracker.
+     * The returned cache is thread safe if the given cache is.
+     * 
+     * @param cache the cache whose lookups to track
+     * @param tracker the tracker of the hot keys
+     * @return a view of the given cache feeding the tracker
+     */
+    public static <K, V> Cache<K, V> tracking(Cache<K, V> cache, HotKeyTracker<? super K> tracker) {
+        return new TrackingCache<K, V>(cache, tracker);
+    }
+
+    private static class TrackingCache<K, V> implements Cache<K, V> {
+
+        private final Cache<K, V> cache;
+        private final HotKeyTracker<? super K> tracker;
+
+        TrackingCache(Cache<K, V> cache, HotKeyTracker<? super K> tracker) {
+            this.cache = cache;
+            this.tracker = tracker;
+        }
+
+        @Override
+        public V lookUp(K key) {
+            tracker.record(key);
+            return cache.lookUp(key);
+        }
+
+        @Override
+        public void store(K key, V value) {
+            cache.store(key, value);
+        }
+
+        @Override
+        public V remove(K key) {
+            return cache.remove(key);
+        }
+
+        @Override
+        public V storeIfAbsent(K key, V value) {
+            return cache.storeIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean replace(K key, V expected, V newValue) {
+            return cache.replace(key, expected, newValue);
+        }
+
+        @Override
+        public V compute(K key, Computation<? super K, V> computation) {
+            return cache.compute(key, computation);
+        }
+
+        @Override
+        public void invalidateAll() {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public String toString() {
+            return cache.toString();
+        }
+    }
+
+    private static class SynchronizedCache<K, V> implements Cache<K, V> {
+
+        private final Cache<K, V> cache;
+
+        SynchronizedCache(Cache<K, V> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public synchronized V lookUp(K key) {
+            return cache.lookUp(key);
+        }
+
+        @Override
+        public synchronized void store(K key, V value) {
+            cache.store(key, value);
+        }
+
+        @Override
+        public synchronized V remove(K key) {
+            return cache.remove(key);
+        }
+
+        @Override
+        public synchronized V storeIfAbsent(K key, V value) {
+            return cache.storeIfAbsent(key, value);
+        }
+
+        @Override
+        public synchronized boolean replace(K key, V expected, V newValue) {
+            return cache.replace(key, expected, newValue);
+        }
+
+        @Override
+        public synchronized V compute(K key, Computation<? super K, V> computation) {
+            return cache.compute(key, computation);
+        }
+
+        @Override
+        public synchronized void invalidateAll() {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return cache.toString();
+        }
+    }
+}
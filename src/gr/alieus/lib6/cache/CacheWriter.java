@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Map;
+
+/**
+ * The store behind a write-behind cache.
+ * Receives the entries modified in the cache in batches.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see WriteBehindCache
+ */
+public interface CacheWriter<K, V> {
+
+    /**
+     * Writes the given entries to the backing store.
+     * The given map holds only the latest value of each key and must not
+     * be retained after this method returns.
+     * If this method throws, none of the entries is considered written
+     * and the cache will try to write them again on the next flush.
+     * 
+     * @param entries the entries to write
+     */
+    void writeAll(Map<? extends K, ? extends V> entries);
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import gr.alieus.lib6.io.BinaryCodec;
+import gr.alieus.lib6.io.CompressionCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cache that keeps large values compressed.
+ * <p/>
+ * Values whose binary form is at least {@code threshold} bytes long are
+ * compressed when stored, unless compression does not make them smaller.
+ * Smaller values are kept as they are. The cache is limited by the total
+ * size of its values: the compressed size for compressed values and the
+ * size of the binary form for the rest.
+ * <p/>
+ * Compressed values are decompressed on every lookup. Optionally,
+ * the decompressed values of the most recently looked up keys are kept in
+ * a small hot set, so that the hottest keys are not decompressed again.
+ * Values in the hot set are not counted in the total size.
+ * <p/>
+ * Values should be immutable: small values are kept as they are, and
+ * decompressed values are shared by the lookups served from the hot set.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class CompressingCache<K, V> implements Cache<K, V> {
+
+    /**
+     * A compressed value.
+     */
+    static final class Compressed {
+        final byte[] data;
+
+        /** The size of the uncompressed binary form. */
+        final int length;
+
+        Compressed(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A decompressed value of the hot set.
+     */
+    static final class Decompressed<V> {
+
+        /** The compressed value this value was decompressed from. */
+        final Compressed source;
+        final V value;
+
+        Decompressed(Compressed source, V value) {
+            this.source = source;
+            this.value = value;
+        }
+    }
+
+    /** Holds either values or {@code Compressed} values. */
+    private final LruHashCache<K, Object> cache;
+    private final LruHashCache<K, Decompressed<V>> hotSet;
+    private final BinaryCodec<V> codec;
+    private final CompressionCodec compression;
+    private final int threshold;
+
+    private long decompressionCount;
+
+    /**
+     * Creates a new compressing cache.
+     * 
+     * @param size the maximum number of entries
+     * @param maxBytes the maximum total size of the values
+     * @param codec converts values to and from binary form
+     * @param compression compresses the binary forms
+     * @param threshold the minimum size of the binary form of a value for
+     * it to be compressed
+     * @param hotSetSize the number of decompressed values to keep, 0 for none
+     */
+    public CompressingCache(int size, long maxBytes, final BinaryCodec<V> codec,
+            CompressionCodec compression, int threshold, int hotSetSize) {
+        this.codec = codec;
+        this.compression = compression;
+        this.threshold = threshold;
+        this.cache = new LruHashCache<K, Object>(size, maxBytes, new Weigher<K, Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public int weigh(K key, Object value) {
+                return value instanceof Compressed
+                        ? ((Compressed) value).data.length
+                        : codec.sizeOf((V) value);
+            }
+        });
+        this.hotSet = hotSetSize > 0 ? new LruHashCache<K, Decompressed<V>>(hotSetSize) : null;
+    }
+
+    @Override
+    public V lookUp(K key) {
+        Object stored = cache.lookUp(key);
+        return stored == null ? null : decode(key, stored);
+    }
+
+    @Override
+    public void store(K key, V value) {
+        cache.store(key, encode(value));
+    }
+
+    @Override
+    public V remove(K key) {
+        Object stored = cache.remove(key);
+        if (stored == null) {
+            return null;
+        }
+        V value = decode(key, stored);
+        if (hotSet != null) {
+            hotSet.remove(key);
+        }
+        return value;
+    }
+
+    @Override
+    public V storeIfAbsent(K key, final V value) {
+        final Object[] existing = new Object[1];
+        cache.compute(key, new Computation<K, Object>() {
+            @Override
+            public Object compute(K key, Object stored) {
+                if (stored != null) {
+                    existing[0] = decode(key, stored);
+                    return stored;
+                }
+                return encode(value);
+            }
+        });
+        return cast(existing[0]);
+    }
+
+    @Override
+    public boolean replace(K key, final V expected, final V newValue) {
+        final boolean[] replaced = new boolean[1];
+        cache.compute(key, new Computation<K, Object>() {
+            @Override
+            public Object compute(K key, Object stored) {
+                if (stored == null) {
+                    return null;
+                }
+                V current = decode(key, stored);
+                if (expected == null ? current != null : !expected.equals(current)) {
+                    return stored;
+                }
+                replaced[0] = true;
+                return encode(newValue);
+            }
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public V compute(K key, final Computation<? super K, V> computation) {
+        final Object[] result = new Object[1];
+        cache.compute(key, new Computation<K, Object>() {
+            @Override
+            public Object compute(K key, Object stored) {
+                V newValue = computation.compute(key, stored == null ? null : decode(key, stored));
+                result[0] = newValue;
+                return newValue == null ? null : encode(newValue);
+            }
+        });
+        return cast(result[0]);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+        if (hotSet != null) {
+            hotSet.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the total size of the values.
+     * 
+     * @return the number of bytes the values take up
+     */
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    public int getNumberOfEntries() {
+        return cache.getNumberOfEntries();
+    }
+
+    /**
+     * Returns the number of lookups that decompressed a value.
+     * 
+     * @return the number of decompressions
+     */
+    public long getNumberOfDecompressions() {
+        return decompressionCount;
+    }
+
+    private Object encode(V value) {
+        int length = codec.sizeOf(value);
+        if (length < threshold) {
+            return value;
+        }
+        byte[] binary = new byte[length];
+        codec.write(value, ByteBuffer.wrap(binary));
+        byte[] compressed = compression.compress(binary, 0, length);
+        if (compressed.length >= length) {
+            return value; // incompressible
+        }
+        return new Compressed(compressed, length);
+    }
+
+    private V decode(K key, Object stored) {
+        if (!(stored instanceof Compressed)) {
+            return cast(stored);
+        }
+        Compressed c = (Compressed) stored;
+        if (hotSet != null) {
+            Decompressed<V> hot = hotSet.lookUp(key);
+            if (hot != null && hot.source == c) {
+                return hot.value;
+            }
+        }
+        decompressionCount++;
+        byte[] binary = compression.decompress(c.data, c.length);
+        V value = codec.read(ByteBuffer.wrap(binary), c.length);
+        if (hotSet != null) {
+            hotSet.store(key, new Decompressed<V>(c, value));
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(Object value) {
+        return (V) value;
+    }
+}
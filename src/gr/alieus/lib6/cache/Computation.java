@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Computes the new value of a key from its current one.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see Cache#compute
+ */
+public interface Computation<K, V> {
+
+    /**
+     * Computes the new value of the given key.
+     * 
+     * @param key the key
+     * @param value the current value of {@code key} or {@code null} if
+     * it has none
+     * @return the new value of {@code key} or {@code null} to remove it
+     */
+    V compute(K key, V value);
+}
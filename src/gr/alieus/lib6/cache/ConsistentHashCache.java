@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Cache that spreads its keys over a number of shards using consistent
+ * hashing.
+ * <p/>
+ * Every shard is placed on a ring of 32 bit hash values at a number of
+ * pseudo random points (virtual nodes). A key belongs to the first shard
+ * found on the ring after the hash of the key. Adding or removing a shard
+ * only moves the keys between the new (or removed) shard's points and their
+ * predecessors, that is about 1 / N of the keys for N shards.
+ * The more virtual nodes, the more evenly the keys are spread.
+ * <p/>
+ * The shards can be any caches: local caches for in process shards or
+ * {@link SocketCacheClient}s for shards served by another process.
+ * Entries are not migrated when shards change: keys that moved simply miss
+ * on their new shard, and their old entries are eventually evicted.
+ * <p/>
+ * Routing is thread safe; the ring is replaced as a whole when shards are
+ * added or removed. The cache as a whole is thread safe if all the shards
+ * are.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ConsistentHashCache<K, V> implements Cache<K, V> {
+
+    private final int virtualNodes;
+    private final Map<String, Cache<K, V>> shards = new LinkedHashMap<String, Cache<K, V>>();
+    private volatile TreeMap<Integer, Cache<K, V>> ring = new TreeMap<Integer, Cache<K, V>>();
+
+    /**
+     * Creates a new cache without shards.
+     * 
+     * @param virtualNodes the number of points of every shard on the ring
+     * @throws IllegalArgumentException if {@code virtualNodes} is not positive
+     */
+    public ConsistentHashCache(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Illegal number of virtual nodes: "+virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Adds a shard.
+     * The positions of a shard on the ring depend only on its name, so all
+     * routers that use the same names route keys the same way.
+     * 
+     * @param name the unique name of the shard
+     * @param shard the shard
+     * @throws IllegalStateException if a shard with the same name exists
+     */
+    public synchronized void addShard(String name, Cache<K, V> shard) {
+        if (shards.containsKey(name)) {
+            throw new IllegalStateException("Shard: "+name+" already exists.");
+        }
+        shards.put(name, shard);
+        rebuildRing();
+    }
+
+    /**
+     * Removes a shard.
+     * The keys of the removed shard are spread over the remaining ones.
+     * 
+     * @param name the name of the shard
+     * @return the removed shard
+     * @throws NoSuchElementException if there is no shard with this name
+     */
+    public synchronized Cache<K, V> removeShard(String name) throws NoSuchElementException {
+        Cache<K, V> shard = shards.remove(name);
+        if (shard == null) {
+            throw new NoSuchElementException("Shard: "+name+" does not exist.");
+        }
+        rebuildRing();
+        return shard;
+    }
+
+    /**
+     * Returns the names of the shards.
+     * 
+     * @return an unmodifiable snapshot of the names of the shards
+     */
+    public synchronized Set<String> getShardNames() {
+        return Collections.unmodifiableSet(new LinkedHashMap<String, Cache<K, V>>(shards).keySet());
+    }
+
+    /**
+     * Returns the shard the given key belongs to.
+     * 
+     * @param key the key
+     * @return the shard of {@code key}
+     * @throws IllegalStateException if there are no shards
+     */
+    public Cache<K, V> shardOf(K key) {
+        TreeMap<Integer, Cache<K, V>> r = ring;
+        if (r.isEmpty()) {
+            throw new IllegalStateException("No shards");
+        }
+        Map.Entry<Integer, Cache<K, V>> e = r.ceilingEntry(mix(key.hashCode()));
+        return e != null ? e.getValue() : r.firstEntry().getValue();
+    }
+
+    @Override
+    public V lookUp(K key) {
+        return shardOf(key).lookUp(key);
+    }
+
+    @Override
+    public void store(K key, V value) {
+        shardOf(key).store(key, value);
+    }
+
+    @Override
+    public V remove(K key) {
+        return shardOf(key).remove(key);
+    }
+
+    @Override
+    public V storeIfAbsent(K key, V value) {
+        return shardOf(key).storeIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        return shardOf(key).replace(key, expected, newValue);
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        return shardOf(key).compute(key, computation);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * All the shards are invalidated.
+     */
+    @Override
+    public synchronized void invalidateAll() {
+        for (Cache<K, V> shard : shards.values()) {
+            shard.invalidateAll();
+        }
+    }
+
+    private void rebuildRing() {
+        TreeMap<Integer, Cache<K, V>> r = new TreeMap<Integer, Cache<K, V>>();
+        // by name, so that the ring does not depend on the order of addition
+        for (Map.Entry<String, Cache<K, V>> e : new TreeMap<String, Cache<K, V>>(shards).entrySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                Integer point = pointOf(e.getKey()+"#"+i);
+                if (!r.containsKey(point)) {
+                    // on the rare collision the shard with the least name keeps the point
+                    r.put(point, e.getValue());
+                }
+            }
+        }
+        ring = r;
+    }
+
+    /**
+     * Hashes all the characters of the name of a virtual node, so that
+     * names with equal hash codes still get different points.
+     * FNV-1a over 64 bits, followed by the murmur3 64 bit finalizer.
+     * Package private so tests may find colliding names.
+     */
+    static int pointOf(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h ^= name.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Murmur3 32 bit finalizer. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Arrays;
+
+/**
+ * Probabilistic set of hash values that supports deletion.
+ * <p/>
+ * Each item is represented by a 16 bit fingerprint stored in one of two
+ * candidate buckets of 4 slots. A lookup may report an item that was never
+ * added (with a probability of about 8 / 2<sup>16</sup>) but never misses
+ * an item that was added and not deleted.
+ * Deleting an item that was never added may delete another item with the
+ * same fingerprint, so callers should only delete items they have added
+ * or accept such false deletions. Also, a failed insertion drops one of
+ * the items added earlier; the filter should be replaced when that happens.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+final class CuckooFilter {
+
+    static final int SLOTS_PER_BUCKET = 4;
+    static final int BYTES_PER_BUCKET = SLOTS_PER_BUCKET * 2;
+    private static final int MAX_KICKS = 500;
+
+    /** The fingerprints, {@code SLOTS_PER_BUCKET} per bucket. 0 means empty. */
+    private final short[] slots;
+    private final int bucketMask;
+    private int count;
+    private int kickSeed = 1;
+
+    /**
+     * Creates a new filter with the given number of buckets.
+     * 
+     * @param buckets the number of buckets; must be a power of two
+     */
+    CuckooFilter(int buckets) {
+        if (buckets <= 0 || Integer.bitCount(buckets) != 1) {
+            throw new IllegalArgumentException("Not a power of two: "+buckets);
+        }
+        slots = new short[buckets * SLOTS_PER_BUCKET];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Returns the number of items in this filter.
+     * 
+     * @return the number of items
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the maximum number of items this filter can hold.
+     * Insertions are likely to fail well before that number is reached.
+     * 
+     * @return the number of slots of this filter
+     */
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Adds the item with the given hash value.
+     * 
+     * @param hash a 64 bit hash value of the item
+     * @return {@code false} if the filter is too full to add the item
+     */
+    boolean add(long hash) {
+        short fp = fingerprint(hash);
+        int b1 = index(hash);
+        int b2 = altIndex(b1, fp);
+        if (insertAt(b1, fp) || insertAt(b2, fp)) {
+            count++;
+            return true;
+        }
+        // relocate existing fingerprints to their alternate buckets
+        int b = (kickSeed++ & 1) == 0 ? b1 : b2;
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = b * SLOTS_PER_BUCKET + (kickSeed++ & (SLOTS_PER_BUCKET - 1));
+            short victim = slots[slot];
+            slots[slot] = fp;
+            fp = victim;
+            b = altIndex(b, fp);
+            if (insertAt(b, fp)) {
+                count++;
+                return true;
+            }
+        }
+        // the last displaced fingerprint has no room left and is dropped,
+        // so one of the items added earlier may now be missed
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the item with the given hash value may have
+     * been added to this filter.
+     * 
+     * @param hash the 64 bit hash value of the item
+     * @return {@code false} if the item is definitely not in this filter
+     */
+    boolean mightContain(long hash) {
+        short fp = fingerprint(hash);
+        int b1 = index(hash);
+        return bucketContains(b1, fp) || bucketContains(altIndex(b1, fp), fp);
+    }
+
+    /**
+     * Deletes one occurrence of the item with the given hash value.
+     * 
+     * @param hash the 64 bit hash value of the item
+     * @return {@code true} if a matching fingerprint was deleted
+     */
+    boolean delete(long hash) {
+        short fp = fingerprint(hash);
+        int b1 = index(hash);
+        if (deleteFrom(b1, fp) || deleteFrom(altIndex(b1, fp), fp)) {
+            count--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all the items.
+     */
+    void clear() {
+        Arrays.fill(slots, (short) 0);
+        count = 0;
+    }
+
+    private boolean insertAt(int bucket, short fp) {
+        int start = bucket * SLOTS_PER_BUCKET;
+        for (int i = start; i < start + SLOTS_PER_BUCKET; i++) {
+            if (slots[i] == 0) {
+                slots[i] = fp;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean bucketContains(int bucket, short fp) {
+        int start = bucket * SLOTS_PER_BUCKET;
+        for (int i = start; i < start + SLOTS_PER_BUCKET; i++) {
+            if (slots[i] == fp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean deleteFrom(int bucket, short fp) {
+        int start = bucket * SLOTS_PER_BUCKET;
+        for (int i = start; i < start + SLOTS_PER_BUCKET; i++) {
+            if (slots[i] == fp) {
+                slots[i] = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int index(long hash) {
+        return (int) hash & bucketMask;
+    }
+
+    /**
+     * Returns the other candidate bucket of a fingerprint.
+     * Applying this function twice returns the original bucket.
+     */
+    private int altIndex(int bucket, short fp) {
+        return (bucket ^ ((fp & 0xFFFF) * 0x5BD1E995)) & bucketMask;
+    }
+
+    private static short fingerprint(long hash) {
+        short fp = (short) (hash >>> 48);
+        return fp == 0 ? 1 : fp; // 0 marks an empty slot
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Strategy for deciding whether two objects are equal and for computing
+ * hash values consistent with that decision.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <T> the type of the compared objects
+ */
+public abstract class Equivalence<T> {
+
+    private static final Equivalence<Object> NATURAL = new Equivalence<Object>() {
+        @Override
+        public boolean equivalent(Object a, Object b) {
+            return a == b || (a != null && a.equals(b));
+        }
+
+        @Override
+        public int hash(Object o) {
+            return o == null ? 0 : o.hashCode();
+        }
+    };
+
+    private static final Equivalence<Object> IDENTITY = new Equivalence<Object>() {
+        @Override
+        public boolean equivalent(Object a, Object b) {
+            return a == b;
+        }
+
+        @Override
+        public int hash(Object o) {
+            return System.identityHashCode(o);
+        }
+    };
+
+    /**
+     * Returns the equivalence of {@code equals} and {@code hashCode}.
+     * 
+     * @param <T> the type of the compared objects
+     * @return the natural equivalence
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Equivalence<T> natural() {
+        return (Equivalence<T>) NATURAL;
+    }
+
+    /**
+     * Returns the equivalence of {@code ==} and
+     * {@link System#identityHashCode}.
+     * 
+     * @param <T> the type of the compared objects
+     * @return the identity equivalence
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Equivalence<T> identity() {
+        return (Equivalence<T>) IDENTITY;
+    }
+
+    /**
+     * Returns {@code true} if the given objects are equal.
+     * 
+     * @param a an object
+     * @param b another object
+     * @return {@code true} if {@code a} and {@code b} are equal
+     */
+    public abstract boolean equivalent(T a, T b);
+
+    /**
+     * Returns the hash value of the given object.
+     * Equivalent objects must have the same hash value.
+     * 
+     * @param o the object
+     * @return the hash value of {@code o}
+     */
+    public abstract int hash(T o);
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds the most frequently accessed keys of a stream of accesses,
+ * in bounded memory.
+ * <p/>
+ * Access frequencies are estimated with a count-min sketch: {@code DEPTH}
+ * rows of {@code width} counters, where every key increments one counter per
+ * row and its estimate is the minimum of its counters. An estimate is never
+ * below the actual frequency and, with a probability of at least
+ * 1 - e<sup>-{@code DEPTH}</sup> (98%), exceeds it by at most
+ * {@link #getErrorBound}, that is e / {@code width} of all the accesses.
+ * <p/>
+ * Next to the sketch, the {@code k} keys with the highest estimates seen so
+ * far are kept as candidates. A key that is accessed replaces the candidate
+ * with the lowest estimate if its own estimate is higher.
+ * <p/>
+ * Recording an access takes no locks: counters are incremented atomically
+ * and candidates are replaced with compare and set. So the tracker is thread
+ * safe and may stay enabled in production. Under contention a candidate
+ * update may be lost, which only delays it to the next access of the key.
+ * To follow recent traffic instead of all traffic since creation,
+ * call {@link #decay} periodically.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @see CacheUtil#tracking
+ */
+public class HotKeyTracker<K> {
+
+    /**
+     * A frequently accessed key and the estimate of its frequency.
+     * 
+     * @param <K> the type of the key
+     */
+    public static final class HotKey<K> {
+        private final K key;
+        private final long estimate;
+
+        HotKey(K key, long estimate) {
+            this.key = key;
+            this.estimate = estimate;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the estimated number of accesses of the key.
+         * 
+         * @return the estimated frequency, never below the actual one
+         */
+        public long getEstimate() {
+            return estimate;
+        }
+
+        @Override
+        public String toString() {
+            return key+" ~ "+estimate;
+        }
+    }
+
+    /** The number of rows of the sketch. */
+    static final int DEPTH = 4;
+
+    private final AtomicLongArray counters;
+    private final int width;
+    private final int mask;
+    private final AtomicReferenceArray<HotKey<K>> candidates;
+
+    /**
+     * Creates a new tracker.
+     * It takes about {@code 32 * width} bytes.
+     * 
+     * @param k the number of hot keys to track
+     * @param width the number of counters per row of the sketch, rounded up
+     * to a power of two
+     * @throws IllegalArgumentException if {@code k} or {@code width} is not positive
+     */
+    public HotKeyTracker(int k, int width) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Illegal number of keys: "+k);
+        }
+        if (width <= 0 || width > 1 << 28) {
+            throw new IllegalArgumentException("Illegal width: "+width);
+        }
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.mask = this.width - 1;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+        this.candidates = new AtomicReferenceArray<HotKey<K>>(k);
+    }
+
+    /**
+     * Records an access of the given key.
+     * 
+     * @param key the accessed key
+     */
+    public void record(K key) {
+        long h = hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * width + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        offer(key, estimate);
+    }
+
+    /**
+     * Returns the estimated number of accesses of the given key.
+     * 
+     * @param key the key
+     * @return the estimated frequency of {@code key}
+     */
+    public long estimate(K key) {
+        long h = hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + ((h1 + row * h2) & mask)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the hot keys, the most frequent first.
+     * 
+     * @return the tracked keys with their estimated frequencies
+     */
+    public List<HotKey<K>> getTopK() {
+        // concurrent updates may leave a key in two slots; keep the highest
+        Map<K, HotKey<K>> unique = new HashMap<K, HotKey<K>>();
+        for (int i = 0; i < candidates.length(); i++) {
+            HotKey<K> c = candidates.get(i);
+            if (c != null) {
+                HotKey<K> other = unique.get(c.key);
+                if (other == null || other.estimate < c.estimate) {
+                    unique.put(c.key, c);
+                }
+            }
+        }
+        List<HotKey<K>> result = new ArrayList<HotKey<K>>(unique.values());
+        Collections.sort(result, new Comparator<HotKey<K>>() {
+            @Override
+            public int compare(HotKey<K> a, HotKey<K> b) {
+                return a.estimate > b.estimate ? -1 : a.estimate < b.estimate ? 1 : 0;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the number of recorded accesses.
+     * After {@link #decay} this is the decayed number.
+     * 
+     * @return the total number of accesses
+     */
+    public long getNumberOfAccesses() {
+        // every access increments exactly one counter of the first row
+        long total = 0;
+        for (int i = 0; i < width; i++) {
+            total += counters.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the amount by which an estimate exceeds the actual frequency,
+     * with a probability of 98%.
+     * 
+     * @return the error bound of the estimates
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * getNumberOfAccesses());
+    }
+
+    /**
+     * Halves all the frequencies, so that older accesses count less than
+     * recent ones. Accesses recorded while decaying may be halved or not.
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long c;
+            do {
+                c = counters.get(i);
+            } while (c != 0 && !counters.compareAndSet(i, c, c >>> 1));
+        }
+        for (int i = 0; i < candidates.length(); i++) {
+            HotKey<K> c = candidates.get(i);
+            if (c != null) {
+                candidates.compareAndSet(i, c, c.estimate > 1 ? new HotKey<K>(c.key, c.estimate >>> 1) : null);
+            }
+        }
+    }
+
+    /**
+     * Updates the candidates with the given estimate of the given key.
+     */
+    private void offer(K key, long estimate) {
+        int minIndex = -1;
+        HotKey<K> min = null;
+        for (int i = 0; i < candidates.length(); i++) {
+            HotKey<K> c = candidates.get(i);
+            if (c == null) {
+                if (min != null || minIndex < 0) {
+                    // an empty slot is the best place
+                    minIndex = i;
+                    min = null;
+                }
+            } else if (c.key.equals(key)) {
+                if (c.estimate < estimate) {
+                    candidates.compareAndSet(i, c, new HotKey<K>(key, estimate));
+                }
+                return;
+            } else if (minIndex < 0 || (min != null && c.estimate < min.estimate)) {
+                minIndex = i;
+                min = c;
+            }
+        }
+        if (min == null || min.estimate < estimate) {
+            candidates.compareAndSet(minIndex, min, new HotKey<K>(key, estimate));
+        }
+    }
+
+    private static long hash(Object key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code CacheWriter} that writes to a local {@link HashMap}.
+ * Mostly useful for testing and as a stand-in for a real backing store.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class InMemoryCacheWriter<K, V> implements CacheWriter<K, V> {
+
+    private final Map<K, V> store = new HashMap<K, V>();
+    private int batchCount;
+    private long writeCount;
+
+    @Override
+    public void writeAll(Map<? extends K, ? extends V> entries) {
+        store.putAll(entries);
+        batchCount++;
+        writeCount += entries.size();
+    }
+
+    /**
+     * Returns an unmodifiable view of the entries written so far.
+     * 
+     * @return the contents of the store
+     */
+    public Map<K, V> getStore() {
+        return Collections.unmodifiableMap(store);
+    }
+
+    /**
+     * Returns the number of times {@link #writeAll} was called.
+     * 
+     * @return the number of batches written
+     */
+    public int getNumberOfBatches() {
+        return batchCount;
+    }
+
+    /**
+     * Returns the total number of entries written, counting every batch.
+     * 
+     * @return the number of entries written
+     */
+    public long getNumberOfWrites() {
+        return writeCount;
+    }
+}
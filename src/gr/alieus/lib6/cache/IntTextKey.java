@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.io.Serializable;
+
+/**
+ * Immutable key of an {@code int} and a text, e.g. (tenant id, name).
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @see Probe
+ */
+public final class IntTextKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Reusable probe for {@code IntTextKey}s.
+     * The text of the probe may be any {@link CharSequence}, such as
+     * a reused {@link StringBuilder}; it is copied only by {@link #toKey}.
+     * NOTE: this implementation is not thread safe; use a probe per thread.
+     */
+    public static final class Probe implements KeyProbe<IntTextKey> {
+        private int number;
+        private CharSequence text;
+        private int hash;
+
+        /**
+         * Sets the values of the key this probe stands for.
+         * The text must not change while the probe is in use.
+         * 
+         * @param number the number
+         * @param text the text
+         * @return this probe
+         */
+        public Probe set(int number, CharSequence text) {
+            this.number = number;
+            this.text = text;
+            // the hash of a String with the same characters
+            int h = 0;
+            for (int i = 0; i < text.length(); i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            this.hash = 31 * number + h;
+            return this;
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public boolean matches(IntTextKey key) {
+            if (key.number != number || key.text.length() != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (key.text.charAt(i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public IntTextKey toKey() {
+            return new IntTextKey(number, text.toString());
+        }
+    }
+
+    private final int number;
+    private final String text;
+
+    /**
+     * Creates a new key.
+     * 
+     * @param number the number
+     * @param text the text
+     */
+    public IntTextKey(int number, String text) {
+        if (text == null) {
+            throw new NullPointerException("text");
+        }
+        this.number = number;
+        this.text = text;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * number + text.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof IntTextKey)) {
+            return false;
+        }
+        IntTextKey other = (IntTextKey) obj;
+        return number == other.number && text.equals(other.text);
+    }
+
+    @Override
+    public String toString() {
+        return "("+number+", "+text+")";
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Reusable stand-in for a key, used to look up a key without creating it.
+ * <p/>
+ * A probe is typically a mutable object that is set to the components of
+ * the wanted key (e.g. two numbers) before every lookup. Its hash value
+ * and matching must agree with the equivalence of the keys used by
+ * the cache: a probe matches a key only if it has the key's hash value.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @see LruHashCache#lookUp(KeyProbe)
+ */
+public interface KeyProbe<K> {
+
+    /**
+     * Returns the hash value of the key this probe stands for.
+     * 
+     * @return the hash value of the key
+     */
+    int hash();
+
+    /**
+     * Returns {@code true} if the given key is the one this probe stands for.
+     * 
+     * @param key a key
+     * @return {@code true} if this probe matches {@code key}
+     */
+    boolean matches(K key);
+
+    /**
+     * Creates the key this probe stands for.
+     * Called only when a new entry is stored.
+     * 
+     * @return a new key equal to the one this probe stands for
+     */
+    K toKey();
+}
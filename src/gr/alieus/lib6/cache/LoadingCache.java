@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Cache that loads missing keys from their origin via a {@link CacheLoader}.
+ * <p/>
+ * Optionally, keys that the loader reports as absent are recorded in a
+ * {@link NegativeCache}. Later lookups of such keys are answered without
+ * reaching the loader and, since absent keys are not stored as entries,
+ * they never evict real entries.
+ * Storing a value for a key through this cache removes it from the negative
+ * cache. Keys that start to exist at the origin without passing through this
+ * cache are seen once the negative cache forgets them, that is after at most
+ * its time to live.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class LoadingCache<K, V> implements Cache<K, V> {
+
+    private final Cache<K, V> cache;
+    private final CacheLoader<? super K, ? extends V> loader;
+    private final NegativeCache<? super K> negatives;
+
+    private long loadCount;
+    private long negativeHitCount;
+
+    /**
+     * Creates a new loading cache.
+     * 
+     * @param cache the cache to hold the loaded entries
+     * @param loader the loader of missing keys
+     * @param negatives the negative cache for the absent keys
+     * or {@code null} to load absent keys every time
+     */
+    public LoadingCache(Cache<K, V> cache, CacheLoader<? super K, ? extends V> loader,
+            NegativeCache<? super K> negatives) {
+        this.cache = cache;
+        this.loader = loader;
+        this.negatives = negatives;
+    }
+
+    /**
+     * Creates a new loading cache without negative caching.
+     * 
+     * @param cache the cache to hold the loaded entries
+     * @param loader the loader of missing keys
+     */
+    public LoadingCache(Cache<K, V> cache, CacheLoader<? super K, ? extends V> loader) {
+        this(cache, loader, null);
+    }
+
+    /**
+     * Returns the value of the given key, loading it if it is not cached.
+     * 
+     * @param key the key
+     * @return the value of {@code key} or {@code null} if it does not exist
+     */
+    public V get(K key) {
+        V value = cache.lookUp(key);
+        if (value != null) {
+            return value;
+        }
+        if (negatives != null && negatives.isKnownAbsent(key)) {
+            negativeHitCount++;
+            return null;
+        }
+        loadCount++;
+        value = loader.load(key);
+        if (value == null) {
+            if (negatives != null) {
+                negatives.recordAbsent(key);
+            }
+        } else {
+            cache.store(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of times the loader was called.
+     * 
+     * @return the number of loads
+     */
+    public long getNumberOfLoads() {
+        return loadCount;
+    }
+
+    /**
+     * Returns the number of lookups answered by the negative cache.
+     * 
+     * @return the number of negative hits
+     */
+    public long getNegativeHits() {
+        return negativeHitCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This method does not load missing keys. See {@link #get}.
+     */
+    @Override
+    public V lookUp(K key) {
+        return cache.lookUp(key);
+    }
+
+    @Override
+    public void store(K key, V value) {
+        cache.store(key, value);
+        present(key);
+    }
+
+    @Override
+    public V remove(K key) {
+        return cache.remove(key);
+    }
+
+    @Override
+    public V storeIfAbsent(K key, V value) {
+        V existing = cache.storeIfAbsent(key, value);
+        if (existing == null) {
+            present(key);
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        return cache.replace(key, expected, newValue);
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        V result = cache.compute(key, computation);
+        if (result != null) {
+            present(key);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The negative cache is cleared as well.
+     */
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+        if (negatives != null) {
+            negatives.clear();
+        }
+    }
+
+    private void present(K key) {
+        if (negatives != null) {
+            negatives.recordPresent(key);
+        }
+    }
+}
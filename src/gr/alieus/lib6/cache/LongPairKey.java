@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.io.Serializable;
+
+/**
+ * Immutable key of two {@code long} values, e.g. (tenant id, item id).
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @see Probe
+ */
+public final class LongPairKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Reusable probe for {@code LongPairKey}s.
+     * NOTE: this implementation is not thread safe; use a probe per thread.
+     */
+    public static final class Probe implements KeyProbe<LongPairKey> {
+        private long first;
+        private long second;
+
+        /**
+         * Sets the values of the key this probe stands for.
+         * 
+         * @param first the first value
+         * @param second the second value
+         * @return this probe
+         */
+        public Probe set(long first, long second) {
+            this.first = first;
+            this.second = second;
+            return this;
+        }
+
+        @Override
+        public int hash() {
+            return LongPairKey.hash(first, second);
+        }
+
+        @Override
+        public boolean matches(LongPairKey key) {
+            return key.first == first && key.second == second;
+        }
+
+        @Override
+        public LongPairKey toKey() {
+            return new LongPairKey(first, second);
+        }
+    }
+
+    private final long first;
+    private final long second;
+
+    /**
+     * Creates a new key.
+     * 
+     * @param first the first value
+     * @param second the second value
+     */
+    public LongPairKey(long first, long second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getSecond() {
+        return second;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(first, second);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LongPairKey)) {
+            return false;
+        }
+        LongPairKey other = (LongPairKey) obj;
+        return first == other.first && second == other.second;
+    }
+
+    @Override
+    public String toString() {
+        return "("+first+", "+second+")";
+    }
+
+    static int hash(long first, long second) {
+        return 31 * (int) (first ^ (first >>> 32)) + (int) (second ^ (second >>> 32));
+    }
+}
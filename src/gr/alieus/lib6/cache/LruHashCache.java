@@ -20,6 +20,8 @@ package gr.alieus.lib6.cache;
 // TODO write tests!!
 
 import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Cache implementation using a hashtable with chaining for resolving collisions.
@@ -30,6 +32,30 @@ import java.math.BigInteger;
  * Storing a value with a key that already exists causes the old value to be replaced.
  * 
  * Time complexity for both store (get) and lookup (push) is O(1).
+ * The conditional operations ({@code storeIfAbsent}, {@code replace} and
+ * {@code compute}) and {@code remove} search the bucket of the key only once,
+ * so each of them costs the same as a single store.
+ * <p/>
+ * <p/>
+ * Optionally, the entries can be weighed by a {@link Weigher}, and
+ * the least recently used entries are also evicted while their total
+ * weight exceeds a maximum.
+ * <p/>
+ * Keys are compared with an {@link Equivalence}, by default their
+ * {@code equals} and {@code hashCode}. Lookups and stores may also use
+ * a reusable {@link KeyProbe} instead of a key object, so that looking up
+ * composite or primitive keys allocates nothing.
+ * <p/>
+ * The whole cache, or all the entries stored with the same tag, can be
+ * invalidated in constant time. Invalidated entries are treated as missing
+ * and their space is reclaimed lazily, when they are found by later
+ * operations, when they reach the head of the lru queue or by a sweep of
+ * the table that searches a few buckets per operation after an invalidation. A value written by any operation other than
+ * {@link #store(Object, Object, Object)} leaves its entry untagged.
+ * Tags are forgotten when no entry refers to them any more.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * See {@link CacheUtil#synchronizedCache}.
  * 
  * @author Stathis Aliprantis - p3120005
  * @param <K> the type of the keys
@@ -37,7 +63,7 @@ import java.math.BigInteger;
  * @see Cache
  * @see java.util.HashMap
  */
-public class LruHashCache<K, V> {
+public class LruHashCache<K, V> implements Cache<K, V> {
     
     /**
      * Key value pair.
@@ -67,6 +93,21 @@ public class LruHashCache<K, V> {
          */
         Entry<K, V> next;
 
+        /**
+         * The generation of the cache when this entry was stored.
+         * The entry is stale if it does not match the current generation.
+         */
+        int generation;
+
+        /** The tag of this entry or {@code null} if it is not tagged. */
+        Tag tag;
+
+        /** The generation of the tag when this entry was stored. */
+        int tagGeneration;
+
+        /** The weight of this entry, 0 if the cache has no weigher. */
+        int weight;
+
         Entry(K key) {
             this.key = key;
         }
@@ -92,18 +133,30 @@ public class LruHashCache<K, V> {
      */
     static final class LruEntry {
 
-        /** The index of the actual entry on the hashtable. */
-        final int bucket;
-
-        /** The actual entry. */
+        /** The actual entry, whose bucket is found by its hash value. */
         final Entry entry;
 
-        LruEntry(int bucket, Entry entry) {
-            this.bucket = bucket;
+        LruEntry(Entry entry) {
             this.entry = entry;
         }
     }
     
+    /**
+     * Group of entries that can be invalidated together.
+     * Its generation is increased every time the group is invalidated.
+     */
+    static final class Tag {
+        final Object key;
+        int generation;
+
+        /** The number of entries, live or stale, that refer to this tag. */
+        int count;
+
+        Tag(Object key) {
+            this.key = key;
+        }
+    }
+    
     static final float DEFAULT_LOAD_FACTOR = 0.78F;
     
     /** Hashtable for holding the data. */
@@ -121,11 +174,52 @@ public class LruHashCache<K, V> {
     private long hitCount;
     private long lookupCount;
 
+    /**
+     * Increased by every {@link #invalidateAll}.
+     * Entries stored in previous generations are stale: they are treated
+     * as missing and are reclaimed when found by a later probe, when they
+     * reach the head of the lru queue or by the sweep of the table.
+     */
+    private int generation;
+
+    /** The groups of entries used with {@link #invalidateTag}. */
+    private final Map<Object, Tag> tags = new HashMap<Object, Tag>();
+
+    /** The most buckets an operation searches for stale entries. */
+    static final int SWEEP_BUCKETS = 16;
+
+    /**
+     * The buckets left to search for stale entries since the last
+     * invalidation, 0 if the sweep is done.
+     */
+    private int bucketsToSweep;
+
+    /** The next bucket the sweep searches. */
+    private int sweepIndex;
+
     /** The ratio: (number of entries) / (hashtable length). */
     private float loadFactor = DEFAULT_LOAD_FACTOR;
 
     /** The maximum number of entries this cache can store. */
-    private int size;
+    private final int size;
+
+    /**
+     * The length of the table for {@code size} entries. The table starts
+     * smaller if the cache was created to grow.
+     */
+    private final int maxTableLength;
+
+    /** Decides which keys are equal. */
+    private final Equivalence<? super K> keyEquivalence;
+
+    /** Weighs the entries or {@code null} if only their number is limited. */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /** The maximum total weight of the entries. */
+    private final long maxWeight;
+
+    /** The total weight of the entries, including stale ones. */
+    private long weight;
 
     /**
      * Creates a new CacheImpl with the given size and load factor.
@@ -134,18 +228,76 @@ public class LruHashCache<K, V> {
      * @param loadFactor the load factor. 0.75 should produce near-constant time
      * operations.
      */
-    @SuppressWarnings("unchecked")
     public LruHashCache(int size, float loadFactor) {
+        this(size, loadFactor, Equivalence.natural());
+    }
+    
+    /**
+     * Creates a new CacheImpl with the given size, load factor and
+     * equivalence of keys.
+     * 
+     * @param size the size of the cache
+     * @param loadFactor the load factor
+     * @param keyEquivalence decides which keys are equal and provides
+     * their hash values, instead of {@code equals} and {@code hashCode}
+     */
+    public LruHashCache(int size, float loadFactor, Equivalence<? super K> keyEquivalence) {
+        this(size, loadFactor, keyEquivalence, Long.MAX_VALUE, null);
+    }
+    
+    /**
+     * Creates a new CacheImpl limited by both the number and the total
+     * weight of its entries.
+     * 
+     * @param size the size of the cache
+     * @param maxWeight the maximum total weight of the entries
+     * @param weigher weighs the entries (e.g. by the bytes they occupy)
+     */
+    public LruHashCache(int size, long maxWeight, Weigher<? super K, ? super V> weigher) {
+        this(size, DEFAULT_LOAD_FACTOR, Equivalence.natural(), maxWeight, weigher);
+    }
+    
+    /**
+     * Creates a new CacheImpl.
+     * 
+     * @param size the size of the cache
+     * @param loadFactor the load factor
+     * @param keyEquivalence decides which keys are equal and provides
+     * their hash values, instead of {@code equals} and {@code hashCode}
+     * @param maxWeight the maximum total weight of the entries
+     * @param weigher weighs the entries or {@code null} to limit only their
+     * number
+     * @throws IllegalArgumentException if {@code maxWeight} is negative
+     */
+    public LruHashCache(int size, float loadFactor, Equivalence<? super K> keyEquivalence,
+            long maxWeight, Weigher<? super K, ? super V> weigher) {
+        this(size, loadFactor, keyEquivalence, maxWeight, weigher, size);
+    }
+    
+    /**
+     * Creates a new cache whose table starts small and grows with the
+     * entries, for caches that rarely fill up.
+     * 
+     * @param size the size of the cache
+     * @param initialSize the number of entries the table is first sized for
+     */
+    LruHashCache(int size, int initialSize) {
+        this(size, DEFAULT_LOAD_FACTOR, Equivalence.natural(), Long.MAX_VALUE, null, initialSize);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private LruHashCache(int size, float loadFactor, Equivalence<? super K> keyEquivalence,
+            long maxWeight, Weigher<? super K, ? super V> weigher, int initialSize) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Negative maximum weight: "+maxWeight);
+        }
         this.size = size;
+        this.keyEquivalence = keyEquivalence;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
         this.loadFactor = loadFactor;
-        int requestedTableSize = (int) (size / loadFactor);
-        // the actual size of the table should be a prime number
-        BigInteger actualTableSize =  BigInteger.valueOf(requestedTableSize);
-        actualTableSize = actualTableSize.nextProbablePrime();
-        while (! actualTableSize.isProbablePrime(1000)) {
-            actualTableSize = actualTableSize.nextProbablePrime();
-        }
-        table = new Entry[actualTableSize.intValue()];
+        maxTableLength = tableLength(size);
+        table = new Entry[Math.min(tableLength(initialSize), maxTableLength)];
         lru = new Queue<LruEntry>();
     }
     
@@ -166,64 +318,253 @@ public class LruHashCache<K, V> {
         return size;
     }
     
+    /**
+     * Returns the number of entries currently in the cache,
+     * including invalidated entries that have not been reclaimed yet.
+     * 
+     * @return the number of entries
+     */
+    public int getNumberOfEntries() {
+        return lru.getSize();
+    }
+    
+    /**
+     * Returns the total weight of the entries currently in the cache,
+     * including invalidated entries that have not been reclaimed yet.
+     * 
+     * @return the total weight or 0 if the cache has no weigher
+     */
+    public long getWeight() {
+        return weight;
+    }
+    
+    /**
+     * Returns the maximum total weight.
+     * 
+     * @return the maximum total weight of the entries
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+    
+    @Override
     public V lookUp(K key) {
         lookupCount++;
         
-        int hash = key.hashCode();
-        Entry<K, V> entry = table[indexOf(key, hash)];
+        int hash = keyEquivalence.hash(key);
+        Entry<K, V> entry = find(key, hash, indexOf(hash));
         
-        while (entry != null) {
-            if (isKey(key, hash, entry)) {
-                lru.moveBack(entry.queueEntry); // this entry was just accessed
-                hitCount++;                     // so it should be moved to end of the queue
-                return entry.value;
-            }
-            entry = entry.next;
+        if (entry != null) {
+            lru.moveBack(entry.queueEntry); // this entry was just accessed
+            hitCount++;                     // so it should be moved to end of the queue
+            return entry.value;
         }
         
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Any previous tag of the entry is removed.
+     */
+    @Override
     public void store(K key, V value) {
-        int hash = key.hashCode();
-        int index = indexOf(key, hash);
+        put(key, value, null);
+    }
+
+    /**
+     * Stores the given value with the given key and tags the entry,
+     * so that it can be invalidated together with all the other entries
+     * of the same tag via {@link #invalidateTag}.
+     * Any previous tag of the entry is replaced.
+     * 
+     * @param key the key
+     * @param value the value of {@code key}
+     * @param tag the tag of the entry (e.g. a namespace) or {@code null}
+     * for no tag
+     */
+    public void store(K key, V value, Object tag) {
+        put(key, value, tag);
+    }
+
+    /**
+     * Returns the value of the key matched by the given probe.
+     * Unlike {@link #lookUp(Object)}, no key object is needed, so
+     * the probe can be reused for lookups that allocate nothing.
+     * 
+     * @param probe the probe; its hash must be the hash of the matched key
+     * according to the equivalence of this cache
+     * @return the value of the matched key or {@code null} if there is none
+     */
+    public V lookUp(KeyProbe<K> probe) {
+        lookupCount++;
+        
+        int hash = probe.hash();
+        Entry<K, V> entry = find(probe, hash, indexOf(hash));
+        
+        if (entry != null) {
+            lru.moveBack(entry.queueEntry);
+            hitCount++;
+            return entry.value;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Stores the given value with the key matched by the given probe.
+     * A key object is created by the probe only if the key is new.
+     * 
+     * @param probe the probe; its hash must be the hash of the matched key
+     * according to the equivalence of this cache
+     * @param value the value
+     */
+    public void store(KeyProbe<K> probe, V value) {
+        int hash = probe.hash();
+        int index = indexOf(hash);
         
-        if (table[index] == null) {
-            // bucket is empty -> the key does not exist -> create a new Entry
-            Entry<K, V> newEntry = new Entry<K, V>(key, value, hash, null);
-            table[index] = newEntry;
-            Queue.Node<LruEntry> lruElem = lru.insert(new LruEntry(index, newEntry));
-            newEntry.queueEntry = lruElem;
+        Entry<K, V> entry = find(probe, hash, index);
+        if (entry != null) {
+            setValue(entry, value);
+            setTag(entry, null);
+            lru.moveBack(entry.queueEntry);
+            evictIfNeeded();
         } else {
-            Entry<K, V> entry = table[index];
-            // first, search for the key in the bucket. If found change the value
-            boolean found = false;
-            while (entry != null && !found) {
-                if (isKey(key, hash, entry)) {
-                    entry.value = value;
-                    lru.moveBack(entry.queueEntry); // we just accessed the entry
-                    found = true;
-                }
-                entry = entry.next;
+            insert(probe.toKey(), value, null, hash, index);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        int hash = keyEquivalence.hash(key);
+        int index = indexOf(hash);
+        
+        Entry<K, V> previous = null;
+        Entry<K, V> entry = table[index];
+        while (entry != null) {
+            Entry<K, V> next = entry.next;
+            if (isStale(entry)) {
+                unlink(index, previous, entry);
+            } else if (isKey(key, hash, entry)) {
+                unlink(index, previous, entry);
+                return entry.value;
+            } else {
+                previous = entry;
             }
-            
-            // key not found -> create a new entry
-            if (!found) {
-                Entry<K, V> newEntry = new Entry<K, V>(key, value, hash, table[index]);
-                table[index] = newEntry;
-                Queue.Node<LruEntry> lruElem = lru.insert(new LruEntry(index, newEntry));
-                newEntry.queueEntry = lruElem;
-                
+            entry = next;
+        }
+        
+        return null;
+    }
+
+    @Override
+    public V storeIfAbsent(K key, V value) {
+        int hash = keyEquivalence.hash(key);
+        int index = indexOf(hash);
+        
+        Entry<K, V> entry = find(key, hash, index);
+        if (entry != null) {
+            lru.moveBack(entry.queueEntry);
+            return entry.value;
+        }
+        insert(key, value, null, hash, index);
+        return null;
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        int hash = keyEquivalence.hash(key);
+        Entry<K, V> entry = find(key, hash, indexOf(hash));
+        
+        if (entry == null || !(expected == null
+                ? entry.value == null
+                : expected.equals(entry.value))) {
+            return false;
+        }
+        setValue(entry, newValue);
+        setTag(entry, null);
+        lru.moveBack(entry.queueEntry);
+        evictIfNeeded();
+        return true;
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        int hash = keyEquivalence.hash(key);
+        int index = indexOf(hash);
+        
+        // remember the previous entry of the chain so that a removal
+        // does not need to search the bucket again
+        Entry<K, V> previous = null;
+        Entry<K, V> entry = table[index];
+        while (entry != null) {
+            Entry<K, V> next = entry.next;
+            if (isStale(entry)) {
+                unlink(index, previous, entry);
+            } else if (isKey(key, hash, entry)) {
+                break;
+            } else {
+                previous = entry;
             }
+            entry = next;
         }
         
-        // evict a value to free space if we exceed the size
-        if (lru.getSize() > size) {
-            LruEntry toClear = lru.extract(); // extract the least recently used
-            clear(toClear.bucket, toClear.entry);
+        V newValue = computation.compute(key, entry == null ? null : entry.value);
+        if (newValue == null) {
+            if (entry != null) {
+                unlink(index, previous, entry);
+            }
+        } else if (entry != null) {
+            setValue(entry, newValue);
+            setTag(entry, null);
+            lru.moveBack(entry.queueEntry);
+            evictIfNeeded();
+        } else {
+            insert(key, newValue, null, hash, index);
+        }
+        return newValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This operation takes constant time. The invalidated entries are
+     * reclaimed lazily, so they keep taking up space until then.
+     */
+    @Override
+    public void invalidateAll() {
+        generation++;
+        bucketsToSweep = table.length;
+    }
+
+    /**
+     * Invalidates all the entries stored with the given tag.
+     * Like {@link #invalidateAll} this operation takes constant time
+     * and the invalidated entries are reclaimed lazily.
+     * 
+     * @param tag the tag whose entries to invalidate
+     */
+    public void invalidateTag(Object tag) {
+        Tag t = tags.get(tag);
+        if (t != null) {
+            t.generation++;
+            bucketsToSweep = table.length;
         }
     }
 
+    /**
+     * Called after an entry has been evicted to free space for a new one.
+     * Subclasses may override this method to act upon evicted entries
+     * (e.g. to write them to a backing store). The default implementation
+     * does nothing.
+     * 
+     * @param key the key of the evicted entry
+     * @param value the value of the evicted entry
+     */
+    protected void entryEvicted(K key, V value) {
+    }
+
     public double getHitRatio() {
         return hitCount / (double) lookupCount;
     }
@@ -241,17 +582,332 @@ public class LruHashCache<K, V> {
     }
     
     /**
-     * Returns the index of the table where the given key with the given
+     * Returns the table length for the given number of entries: the first
+     * prime at least as large as the number divided by the load factor.
+     */
+    private int tableLength(int entries) {
+        int requestedTableSize = (int) (entries / loadFactor);
+        // the actual size of the table should be a prime number
+        BigInteger actualTableSize =  BigInteger.valueOf(requestedTableSize);
+        actualTableSize = actualTableSize.nextProbablePrime();
+        while (! actualTableSize.isProbablePrime(1000)) {
+            actualTableSize = actualTableSize.nextProbablePrime();
+        }
+        return actualTableSize.intValue();
+    }
+    
+    /**
+     * Makes the table large enough for twice the entries, up to its length
+     * for the size of the cache, if the entries exceed the load factor.
+     */
+    @SuppressWarnings("unchecked")
+    private void growIfNeeded() {
+        if (table.length >= maxTableLength || lru.getSize() <= loadFactor * table.length) {
+            return;
+        }
+        Entry<K, V>[] oldTable = table;
+        table = (Entry<K, V>[]) new Entry<?, ?>[Math.min(tableLength(2 * lru.getSize()), maxTableLength)];
+        if (bucketsToSweep > 0) {
+            // the entries move, so sweep the new table from its start
+            bucketsToSweep = table.length;
+            sweepIndex = 0;
+        }
+        for (Entry<K, V> entry : oldTable) {
+            while (entry != null) {
+                Entry<K, V> next = entry.next;
+                int index = indexOf(entry.hash);
+                entry.next = table[index];
+                table[index] = entry;
+                entry = next;
+            }
+        }
+    }
+    
+    /**
+     * Returns the index of the table where a key with the given
      * hash value should be placed
      * 
-     * @param key the key
      * @param hash the hash value of the key
      * @return the proposed index
      */
-    private int indexOf(K key, int hash) {
+    private int indexOf(int hash) {
         return Math.abs(hash) % table.length;
     }
     
+    /**
+     * Returns the entry of the given key, searching only the given bucket.
+     * 
+     * @param key the key to search for
+     * @param hash the hash value of the key
+     * @param index the bucket of the key
+     * @return the entry of the key or {@code null} if there is no such entry
+     */
+    private Entry<K, V> find(K key, int hash, int index) {
+        Entry<K, V> previous = null;
+        Entry<K, V> entry = table[index];
+        while (entry != null) {
+            Entry<K, V> next = entry.next;
+            if (isStale(entry)) {
+                unlink(index, previous, entry); // reclaim it while we are here
+            } else if (isKey(key, hash, entry)) {
+                return entry;
+            } else {
+                previous = entry;
+            }
+            entry = next;
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the entry of the key matched by the given probe,
+     * searching only the given bucket.
+     * 
+     * @param probe the probe
+     * @param hash the hash value of the probe
+     * @param index the bucket of the key
+     * @return the entry of the key or {@code null} if there is no such entry
+     */
+    private Entry<K, V> find(KeyProbe<K> probe, int hash, int index) {
+        Entry<K, V> previous = null;
+        Entry<K, V> entry = table[index];
+        while (entry != null) {
+            Entry<K, V> next = entry.next;
+            if (isStale(entry)) {
+                unlink(index, previous, entry);
+            } else if (hash == entry.hash && probe.matches(entry.key)) {
+                return entry;
+            } else {
+                previous = entry;
+            }
+            entry = next;
+        }
+        return null;
+    }
+    
+    /**
+     * Stores the given value with the given key and tag.
+     * 
+     * @param key the key
+     * @param value the value of {@code key}
+     * @param tag the tag of the entry or {@code null}
+     */
+    private void put(K key, V value, Object tag) {
+        int hash = keyEquivalence.hash(key);
+        int index = indexOf(hash);
+        
+        // first, search for the key in the bucket. If found change the value
+        Entry<K, V> entry = find(key, hash, index);
+        // after find, which may forget the tag by reclaiming its last entries
+        Tag t = tag == null ? null : tagOf(tag);
+        if (entry != null) {
+            setValue(entry, value);
+            setTag(entry, t);
+            lru.moveBack(entry.queueEntry); // we just accessed the entry
+            evictIfNeeded();
+        } else {
+            // key not found -> create a new entry
+            insert(key, value, t, hash, index);
+        }
+    }
+    
+    /**
+     * Creates a new entry at the head of the given bucket and makes it the
+     * most recently used one. If the size of the cache is exceeded,
+     * the least recently used entry is evicted.
+     * 
+     * @param key the key of the new entry
+     * @param value the value of the new entry
+     * @param tag the tag of the new entry or {@code null}
+     * @param hash the hash value of the key
+     * @param index the bucket of the key
+     */
+    private void insert(K key, V value, Tag tag, int hash, int index) {
+        int newWeight = weigh(key, value);
+        Entry<K, V> newEntry = new Entry<K, V>(key, value, hash, table[index]);
+        newEntry.generation = generation;
+        setTag(newEntry, tag);
+        newEntry.weight = newWeight;
+        weight += newWeight;
+        table[index] = newEntry;
+        newEntry.queueEntry = lru.insert(new LruEntry(newEntry));
+        
+        evictIfNeeded();
+        growIfNeeded();
+    }
+    
+    /**
+     * Evicts the least recently used entries while the size or
+     * the maximum weight of the cache is exceeded, after reclaiming the
+     * stale entries of the next few buckets if there was an invalidation.
+     * Stale entries at the head of the lru queue are reclaimed by the
+     * eviction without being reported.
+     */
+    private void evictIfNeeded() {
+        if (bucketsToSweep > 0) {
+            sweepStale();
+        }
+        while (lru.getSize() > size || weight > maxWeight) {
+            evictEldest();
+        }
+    }
+    
+    /**
+     * Reclaims the stale entries of the next {@link #SWEEP_BUCKETS} buckets,
+     * so that they do not take the place of live ones for long.
+     */
+    private void sweepStale() {
+        int n = Math.min(SWEEP_BUCKETS, bucketsToSweep);
+        bucketsToSweep -= n;
+        for (; n > 0; n--) {
+            int index = sweepIndex;
+            sweepIndex = (sweepIndex + 1) % table.length;
+            Entry<K, V> previous = null;
+            Entry<K, V> entry = table[index];
+            while (entry != null) {
+                Entry<K, V> next = entry.next;
+                if (isStale(entry)) {
+                    unlink(index, previous, entry);
+                } else {
+                    previous = entry;
+                }
+                entry = next;
+            }
+        }
+    }
+    
+    /**
+     * Replaces the value of the given entry, updating its weight.
+     * 
+     * @param entry the entry
+     * @param value the new value
+     */
+    private void setValue(Entry<K, V> entry, V value) {
+        int newWeight = weigh(entry.key, value);
+        entry.value = value;
+        weight += newWeight - entry.weight;
+        entry.weight = newWeight;
+    }
+    
+    private int weigh(K key, V value) {
+        if (weigher == null) {
+            return 0;
+        }
+        int w = weigher.weigh(key, value);
+        if (w < 0) {
+            throw new IllegalArgumentException("Negative weight: "+w+" of "+key);
+        }
+        return w;
+    }
+    
+    /**
+     * Evicts the least recently used entry.
+     * 
+     * @return {@code false} if the cache was empty
+     */
+    boolean evictEldest() {
+        if (lru.getSize() == 0) {
+            return false;
+        }
+        LruEntry toClear = lru.extract(); // extract the least recently used
+        clear(indexOf(toClear.entry.hash), toClear.entry);
+        weight -= toClear.entry.weight;
+        releaseTag(toClear.entry.tag);
+        if (!isStale(toClear.entry)) {
+            // stale entries were already dropped as far as users are concerned
+            entryEvicted(toClear.entry);
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the group of entries of the given tag, creating it if needed.
+     * 
+     * @param tag the tag
+     * @return the group of {@code tag}
+     */
+    private Tag tagOf(Object tag) {
+        Tag t = tags.get(tag);
+        if (t == null) {
+            t = new Tag(tag);
+            tags.put(tag, t);
+        }
+        return t;
+    }
+    
+    private void setTag(Entry<?, ?> entry, Tag tag) {
+        if (tag != null) {
+            tag.count++;
+        }
+        releaseTag(entry.tag);
+        entry.tag = tag;
+        entry.tagGeneration = tag == null ? 0 : tag.generation;
+    }
+    
+    /**
+     * Drops a reference of an entry to the given tag, forgetting the tag
+     * if it was the last one.
+     * 
+     * @param tag the tag or {@code null}
+     */
+    private void releaseTag(Tag tag) {
+        if (tag != null && --tag.count == 0) {
+            tags.remove(tag.key);
+        }
+    }
+    
+    /**
+     * Returns the number of buckets the sweep has yet to search for stale
+     * entries.
+     * 
+     * @return the buckets left to sweep
+     */
+    int getNumberOfBucketsToSweep() {
+        return bucketsToSweep;
+    }
+    
+    /**
+     * Returns the number of tags with entries.
+     * 
+     * @return the number of tags
+     */
+    int getNumberOfTags() {
+        return tags.size();
+    }
+    
+    /**
+     * Returns {@code true} if the given entry has been invalidated,
+     * either by {@link #invalidateAll} or by {@link #invalidateTag}.
+     * 
+     * @param entry the entry to check
+     * @return {@code true} if the entry is stale
+     */
+    private boolean isStale(Entry<?, ?> entry) {
+        return entry.generation != generation
+            || (entry.tag != null && entry.tagGeneration != entry.tag.generation);
+    }
+    
+    /**
+     * Removes the given entry from its bucket and from the lru queue.
+     * 
+     * @param index the bucket of the entry
+     * @param previous the entry before the given one in the bucket or
+     * {@code null} if the given entry is the first one
+     * @param entry the entry to remove
+     */
+    private void unlink(int index, Entry<K, V> previous, Entry<K, V> entry) {
+        if (previous == null) {
+            table[index] = entry.next;
+        } else {
+            previous.next = entry.next;
+        }
+        entry.next = null;
+        lru.remove(entry.queueEntry);
+        entry.queueEntry = null;
+        weight -= entry.weight;
+        releaseTag(entry.tag);
+    }
+    
     /**
      * Compares the given key with the key of the given entry.
      * 
@@ -260,9 +916,19 @@ public class LruHashCache<K, V> {
      * @param entry the entry
      * @return {@code true} if the given key and the key of the given entry are equal.
      */
-    private static boolean isKey(Object key, int hash, Entry entry) {
+    private boolean isKey(K key, int hash, Entry<K, V> entry) {
         return hash == entry.hash && (
-                entry.key == key || entry.key.equals(key));
+                entry.key == key || keyEquivalence.equivalent(entry.key, key));
+    }
+    
+    /**
+     * Notifies {@link #entryEvicted(Object, Object)} for the given entry.
+     * 
+     * @param evicted the entry that was just evicted
+     */
+    @SuppressWarnings("unchecked")
+    private void entryEvicted(Entry evicted) {
+        entryEvicted((K) evicted.key, (V) evicted.value);
     }
     
     /**
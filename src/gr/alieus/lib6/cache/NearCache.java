@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache that keeps a tiny private cache per thread (level 0)
+ * in front of a shared one.
+ * <p/>
+ * The level 0 cache of each thread is a direct mapped table: every key has
+ * a single slot, and a new key simply overwrites whatever the slot held.
+ * Lookups served by it touch no memory shared with other threads.
+ * <p/>
+ * Every write through this cache increases a global version. Each thread
+ * compares the global version with the one its level 0 cache was filled at
+ * only once every {@code checkInterval} lookups, and discards its level 0
+ * cache if they differ. So a thread may keep seeing a value replaced by
+ * another thread for at most {@code checkInterval} of its own lookups.
+ * A thread always sees its own writes immediately.
+ * <p/>
+ * Since any write discards the level 0 caches, this cache is meant for read
+ * mostly data. Writes made directly to the shared cache, bypassing this one,
+ * are not detected at all.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class NearCache<K, V> implements Cache<K, V> {
+
+    /**
+     * The level 0 cache of a thread.
+     */
+    static final class Level0 {
+        final Object[] keys;
+        final Object[] values;
+
+        /** The global version this cache is known to be consistent with. */
+        long version;
+        int lookupsSinceCheck;
+
+        Level0(int slots, long version) {
+            keys = new Object[slots];
+            values = new Object[slots];
+            this.version = version;
+        }
+
+        void clear(long newVersion) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            version = newVersion;
+        }
+    }
+
+    private final Cache<K, V> shared;
+    private final int mask;
+    private final int checkInterval;
+    private final AtomicLong version = new AtomicLong();
+    private final ThreadLocal<Level0> local;
+
+    /**
+     * Creates a new near cache.
+     * 
+     * @param shared the shared cache; it must be thread safe
+     * @param slots the number of slots of every level 0 cache, rounded up to
+     * a power of two
+     * @param checkInterval the number of lookups a thread makes between
+     * checks of the global version
+     * @throws IllegalArgumentException if {@code slots} or
+     * {@code checkInterval} is not positive
+     * @see CacheUtil#synchronizedCache
+     */
+    public NearCache(Cache<K, V> shared, int slots, int checkInterval) {
+        if (slots <= 0 || slots > 1 << 30) {
+            throw new IllegalArgumentException("Illegal number of slots: "+slots);
+        }
+        if (checkInterval <= 0) {
+            throw new IllegalArgumentException("Check interval must be positive: "+checkInterval);
+        }
+        this.shared = shared;
+        this.checkInterval = checkInterval;
+        final int tableSize = slots == 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+        this.mask = tableSize - 1;
+        this.local = new ThreadLocal<Level0>() {
+            @Override
+            protected Level0 initialValue() {
+                return new Level0(tableSize, version.get());
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V lookUp(K key) {
+        Level0 l0 = local.get();
+        if (++l0.lookupsSinceCheck >= checkInterval) {
+            l0.lookupsSinceCheck = 0;
+            long current = version.get();
+            if (current != l0.version) {
+                l0.clear(current);
+            }
+        }
+
+        int i = slotOf(key);
+        Object k = l0.keys[i];
+        if (k != null && (k == key || k.equals(key))) {
+            return (V) l0.values[i];
+        }
+
+        V value = shared.lookUp(key);
+        if (value != null) {
+            l0.keys[i] = key;
+            l0.values[i] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public void store(K key, V value) {
+        shared.store(key, value);
+        written(key, value);
+    }
+
+    @Override
+    public V remove(K key) {
+        V result = shared.remove(key);
+        written(key, null);
+        return result;
+    }
+
+    @Override
+    public V storeIfAbsent(K key, V value) {
+        V existing = shared.storeIfAbsent(key, value);
+        if (existing == null) {
+            written(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        if (shared.replace(key, expected, newValue)) {
+            written(key, newValue);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        V result = shared.compute(key, computation);
+        written(key, result);
+        return result;
+    }
+
+    @Override
+    public void invalidateAll() {
+        shared.invalidateAll();
+        local.get().clear(version.incrementAndGet());
+    }
+
+    /**
+     * Announces a write to the other threads and updates the level 0 cache
+     * of the current thread.
+     * 
+     * @param key the written key
+     * @param value the new value of the key or {@code null} if it was removed
+     */
+    private void written(K key, V value) {
+        long newVersion = version.incrementAndGet();
+        Level0 l0 = local.get();
+        if (l0.version == newVersion - 1) {
+            // nobody else wrote since this thread last synchronized
+            l0.version = newVersion;
+        }
+        int i = slotOf(key);
+        if (value == null) {
+            Object k = l0.keys[i];
+            if (k != null && (k == key || k.equals(key))) {
+                l0.keys[i] = null;
+                l0.values[i] = null;
+            }
+        } else {
+            l0.keys[i] = key;
+            l0.values[i] = value;
+        }
+    }
+
+    private int slotOf(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
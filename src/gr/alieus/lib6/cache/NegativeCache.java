@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers keys that are known not to exist, using a fixed amount of memory.
+ * <p/>
+ * Absent keys are recorded as 16 bit fingerprints in a pair of cuckoo
+ * filters. New keys go to the current filter. Every half of the time to live
+ * the filters rotate: the previous filter is cleared and becomes the current
+ * one. So a key is remembered for at least half and at most the whole time
+ * to live. The filters also rotate early if the current one fills up.
+ * <p/>
+ * Being probabilistic, a key that was never recorded may be reported as
+ * absent, with a probability of about 1 / 4000. Recording a key as present
+ * may also forget another absent key with the same fingerprint, which only
+ * costs an extra load.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @see LoadingCache
+ */
+public class NegativeCache<K> {
+
+    private CuckooFilter current;
+    private CuckooFilter previous;
+    private final long rotationNanos;
+    private long currentSince;
+
+    /**
+     * Creates a new negative cache.
+     * 
+     * @param memoryBudget the maximum number of bytes to use for the filters
+     * @param timeToLive the maximum time a key is remembered as absent
+     * @param unit the unit of {@code timeToLive}
+     * @throws IllegalArgumentException if the budget is too small for
+     * a filter of a single bucket or the time to live is not positive
+     */
+    public NegativeCache(long memoryBudget, long timeToLive, TimeUnit unit) {
+        long bucketsPerFilter = memoryBudget / 2 / CuckooFilter.BYTES_PER_BUCKET;
+        if (bucketsPerFilter < 1) {
+            throw new IllegalArgumentException("Memory budget too small: "+memoryBudget);
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive: "+timeToLive);
+        }
+        int buckets = (int) Long.highestOneBit(Math.min(bucketsPerFilter, 1 << 28));
+        current = new CuckooFilter(buckets);
+        previous = new CuckooFilter(buckets);
+        rotationNanos = unit.toNanos(timeToLive) / 2;
+        currentSince = now();
+    }
+
+    /**
+     * Records that the given key does not exist. A key already recorded
+     * since the last rotation is not added again, so that a single
+     * {@link #recordPresent} forgets it.
+     * 
+     * @param key the absent key
+     */
+    public void recordAbsent(K key) {
+        rotateIfDue();
+        long hash = hash(key);
+        if (current.mightContain(hash)) {
+            return;
+        }
+        if (!current.add(hash)) {
+            rotate();
+            current.add(hash);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the given key is (probably) known not to exist.
+     * 
+     * @param key the key to check
+     * @return {@code true} if {@code key} was recorded as absent
+     */
+    public boolean isKnownAbsent(K key) {
+        rotateIfDue();
+        long hash = hash(key);
+        return current.mightContain(hash) || previous.mightContain(hash);
+    }
+
+    /**
+     * Records that the given key exists (again), so that it is no longer
+     * reported as absent.
+     * 
+     * @param key the existing key
+     */
+    public void recordPresent(K key) {
+        long hash = hash(key);
+        current.delete(hash);
+        previous.delete(hash);
+    }
+
+    /**
+     * Forgets all absent keys.
+     */
+    public void clear() {
+        current.clear();
+        previous.clear();
+        currentSince = now();
+    }
+
+    /**
+     * Returns the number of memory bytes used for the fingerprints.
+     * 
+     * @return the memory footprint of the filters
+     */
+    public long getMemoryUsage() {
+        return 4L * current.capacity();
+    }
+
+    /**
+     * Returns the current time in nanoseconds.
+     * Package private so tests may control the clock.
+     * 
+     * @return the current value of the time source, in nanoseconds
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    private void rotateIfDue() {
+        long elapsed = now() - currentSince;
+        if (elapsed >= 2 * rotationNanos) {
+            // idle for a whole time to live: both filters are out of date
+            clear();
+        } else if (elapsed >= rotationNanos) {
+            long since = currentSince;
+            rotate();
+            // the keys of the new previous filter expire a whole time to live
+            // after their filter became current, not after this late rotation
+            currentSince = since + rotationNanos;
+        }
+    }
+
+    private void rotate() {
+        CuckooFilter oldest = previous;
+        oldest.clear();
+        previous = current;
+        current = oldest;
+        currentSince = now();
+    }
+
+    private static long hash(Object key) {
+        // spread the 32 bits of the hash code to 64 (murmur3 finalizer)
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Cache divided in namespaces (e.g. tenants) that share a single capacity.
+ * <p/>
+ * Every namespace is guaranteed a minimum number of entries and may grow up
+ * to a maximum (burst) number of entries while the other namespaces leave
+ * space unused. The fair share of a namespace is its minimum plus an equal
+ * part of the capacity that is not reserved as a minimum by any namespace.
+ * When the total capacity is exceeded, the least recently used entry of the
+ * namespace that is the furthest above its fair share is evicted.
+ * No namespace is ever reduced below its minimum by another namespace.
+ * <p/>
+ * Each namespace is an {@link LruHashCache} of its maximum size, which keeps
+ * the hit and miss statistics of the namespace. Its table starts small and
+ * grows with its entries, so idle namespaces take little memory whatever
+ * their maximum.
+ * Choosing a namespace to evict from takes time proportional to the number
+ * of namespaces.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <N> the type of the namespaces
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class PartitionedCache<N, K, V> {
+
+    /**
+     * The entries of a namespace.
+     */
+    final class Partition implements Cache<K, V> {
+        final N namespace;
+        final LruHashCache<K, V> cache;
+        final int min;
+
+        Partition(N namespace, int min, int max) {
+            this.namespace = namespace;
+            this.cache = new LruHashCache<K, V>(max, Math.min(max, INITIAL_SIZE));
+            this.min = min;
+        }
+
+        int count() {
+            return cache.getNumberOfEntries();
+        }
+
+        int fairShare() {
+            return Math.min(cache.getSize(),
+                    min + (capacity - reserved) / partitions.size());
+        }
+
+        @Override
+        public V lookUp(K key) {
+            int before = count();
+            V result = cache.lookUp(key);
+            changed(before);
+            return result;
+        }
+
+        @Override
+        public void store(K key, V value) {
+            int before = count();
+            cache.store(key, value);
+            changed(before);
+        }
+
+        @Override
+        public V remove(K key) {
+            int before = count();
+            V result = cache.remove(key);
+            changed(before);
+            return result;
+        }
+
+        @Override
+        public V storeIfAbsent(K key, V value) {
+            int before = count();
+            V result = cache.storeIfAbsent(key, value);
+            changed(before);
+            return result;
+        }
+
+        @Override
+        public boolean replace(K key, V expected, V newValue) {
+            int before = count();
+            boolean result = cache.replace(key, expected, newValue);
+            changed(before);
+            return result;
+        }
+
+        @Override
+        public V compute(K key, Computation<? super K, V> computation) {
+            int before = count();
+            V result = cache.compute(key, computation);
+            changed(before);
+            return result;
+        }
+
+        @Override
+        public void invalidateAll() {
+            cache.invalidateAll();
+        }
+
+        /**
+         * Accounts for the entries added or reclaimed by an operation and
+         * evicts entries if the total capacity is exceeded.
+         */
+        private void changed(int countBefore) {
+            totalCount += count() - countBefore;
+            while (totalCount > capacity) {
+                chooseVictim().cache.evictEldest();
+                totalCount--;
+            }
+        }
+    }
+
+    /** The number of entries the table of a new namespace is sized for. */
+    static final int INITIAL_SIZE = 16;
+
+    private final Map<N, Partition> partitions = new LinkedHashMap<N, Partition>();
+    private final int capacity;
+
+    /** The sum of the minimums of all namespaces. */
+    private int reserved;
+    private int totalCount;
+
+    /**
+     * Creates a new partitioned cache.
+     * 
+     * @param capacity the maximum number of entries of all namespaces together
+     */
+    public PartitionedCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a new namespace.
+     * 
+     * @param namespace the new namespace
+     * @param min the number of entries guaranteed to the namespace
+     * @param max the maximum number of entries of the namespace
+     * @throws IllegalArgumentException if {@code min > max}, {@code max}
+     * exceeds the capacity or the minimum cannot be guaranteed because the
+     * sum of the minimums would exceed the capacity
+     * @throws IllegalStateException if the namespace already exists
+     */
+    public void addNamespace(N namespace, int min, int max) {
+        if (min < 0 || min > max || max > capacity) {
+            throw new IllegalArgumentException("Illegal bounds: min="+min+", max="+max);
+        }
+        if (reserved + min > capacity) {
+            throw new IllegalArgumentException("Cannot guarantee "+min+" entries, only "
+                    +(capacity - reserved)+" are not reserved");
+        }
+        if (partitions.containsKey(namespace)) {
+            throw new IllegalStateException("Namespace: "+namespace+" already exists.");
+        }
+        partitions.put(namespace, new Partition(namespace, min, max));
+        reserved += min;
+    }
+
+    /**
+     * Returns the cache of the given namespace.
+     * Operations on the returned cache may evict entries of other namespaces.
+     * 
+     * @param namespace the namespace
+     * @return the cache of {@code namespace}
+     * @throws NoSuchElementException if the namespace does not exist
+     */
+    public Cache<K, V> namespace(N namespace) throws NoSuchElementException {
+        return partition(namespace);
+    }
+
+    /**
+     * Returns the number of entries of the given namespace.
+     * 
+     * @param namespace the namespace
+     * @return the number of entries of {@code namespace}
+     * @throws NoSuchElementException if the namespace does not exist
+     */
+    public int getNumberOfEntries(N namespace) throws NoSuchElementException {
+        return partition(namespace).count();
+    }
+
+    /**
+     * Returns the number of entries of all namespaces.
+     * 
+     * @return the total number of entries
+     */
+    public int getNumberOfEntries() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the number of lookups of the given namespace that found a value.
+     * 
+     * @param namespace the namespace
+     * @return the hits of {@code namespace}
+     * @throws NoSuchElementException if the namespace does not exist
+     */
+    public long getHits(N namespace) throws NoSuchElementException {
+        return partition(namespace).cache.getHits();
+    }
+
+    /**
+     * Returns the number of lookups of the given namespace that found nothing.
+     * 
+     * @param namespace the namespace
+     * @return the misses of {@code namespace}
+     * @throws NoSuchElementException if the namespace does not exist
+     */
+    public long getMisses(N namespace) throws NoSuchElementException {
+        return partition(namespace).cache.getMisses();
+    }
+
+    /**
+     * Returns the capacity.
+     * 
+     * @return the maximum number of entries of all namespaces together
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private Partition partition(N namespace) throws NoSuchElementException {
+        Partition p = partitions.get(namespace);
+        if (p == null) {
+            throw new NoSuchElementException("Namespace: "+namespace+" does not exist.");
+        }
+        return p;
+    }
+
+    /**
+     * Returns the namespace that is the furthest above its fair share among
+     * those above their minimum.
+     * Since the sum of minimums never exceeds the capacity, there is always
+     * such a namespace while the capacity is exceeded.
+     */
+    private Partition chooseVictim() {
+        Partition victim = null;
+        int victimExcess = 0;
+        for (Partition p : partitions.values()) {
+            int count = p.count();
+            if (count > p.min) {
+                int excess = count - p.fairShare();
+                if (victim == null || excess > victimExcess) {
+                    victim = p;
+                    victimExcess = excess;
+                }
+            }
+        }
+        return victim;
+    }
+}
@@ -116,6 +116,30 @@ final class Queue<T> {
         return result;
     }
     
+    /**
+     * Removes the specified Node from the queue.
+     * The specified Node is assumed to belong to the queue.
+     * 
+     * @param node the node to be removed
+     */
+    public void remove(Node<T> node) {
+        Node<T> prev = node.previous,
+                next = node.next;
+        if (prev != null) {
+            prev.next = next;
+        } else {
+            head = next;
+        }
+        if (next != null) {
+            next.previous = prev;
+        } else {
+            tail = prev;
+        }
+        node.previous = null;
+        node.next = null;
+        size--;
+    }
+    
     /**
      * Moves the specified Node to the end of the queue.
      * The specified Node is assumed to belong to the queue.
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Cache implementation that approximates the "Least Recently Used" (lru)
+ * replacement policy without maintaining any list of the entries.
+ * <p/>
+ * The entries are kept in three parallel arrays (keys, values and access
+ * stamps) of an open addressed hashtable, so there are no per entry objects
+ * besides the keys and the values themselves.
+ * Every access writes the current value of a coarse clock to the stamp of
+ * the entry. The clock advances once per store, so lookups write nothing
+ * but the stamp.
+ * When a new key is stored while the cache is full, a few entries are picked
+ * at random and the one accessed least recently among them is evicted.
+ * The more entries sampled, the closer the policy is to a true lru.
+ * <p/>
+ * {@link #invalidateAll} takes constant time: entries stamped before the
+ * invalidation are treated as missing and, having the oldest stamps,
+ * are the first to be evicted. Stamps are compared with wrap-around
+ * arithmetic, so an entry is assumed not to stay untouched for more than
+ * 2<sup>31</sup> stores.
+ * <p/>
+ * Time complexity for store, lookup and remove is O(1) on average.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * See {@link CacheUtil#synchronizedCache}.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see LruHashCache
+ */
+public class SampledLruCache<K, V> implements Cache<K, V> {
+
+    static final int DEFAULT_SAMPLE_SIZE = 5;
+
+    /** The maximum ratio: (number of entries) / (hashtable length). */
+    static final float LOAD_FACTOR = 0.75F;
+
+    private final Object[] keys;
+    private final Object[] values;
+
+    /** The value of the clock when each entry was last accessed. */
+    private final int[] stamps;
+
+    private final int mask;
+
+    /** The maximum number of entries this cache can store. */
+    private final int size;
+
+    /** The number of entries examined to choose one for eviction. */
+    private final int sampleSize;
+
+    private int count;
+
+    /** Coarse clock, advanced by every store. */
+    private int clock;
+
+    /** Entries stamped before this value have been invalidated. */
+    private int validFrom;
+
+    /** State of the xorshift generator used for sampling. */
+    private long seed = 0x2545F4914F6CDD1DL;
+
+    /**
+     * Creates a new cache with the given size that samples the given number
+     * of entries on eviction.
+     * 
+     * @param size the size of the cache
+     * @param sampleSize the number of entries to sample on eviction
+     * @throws IllegalArgumentException if any of the arguments is not positive
+     */
+    public SampledLruCache(int size, int sampleSize) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: "+size);
+        }
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive: "+sampleSize);
+        }
+        this.size = size;
+        this.sampleSize = sampleSize;
+        int tableSize = Integer.highestOneBit((int) Math.ceil(size / LOAD_FACTOR)) << 1;
+        keys = new Object[tableSize];
+        values = new Object[tableSize];
+        stamps = new int[tableSize];
+        mask = tableSize - 1;
+    }
+
+    /**
+     * Creates a new cache with the given size that samples 5 entries
+     * on eviction.
+     * 
+     * @param size the size of the cache
+     */
+    public SampledLruCache(int size) {
+        this(size, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Returns the size.
+     * 
+     * @return the maximum number of entries
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of entries currently in the cache,
+     * including invalidated entries that have not been reclaimed yet.
+     * 
+     * @return the number of entries
+     */
+    public int getNumberOfEntries() {
+        return count;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V lookUp(K key) {
+        int i = slotOf(key);
+        if (keys[i] == null || reclaimIfStale(i)) {
+            return null;
+        }
+        stamps[i] = clock;
+        return (V) values[i];
+    }
+
+    @Override
+    public void store(K key, V value) {
+        clock++;
+        int i = slotOf(key);
+        if (keys[i] == null) {
+            insert(key, value);
+        } else {
+            values[i] = value;
+            stamps[i] = clock;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        int i = slotOf(key);
+        if (keys[i] == null) {
+            return null;
+        }
+        V result = isStale(i) ? null : (V) values[i];
+        delete(i);
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V storeIfAbsent(K key, V value) {
+        clock++;
+        int i = slotOf(key);
+        if (keys[i] == null || reclaimIfStale(i)) {
+            insert(key, value);
+            return null;
+        }
+        stamps[i] = clock;
+        return (V) values[i];
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        int i = slotOf(key);
+        if (keys[i] == null || reclaimIfStale(i)) {
+            return false;
+        }
+        Object current = values[i];
+        if (expected == null ? current != null : !expected.equals(current)) {
+            return false;
+        }
+        clock++;
+        values[i] = newValue;
+        stamps[i] = clock;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V compute(K key, Computation<? super K, V> computation) {
+        int i = slotOf(key);
+        boolean found = keys[i] != null && !reclaimIfStale(i);
+        V newValue = computation.compute(key, found ? (V) values[i] : null);
+        if (newValue == null) {
+            if (found) {
+                delete(i);
+            }
+        } else if (found) {
+            clock++;
+            values[i] = newValue;
+            stamps[i] = clock;
+        } else {
+            clock++;
+            insert(key, newValue);
+        }
+        return newValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This operation takes constant time. The invalidated entries are
+     * reclaimed lazily, so they keep taking up space until then.
+     */
+    @Override
+    public void invalidateAll() {
+        validFrom = ++clock;
+    }
+
+    /**
+     * Returns the slot of the given key or, if the key does not exist,
+     * the empty slot where it should be inserted.
+     * 
+     * @param key the key
+     * @return the slot of {@code key}
+     */
+    private int slotOf(Object key) {
+        int i = hash(key) & mask;
+        Object k;
+        while ((k = keys[i]) != null && k != key && !k.equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Inserts a key that does not exist, evicting an entry if the cache is full.
+     * 
+     * @param key the new key
+     * @param value the value of the new key
+     */
+    private void insert(K key, V value) {
+        if (count >= size) {
+            delete(sampleVictim());
+        }
+        // eviction may have moved entries, so the slot is searched again
+        int i = slotOf(key);
+        keys[i] = key;
+        values[i] = value;
+        stamps[i] = clock;
+        count++;
+    }
+
+    /**
+     * Samples some random entries and returns the slot of the one accessed
+     * least recently.
+     * 
+     * @return the slot of the entry to evict
+     */
+    private int sampleVictim() {
+        int victim = -1;
+        for (int s = 0; s < sampleSize; s++) {
+            int i = nextRandom() & mask;
+            while (keys[i] == null) {
+                i = (i + 1) & mask;
+            }
+            if (victim < 0 || stamps[i] - stamps[victim] < 0) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Removes the entry of the given slot and shifts back the entries that
+     * follow it, so that no tombstones are needed.
+     * 
+     * @param slot the slot to clear
+     */
+    private void delete(int slot) {
+        int i = slot;
+        int j = slot;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == null) {
+                break;
+            }
+            int home = hash(keys[j]) & mask;
+            // the entry at j may fill the hole at i only if its home slot
+            // is not cyclically within (i, j]
+            boolean stays = i <= j
+                ? i < home && home <= j
+                : i < home || home <= j;
+            if (!stays) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                stamps[i] = stamps[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        values[i] = null;
+        count--;
+    }
+
+    private boolean isStale(int slot) {
+        return stamps[slot] - validFrom < 0;
+    }
+
+    /**
+     * Deletes the entry of the given slot if it has been invalidated.
+     * 
+     * @param slot the slot of an existing entry
+     * @return {@code true} if the entry was stale and was deleted
+     */
+    private boolean reclaimIfStale(int slot) {
+        if (isStale(slot)) {
+            delete(slot);
+            return true;
+        }
+        return false;
+    }
+
+    private int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed >>> 32);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
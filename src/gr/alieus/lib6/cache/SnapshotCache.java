@@ -0,0 +1,291 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read optimized cache for data that rarely changes.
+ * <p/>
+ * The entries are kept in an immutable snapshot: a flat open addressing
+ * table of keys and values, published through a single volatile reference.
+ * Lookups take no locks, write nothing and keep no statistics or recency
+ * information, so any number of threads can read without contention.
+ * <p/>
+ * Every change builds and publishes a new snapshot, which takes time
+ * proportional to the number of entries. To apply many changes at once use
+ * a {@link Batch} or {@link #reload}, which build a single snapshot.
+ * Changes are serialized with each other; readers see either the old or
+ * the new snapshot, never a partial change.
+ * <p/>
+ * There is no eviction: the cache holds whatever is stored in it.
+ * The {@code Cache} methods are provided so that callers can switch from
+ * other caches; all of them are thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class SnapshotCache<K, V> implements Cache<K, V> {
+
+    /**
+     * Immutable table of entries.
+     * Keys are at the even indexes of the table and their values right after
+     * them; there is always at least one empty slot.
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0);
+
+        final Object[] table;
+        final int mask;
+        int size;
+
+        Snapshot(int expectedSize) {
+            int capacity = 2; // slots, each of two array elements
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            table = new Object[capacity * 2];
+            mask = capacity - 1;
+        }
+
+        Object get(Object key) {
+            Object[] t = table;
+            int i = slotOf(key, mask);
+            while (true) {
+                Object k = t[i << 1];
+                if (k == null) {
+                    return null;
+                }
+                if (k == key || k.equals(key)) {
+                    return t[(i << 1) + 1];
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /** Used only while building the snapshot. */
+        void add(Object key, Object value) {
+            int i = slotOf(key, mask);
+            while (table[i << 1] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i << 1] = key;
+            table[(i << 1) + 1] = value;
+            size++;
+        }
+
+        /**
+         * Returns a new snapshot with the entries of this one and the given
+         * changes applied.
+         * 
+         * @param changes the new values of keys, {@link #REMOVED} for
+         * the keys to remove
+         */
+        Snapshot with(Map<?, ?> changes) {
+            Snapshot result = new Snapshot(size + changes.size());
+            for (int i = 0; i < table.length; i += 2) {
+                Object k = table[i];
+                if (k != null && !changes.containsKey(k)) {
+                    result.add(k, table[i + 1]);
+                }
+            }
+            for (Map.Entry<?, ?> change : changes.entrySet()) {
+                if (change.getValue() != REMOVED) {
+                    result.add(change.getKey(), change.getValue());
+                }
+            }
+            return result;
+        }
+
+        private static int slotOf(Object key, int mask) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * A set of changes applied to the cache at once by {@link #commit}.
+     * NOTE: a batch is not thread safe; use it from a single thread.
+     * 
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     */
+    public static final class Batch<K, V> {
+        private final SnapshotCache<K, V> cache;
+        private final Map<K, Object> changes = new LinkedHashMap<K, Object>();
+
+        Batch(SnapshotCache<K, V> cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * Adds the storing of the given value to this batch.
+         * 
+         * @param key the key
+         * @param value the new value of {@code key}
+         * @return this batch
+         */
+        public Batch<K, V> store(K key, V value) {
+            if (value == null) {
+                throw new NullPointerException("value");
+            }
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Adds the removal of the given key to this batch.
+         * 
+         * @param key the key
+         * @return this batch
+         */
+        public Batch<K, V> remove(K key) {
+            changes.put(key, REMOVED);
+            return this;
+        }
+
+        /**
+         * Applies the changes of this batch with a single new snapshot
+         * and clears the batch, so that it can be reused.
+         */
+        public void commit() {
+            if (!changes.isEmpty()) {
+                cache.apply(changes);
+                changes.clear();
+            }
+        }
+    }
+
+    /** Marks a removed key in a set of changes. */
+    static final Object REMOVED = new Object();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Creates a new empty cache.
+     */
+    public SnapshotCache() {
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V lookUp(K key) {
+        return (V) snapshot.get(key);
+    }
+
+    /**
+     * Returns a new empty batch of changes.
+     * 
+     * @return a new batch
+     */
+    public Batch<K, V> batch() {
+        return new Batch<K, V>(this);
+    }
+
+    /**
+     * Replaces all the entries of this cache with the given ones.
+     * 
+     * @param entries the new entries
+     */
+    public void reload(Map<? extends K, ? extends V> entries) {
+        Snapshot s = new Snapshot(entries.size());
+        for (Map.Entry<? extends K, ? extends V> e : entries.entrySet()) {
+            if (e.getValue() == null) {
+                throw new NullPointerException("value of "+e.getKey());
+            }
+            s.add(e.getKey(), e.getValue());
+        }
+        synchronized (this) {
+            snapshot = s;
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     * 
+     * @return the number of entries in the current snapshot
+     */
+    public int getNumberOfEntries() {
+        return snapshot.size;
+    }
+
+    @Override
+    public void store(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        apply(Collections.singletonMap(key, value));
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        V old = lookUp(key);
+        if (old != null) {
+            apply(Collections.singletonMap(key, REMOVED));
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized V storeIfAbsent(K key, V value) {
+        V old = lookUp(key);
+        if (old == null) {
+            store(key, value);
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized boolean replace(K key, V expected, V newValue) {
+        V old = lookUp(key);
+        if (old == null || !old.equals(expected)) {
+            return false;
+        }
+        store(key, newValue);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The computation runs while changes are blocked, but readers are not.
+     */
+    @Override
+    public synchronized V compute(K key, Computation<? super K, V> computation) {
+        V old = lookUp(key);
+        V result = computation.compute(key, old);
+        if (result != null) {
+            store(key, result);
+        } else if (old != null) {
+            apply(Collections.singletonMap(key, REMOVED));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        snapshot = Snapshot.EMPTY;
+    }
+
+    synchronized void apply(Map<?, ?> changes) {
+        snapshot = snapshot.with(changes);
+    }
+}
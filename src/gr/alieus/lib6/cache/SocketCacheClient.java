@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+
+/**
+ * Cache served by a {@link SocketCacheServer}, possibly in another process.
+ * <p/>
+ * Keys and values must be serializable, and values must implement
+ * {@code equals} for {@link #replace} and {@link #compute}, since the
+ * values compared are copies. A computation runs in the client: the value is
+ * read, computed and written back with {@code replace} and friends, which
+ * are repeated if another client changed the value in between.
+ * <p/>
+ * Requests over a single client are serialized; for concurrent requests use
+ * a client per thread. I/O failures are thrown as
+ * {@link IllegalStateException}s.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class SocketCacheClient<K, V> implements Cache<K, V>, Closeable {
+
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+
+    /**
+     * Connects to a cache server.
+     * 
+     * @param host the host of the server
+     * @param port the port of the server
+     * @throws IOException if the connection fails
+     */
+    public SocketCacheClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.flush();
+        in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V lookUp(K key) {
+        return (V) call(SocketCacheServer.LOOK_UP, key);
+    }
+
+    @Override
+    public void store(K key, V value) {
+        call(SocketCacheServer.STORE, key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        return (V) call(SocketCacheServer.REMOVE, key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V storeIfAbsent(K key, V value) {
+        return (V) call(SocketCacheServer.STORE_IF_ABSENT, key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        return (Boolean) call(SocketCacheServer.REPLACE, key, expected, newValue);
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        while (true) {
+            V value = lookUp(key);
+            V result = computation.compute(key, value);
+            if (value == null) {
+                if (result == null || storeIfAbsent(key, result) == null) {
+                    return result;
+                }
+            } else if (result == null) {
+                if ((Boolean) call(SocketCacheServer.REMOVE_IF, key, value)) {
+                    return null;
+                }
+            } else if (replace(key, value, result)) {
+                return result;
+            }
+            // changed by another client in the meantime
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        call(SocketCacheServer.INVALIDATE_ALL);
+    }
+
+    /**
+     * Closes the connection.
+     * 
+     * @throws IOException if closing the socket fails
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private synchronized Object call(int op, Object... args) {
+        try {
+            out.writeByte(op);
+            for (Object arg : args) {
+                out.writeObject(arg);
+            }
+            out.reset();
+            out.flush();
+            boolean ok = in.readBoolean();
+            Object result = in.readObject();
+            if (!ok) {
+                throw (RuntimeException) result;
+            }
+            return result;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Request to "+socket.getRemoteSocketAddress()+" failed", ex);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("Request to "+socket.getRemoteSocketAddress()+" failed", ex);
+        }
+    }
+}
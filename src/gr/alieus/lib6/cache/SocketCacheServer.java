@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves a cache to {@link SocketCacheClient}s over TCP sockets.
+ * <p/>
+ * Every connection is served by its own daemon thread, so the served cache
+ * must be thread safe. Keys and values are transferred with Java
+ * serialization.
+ * <p/>
+ * WARNING: the server deserializes whatever its peers send, and
+ * deserializing untrusted data can run arbitrary code through the classes
+ * on the class path. Serve only trusted peers: the default constructor
+ * listens on the loopback interface only, and a socket given to the other
+ * constructor must not be reachable by untrusted hosts.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see CacheUtil#synchronizedCache
+ */
+public class SocketCacheServer<K, V> implements Closeable {
+
+    static final int LOOK_UP = 1;
+    static final int STORE = 2;
+    static final int REMOVE = 3;
+    static final int STORE_IF_ABSENT = 4;
+    static final int REPLACE = 5;
+    static final int REMOVE_IF = 6;
+    static final int INVALIDATE_ALL = 7;
+
+    private final Cache<K, V> cache;
+    private final ServerSocket serverSocket;
+
+    /**
+     * Creates a new server listening on an ephemeral port of the loopback
+     * interface and starts accepting connections.
+     * 
+     * @param cache the cache to serve
+     * @throws IOException if the server socket cannot be created
+     * @see #getPort
+     */
+    public SocketCacheServer(Cache<K, V> cache) throws IOException {
+        this(cache, new ServerSocket(0, 50, InetAddress.getByName(null)));
+    }
+
+    /**
+     * Creates a new server that accepts connections on the given socket.
+     * The socket must accept only trusted peers; see the warning above.
+     * 
+     * @param cache the cache to serve
+     * @param serverSocket the bound server socket
+     */
+    public SocketCacheServer(Cache<K, V> cache, ServerSocket serverSocket) {
+        this.cache = cache;
+        this.serverSocket = serverSocket;
+        Thread acceptor = new Thread("SocketCacheServer-"+serverSocket.getLocalPort()) {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port this server listens to.
+     * 
+     * @return the local port of the server socket
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections.
+     * Connections already open are served until their clients close them.
+     * 
+     * @throws IOException if closing the server socket fails
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ex) {
+                return; // closed
+            }
+            Thread worker = new Thread("SocketCacheServer-"+socket.getRemoteSocketAddress()) {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            try {
+                socket.setTcpNoDelay(true);
+                ObjectOutputStream out = new ObjectOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream()));
+                out.flush(); // the client waits for the stream header
+                ObjectInputStream in = new ObjectInputStream(
+                        new BufferedInputStream(socket.getInputStream()));
+                while (true) {
+                    int op;
+                    try {
+                        op = in.readByte();
+                    } catch (IOException ex) {
+                        return; // the client closed the connection
+                    }
+                    Object result;
+                    try {
+                        result = execute(op, in);
+                    } catch (RuntimeException ex) {
+                        out.writeBoolean(false);
+                        out.writeObject(ex);
+                        out.reset();
+                        out.flush();
+                        continue;
+                    }
+                    out.writeBoolean(true);
+                    out.writeObject(result);
+                    // forget the written objects, they may change before the next request
+                    out.reset();
+                    out.flush();
+                }
+            } finally {
+                socket.close();
+            }
+        } catch (IOException ex) {
+            // the connection is broken; the client sees that as well
+        } catch (ClassNotFoundException ex) {
+            // the client sent a class unknown here; drop the connection
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object execute(int op, ObjectInputStream in) throws IOException, ClassNotFoundException {
+        switch (op) {
+            case LOOK_UP:
+                return cache.lookUp((K) in.readObject());
+            case STORE:
+                cache.store((K) in.readObject(), (V) in.readObject());
+                return null;
+            case REMOVE:
+                return cache.remove((K) in.readObject());
+            case STORE_IF_ABSENT:
+                return cache.storeIfAbsent((K) in.readObject(), (V) in.readObject());
+            case REPLACE:
+                return cache.replace((K) in.readObject(), (V) in.readObject(), (V) in.readObject());
+            case REMOVE_IF: {
+                K key = (K) in.readObject();
+                final V expected = (V) in.readObject();
+                final boolean[] removed = new boolean[1];
+                cache.compute(key, new Computation<K, V>() {
+                    @Override
+                    public V compute(K key, V value) {
+                        removed[0] = value != null && value.equals(expected);
+                        return removed[0] ? null : value;
+                    }
+                });
+                return removed[0];
+            }
+            case INVALIDATE_ALL:
+                cache.invalidateAll();
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown operation: "+op);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+/**
+ * Computes the weight of cache entries, e.g. the bytes they occupy.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see LruHashCache#LruHashCache(int, long, Weigher)
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of the given entry.
+     * The weight of an entry must not change while it is in the cache.
+     * 
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @return the weight of the entry; must not be negative
+     */
+    int weigh(K key, V value);
+}
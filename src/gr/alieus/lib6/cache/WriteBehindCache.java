@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code LruHashCache} that writes the stored entries to a {@link CacheWriter}
+ * lazily and in batches, instead of on every store.
+ * <p/>
+ * Stored entries are marked dirty. Dirty entries are coalesced per key:
+ * storing a key that is already dirty only replaces its pending value, so the
+ * writer receives just the latest value of each key.
+ * The dirty entries are flushed to the writer in batches when either
+ * <ul>
+ * <li>their number reaches the batch size, or</li>
+ * <li>the oldest of them has been dirty for longer than the maximum delay.</li>
+ * </ul>
+ * Both conditions are checked on every store. Since this cache has no
+ * background threads, callers that may stay idle for long should call
+ * {@link #flushIfDue} periodically (or {@link #flush} before shutdown).
+ * <p/>
+ * Dirty entries are never lost to eviction: evicting a dirty entry forces
+ * a synchronous flush of all the dirty entries. The same applies to removing
+ * a dirty entry, either via {@code remove} or via a {@code compute} that
+ * results to {@code null}; removal only drops the entry from the cache,
+ * it does not delete it from the backing store. Invalidations flush all the
+ * dirty entries before dropping them.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see CacheWriter
+ */
+public class WriteBehindCache<K, V> extends LruHashCache<K, V> {
+
+    private final CacheWriter<K, V> writer;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    /**
+     * The latest value of every dirty key, in the order the keys became dirty.
+     * Re-storing a dirty key does not change its position, so the first
+     * entry is always the oldest one.
+     */
+    private final Map<K, V> dirty = new LinkedHashMap<K, V>();
+
+    /** The time the oldest dirty entry became dirty. */
+    private long oldestDirtyTime;
+
+    /**
+     * Creates a new write-behind cache.
+     * 
+     * @param size the size of the cache
+     * @param writer the writer to flush the dirty entries to
+     * @param batchSize the maximum number of entries written at once; a flush
+     * occurs as soon as that many entries are dirty
+     * @param maxDelay the maximum time an entry may stay dirty before a flush
+     * is due
+     * @param unit the unit of {@code maxDelay}
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     * or {@code maxDelay} is negative
+     */
+    public WriteBehindCache(int size, CacheWriter<K, V> writer,
+            int batchSize, long maxDelay, TimeUnit unit) {
+        super(size);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: "+batchSize);
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("Negative delay: "+maxDelay);
+        }
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The entry is marked dirty and will be written to the {@code CacheWriter}
+     * by a later flush.
+     */
+    @Override
+    public void store(K key, V value) {
+        super.store(key, value);
+        markDirty(key, value);
+        flushIfDue();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The entry is marked dirty and will be written to the {@code CacheWriter}
+     * by a later flush.
+     */
+    @Override
+    public void store(K key, V value, Object tag) {
+        super.store(key, value, tag);
+        markDirty(key, value);
+        flushIfDue();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The entry is marked dirty like in {@link #store(Object, Object)}, which
+     * always needs a key object for the pending write.
+     */
+    @Override
+    public void store(KeyProbe<K> probe, V value) {
+        store(probe.toKey(), value);
+    }
+
+    @Override
+    public V remove(K key) {
+        V result = super.remove(key);
+        if (dirty.containsKey(key)) {
+            flush();
+        }
+        return result;
+    }
+
+    @Override
+    public V storeIfAbsent(K key, V value) {
+        V existing = super.storeIfAbsent(key, value);
+        if (existing == null) {
+            markDirty(key, value);
+            flushIfDue();
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean replace(K key, V expected, V newValue) {
+        if (super.replace(key, expected, newValue)) {
+            markDirty(key, newValue);
+            flushIfDue();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V compute(K key, Computation<? super K, V> computation) {
+        V result = super.compute(key, computation);
+        if (result != null) {
+            markDirty(key, result);
+            flushIfDue();
+        } else if (dirty.containsKey(key)) {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The dirty entries are flushed first.
+     */
+    @Override
+    public void invalidateAll() {
+        flush();
+        super.invalidateAll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The dirty entries are flushed first.
+     */
+    @Override
+    public void invalidateTag(Object tag) {
+        flush();
+        super.invalidateTag(tag);
+    }
+
+    /**
+     * Flushes the dirty entries if the batch size is reached or the oldest
+     * of them has been dirty for longer than the maximum delay.
+     * 
+     * @return {@code true} if a flush occurred
+     */
+    public boolean flushIfDue() {
+        if (dirty.isEmpty()) {
+            return false;
+        }
+        if (dirty.size() >= batchSize || now() - oldestDirtyTime >= maxDelayNanos) {
+            flush();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes all the dirty entries to the {@code CacheWriter}, in batches of
+     * at most the batch size.
+     * If the writer fails, the entries of the failed batch and all the
+     * following ones remain dirty.
+     */
+    public void flush() {
+        while (!dirty.isEmpty()) {
+            Map<K, V> batch = new LinkedHashMap<K, V>();
+            Iterator<Map.Entry<K, V>> it = dirty.entrySet().iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+                Map.Entry<K, V> en = it.next();
+                batch.put(en.getKey(), en.getValue());
+            }
+            writer.writeAll(batch);
+            dirty.keySet().removeAll(batch.keySet());
+        }
+    }
+
+    /**
+     * Returns the number of entries that have not been written yet.
+     * 
+     * @return the number of dirty entries
+     */
+    public int getNumberOfDirtyEntries() {
+        return dirty.size();
+    }
+
+    /**
+     * Flushes the dirty entries if the evicted one is among them.
+     */
+    @Override
+    protected void entryEvicted(K key, V value) {
+        if (dirty.containsKey(key)) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the current time in nanoseconds.
+     * Package private so tests may control the clock.
+     * 
+     * @return the current value of the time source, in nanoseconds
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    private void markDirty(K key, V value) {
+        if (dirty.isEmpty()) {
+            oldestDirtyTime = now();
+        }
+        dirty.put(key, value);
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.*;
+
+/**
+ * Skeletal implementation of {@code DequeMap}.
+ * <p/>
+ * Subclasses provide the storage of the deques by implementing
+ * {@link #countOf}, {@link #size}, {@link #clearKey}, {@link #clear}
+ * and the index based primitives {@link #valueAt}, {@link #setValueAt},
+ * {@link #insertAt}, {@link #removeAt} and {@link #keyIterator}.
+ * Everything else, including the views returned by {@link #getAll} and
+ * {@link #asMap}, is built on top of them. Subclasses are expected to
+ * override the operations they can do faster than the primitives allow.
+ * <p/>
+ * Like in every {@code DequeMap}, a key with no values does not exist:
+ * {@code insertAt} must create the deque of a key that does not exist
+ * and {@code removeAt} must remove the deque that it leaves empty.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public abstract class AbstractDequeMap<K, V> implements DequeMap<K, V> {
+
+    private transient Map<K, List<V>> mapView;
+
+    protected AbstractDequeMap() {
+    }
+
+// primitives
+
+    /**
+     * Returns the value at the given position of the deque of the given key.
+     * 
+     * @param key the key
+     * @param index the position of the value, in
+     * {@code [0, countOf(key))}
+     * @return the value at {@code index}
+     */
+    protected abstract V valueAt(K key, int index);
+
+    /**
+     * Replaces the value at the given position of the deque of the given key.
+     * 
+     * @param key the key
+     * @param index the position of the value, in
+     * {@code [0, countOf(key))}
+     * @param value the new value
+     * @return the replaced value
+     */
+    protected abstract V setValueAt(K key, int index, V value);
+
+    /**
+     * Inserts a value at the given position of the deque of the given key,
+     * creating the deque if the key does not exist.
+     * 
+     * @param key the key
+     * @param index the position of the new value, in
+     * {@code [0, countOf(key)]}
+     * @param value the value to insert
+     */
+    protected abstract void insertAt(K key, int index, V value);
+
+    /**
+     * Removes the value at the given position of the deque of the given key,
+     * removing the key if it has no more values.
+     * 
+     * @param key the key
+     * @param index the position of the value, in
+     * {@code [0, countOf(key))}
+     * @return the removed value
+     */
+    protected abstract V removeAt(K key, int index);
+
+    /**
+     * Returns an iterator over the existing keys.
+     * The iterator need not support removal.
+     * 
+     * @return an iterator over the keys
+     */
+    protected abstract Iterator<K> keyIterator();
+
+// DequeMap
+
+    @Override
+    public V get(K key) {
+        return countOf(key) == 0 ? null : valueAt(key, 0);
+    }
+
+    @Override
+    public void set(K key, V value) {
+        clearKey(key);
+        insertAt(key, 0, value);
+    }
+
+    @Override
+    public V getLast(K key) {
+        int count = countOf(key);
+        return count == 0 ? null : valueAt(key, count-1);
+    }
+
+    @Override
+    public V pop(K key) {
+        return countOf(key) == 0 ? null : removeAt(key, 0);
+    }
+
+    @Override
+    public V popLast(K key) {
+        int count = countOf(key);
+        return count == 0 ? null : removeAt(key, count-1);
+    }
+
+    @Override
+    public void add(K key, V value) {
+        insertAt(key, 0, value);
+    }
+
+    @Override
+    public void addLast(K key, V value) {
+        insertAt(key, countOf(key), value);
+    }
+
+    @Override
+    public List<V> getAll(K key) {
+        return new KeyView(key);
+    }
+
+    @Override
+    public void setAll(K key, Collection<? extends V> values) {
+        clearKey(key);
+        addAllLast(key, values);
+    }
+
+    @Override
+    public List<V> popAll(K key) {
+        return popN(key, countOf(key));
+    }
+
+    @Override
+    public List<V> popAllLast(K key) {
+        return popNLast(key, countOf(key));
+    }
+
+    @Override
+    public List<V> popN(K key, int n) {
+        n = Math.min(n, countOf(key));
+        List<V> result = new ArrayList<V>(Math.max(n, 0));
+        for (int i = 0; i < n; i++) {
+            result.add(removeAt(key, 0));
+        }
+        return result;
+    }
+
+    @Override
+    public List<V> popNLast(K key, int n) {
+        int count = countOf(key);
+        n = Math.min(n, count);
+        List<V> result = new ArrayList<V>(Math.max(n, 0));
+        for (int i = 0; i < n; i++) {
+            result.add(removeAt(key, --count));
+        }
+        return result;
+    }
+
+    @Override
+    public void addAll(K key, Collection<? extends V> values) {
+        int index = 0;
+        for (V value : values) {
+            insertAt(key, index++, value);
+        }
+    }
+
+    @Override
+    public void addAllLast(K key, Collection<? extends V> values) {
+        int index = countOf(key);
+        for (V value : values) {
+            insertAt(key, index++, value);
+        }
+    }
+
+    @Override
+    public void assertAtLeast(K key, int minCount) throws IllegalStateException {
+        if (countOf(key) < minCount) {
+            throw new IllegalStateException("Key: "+key+" contains less than "+minCount+" values.");
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return countOf(key) > 0;
+    }
+
+    @Override
+    public void assertContainsKey(K key) throws NoSuchElementException {
+        if (!containsKey(key)) {
+            throw new NoSuchElementException("Key: "+key+" does not exist.");
+        }
+    }
+
+    @Override
+    public void addMap(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> en : map.entrySet()) {
+            add(en.getKey(), en.getValue());
+        }
+    }
+
+    @Override
+    public void addMapLast(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> en : map.entrySet()) {
+            addLast(en.getKey(), en.getValue());
+        }
+    }
+
+    @Override
+    public void addAllMap(Map<? extends K, ? extends Collection<? extends V>> map) {
+        for (Map.Entry<? extends K, ? extends Collection<? extends V>> en : map.entrySet()) {
+            addAll(en.getKey(), en.getValue());
+        }
+    }
+
+    @Override
+    public void addAllMapLast(Map<? extends K, ? extends Collection<? extends V>> map) {
+        for (Map.Entry<? extends K, ? extends Collection<? extends V>> en : map.entrySet()) {
+            addAllLast(en.getKey(), en.getValue());
+        }
+    }
+
+    @Override
+    public void setMap(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> en : map.entrySet()) {
+            set(en.getKey(), en.getValue());
+        }
+    }
+
+    @Override
+    public void setAllMap(Map<? extends K, ? extends Collection<? extends V>> map) {
+        for (Map.Entry<? extends K, ? extends Collection<? extends V>> en : map.entrySet()) {
+            setAll(en.getKey(), en.getValue());
+        }
+    }
+
+    @Override
+    public Map<K, List<V>> asMap() {
+        if (mapView == null) {
+            mapView = new MapView();
+        }
+        return mapView;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof DequeMap)) {
+            return false;
+        }
+        return this.asMap().equals(((DequeMap<?, ?>) obj).asMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return asMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+// views
+
+    /**
+     * Returns the values of the given key as they appear in {@link #asMap}.
+     * This implementation returns an unmodifiable live view of the values.
+     * 
+     * @param key the key
+     * @return the values of {@code key}, {@code null} if it does not exist
+     */
+    protected List<V> mapValue(K key) {
+        return containsKey(key)
+                ? Collections.unmodifiableList(getAll(key))
+                : null;
+    }
+
+    /**
+     * Live view of the values of a key, built on the primitives.
+     * Any modification through the view creates or removes the key
+     * as needed.
+     */
+    protected class KeyView extends AbstractList<V> {
+
+        protected final K key;
+
+        protected KeyView(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public int size() {
+            return countOf(key);
+        }
+
+        @Override
+        public V get(int index) {
+            checkIndex(index, size());
+            return valueAt(key, index);
+        }
+
+        @Override
+        public V set(int index, V element) {
+            checkIndex(index, size());
+            return setValueAt(key, index, element);
+        }
+
+        @Override
+        public void add(int index, V element) {
+            checkIndex(index, size() + 1);
+            modCount++;
+            insertAt(key, index, element);
+        }
+
+        @Override
+        public V remove(int index) {
+            checkIndex(index, size());
+            modCount++;
+            return removeAt(key, index);
+        }
+
+        @Override
+        public void clear() {
+            modCount++;
+            clearKey(key);
+        }
+
+        private void checkIndex(int index, int bound) {
+            if (index < 0 || index >= bound) {
+                throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key
+                        +", Size: "+size());
+            }
+        }
+    }
+
+    /**
+     * {@code KeyView} for subclasses whose {@link #valueAt} takes
+     * constant time.
+     */
+    protected class RandomAccessKeyView extends KeyView implements RandomAccess {
+
+        protected RandomAccessKeyView(K key) {
+            super(key);
+        }
+    }
+
+// Unmodifiable map view of this deque-map
+    class MapView extends AbstractMap<K, List<V>> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean containsKey(Object key) {
+            try {
+                return AbstractDequeMap.this.containsKey((K) key);
+            } catch (ClassCastException e) {
+                return false;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<V> get(Object key) {
+            try {
+                return mapValue((K) key);
+            } catch (ClassCastException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int size() {
+            return AbstractDequeMap.this.size();
+        }
+
+        @Override
+        public Set<Map.Entry<K, List<V>>> entrySet() {
+            return new AbstractSet<Map.Entry<K, List<V>>>() {
+
+                @Override public Iterator<Map.Entry<K, List<V>>> iterator() {
+                    final Iterator<K> keys = keyIterator();
+                    return new Iterator<Map.Entry<K, List<V>>>() {
+                        private Map.Entry<K, List<V>> next = advance();
+
+                        @Override public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override public Map.Entry<K, List<V>> next() {
+                            if (next == null) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<K, List<V>> result = next;
+                            next = advance();
+                            return result;
+                        }
+
+                        // skips keys removed after the key iterator returned them
+                        private Map.Entry<K, List<V>> advance() {
+                            while (keys.hasNext()) {
+                                K key = keys.next();
+                                List<V> values = mapValue(key);
+                                if (values != null) {
+                                    return new SimpleImmutableEntry<K, List<V>>(key, values);
+                                }
+                            }
+                            return null;
+                        }
+
+                        @Override public void remove() {
+                            throw new UnsupportedOperationException("Removal not allowed.");
+                        }
+                    };
+                }
+
+                @Override public int size() {
+                    return AbstractDequeMap.this.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.io.Serializable;
+
+import java.util.*;
+
+/**
+ * Implementation of {@code DequeMap} that uses a hash based map whose
+ * values are circular array deques.
+ * <p/>
+ * Compared to {@link LinkedDequeHashMap}, a value takes a single array slot
+ * instead of a list node, the values of a key are stored next to each other
+ * and any value can be accessed by its index in constant time. Adding and
+ * removing values at both ends takes amortized constant time; inserting or
+ * removing in the middle moves the values of the shorter side.
+ * The lists returned by {@link #getAll} are {@link RandomAccess}.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ArrayDequeHashMap<K, V> extends AbstractDequeMap<K, V>
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The capacity of a new deque; always a power of two. */
+    static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Growable circular array. The capacity is a power of two, so positions
+     * wrap with a mask.
+     */
+    static final class Ring implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        Object[] elements;
+        int head;
+        int count;
+
+        Ring(int capacity) {
+            elements = new Object[capacity];
+        }
+
+        Object get(int index) {
+            return elements[(head + index) & (elements.length - 1)];
+        }
+
+        Object set(int index, Object value) {
+            int i = (head + index) & (elements.length - 1);
+            Object old = elements[i];
+            elements[i] = value;
+            return old;
+        }
+
+        void addFirst(Object value) {
+            if (count == elements.length) {
+                grow();
+            }
+            head = (head - 1) & (elements.length - 1);
+            elements[head] = value;
+            count++;
+        }
+
+        void addLast(Object value) {
+            if (count == elements.length) {
+                grow();
+            }
+            elements[(head + count) & (elements.length - 1)] = value;
+            count++;
+        }
+
+        Object removeFirst() {
+            Object value = elements[head];
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+            count--;
+            return value;
+        }
+
+        Object removeLast() {
+            int i = (head + count - 1) & (elements.length - 1);
+            Object value = elements[i];
+            elements[i] = null;
+            count--;
+            return value;
+        }
+
+        void insert(int index, Object value) {
+            if (index == 0) {
+                addFirst(value);
+            } else if (index == count) {
+                addLast(value);
+            } else {
+                if (count == elements.length) {
+                    grow();
+                }
+                if (index < count / 2) {
+                    // move the front part one position to the left
+                    head = (head - 1) & (elements.length - 1);
+                    for (int i = 0; i < index; i++) {
+                        set(i, get(i + 1));
+                    }
+                } else {
+                    for (int i = count; i > index; i--) {
+                        set(i, get(i - 1));
+                    }
+                }
+                set(index, value);
+                count++;
+            }
+        }
+
+        Object remove(int index) {
+            if (index == 0) {
+                return removeFirst();
+            } else if (index == count - 1) {
+                return removeLast();
+            }
+            Object value = get(index);
+            if (index < count / 2) {
+                for (int i = index; i > 0; i--) {
+                    set(i, get(i - 1));
+                }
+                removeFirst();
+            } else {
+                for (int i = index; i < count - 1; i++) {
+                    set(i, get(i + 1));
+                }
+                removeLast();
+            }
+            return value;
+        }
+
+        private void grow() {
+            Object[] grown = new Object[elements.length * 2];
+            int front = Math.min(count, elements.length - head);
+            System.arraycopy(elements, head, grown, 0, front);
+            System.arraycopy(elements, 0, grown, front, count - front);
+            elements = grown;
+            head = 0;
+        }
+    }
+
+    private final Map<K, Ring> data = new HashMap<K, Ring>();
+
+    @Override
+    public V get(K key) {
+        Ring ring = data.get(key);
+        return ring == null ? null : this.<V>cast(ring.get(0));
+    }
+
+    @Override
+    public void set(K key, V value) {
+        Ring ring = new Ring(INITIAL_CAPACITY);
+        ring.addLast(value);
+        data.put(key, ring);
+    }
+
+    @Override
+    public V getLast(K key) {
+        Ring ring = data.get(key);
+        return ring == null ? null : this.<V>cast(ring.get(ring.count - 1));
+    }
+
+    @Override
+    public V pop(K key) {
+        Ring ring = data.get(key);
+        if (ring == null) {
+            return null;
+        }
+        V result = cast(ring.removeFirst());
+        removeIfEmpty(key, ring);
+        return result;
+    }
+
+    @Override
+    public V popLast(K key) {
+        Ring ring = data.get(key);
+        if (ring == null) {
+            return null;
+        }
+        V result = cast(ring.removeLast());
+        removeIfEmpty(key, ring);
+        return result;
+    }
+
+    @Override
+    public void add(K key, V value) {
+        ensureRingAt(key).addFirst(value);
+    }
+
+    @Override
+    public void addLast(K key, V value) {
+        ensureRingAt(key).addLast(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The returned list is {@link RandomAccess}. Its iterator looks up
+     * the values of the key once and then walks them by index.
+     */
+    @Override
+    public List<V> getAll(K key) {
+        return new RingView(key);
+    }
+
+    @Override
+    public List<V> popN(K key, int n) {
+        Ring ring = data.get(key);
+        if (ring == null || n <= 0) {
+            return new ArrayList<V>(0);
+        }
+        n = Math.min(n, ring.count);
+        List<V> result = new ArrayList<V>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(this.<V>cast(ring.removeFirst()));
+        }
+        removeIfEmpty(key, ring);
+        return result;
+    }
+
+    @Override
+    public List<V> popNLast(K key, int n) {
+        Ring ring = data.get(key);
+        if (ring == null || n <= 0) {
+            return new ArrayList<V>(0);
+        }
+        n = Math.min(n, ring.count);
+        List<V> result = new ArrayList<V>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(this.<V>cast(ring.removeLast()));
+        }
+        removeIfEmpty(key, ring);
+        return result;
+    }
+
+    @Override
+    public void addAll(K key, Collection<? extends V> values) {
+        if (values.isEmpty()) return;
+        Ring ring = ensureRingAt(key);
+        // add to the front in reverse, so that the values keep their order
+        Object[] array = values.toArray();
+        for (int i = array.length - 1; i >= 0; i--) {
+            ring.addFirst(array[i]);
+        }
+    }
+
+    @Override
+    public void addAllLast(K key, Collection<? extends V> values) {
+        if (values.isEmpty()) return;
+        Ring ring = ensureRingAt(key);
+        for (V value : values) {
+            ring.addLast(value);
+        }
+    }
+
+    @Override
+    public int countOf(K key) {
+        Ring ring = data.get(key);
+        return ring == null ? 0 : ring.count;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void clearKey(K key) {
+        data.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        data.clear();
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(K key, int index) {
+        return cast(data.get(key).get(index));
+    }
+
+    @Override
+    protected V setValueAt(K key, int index, V value) {
+        return cast(data.get(key).set(index, value));
+    }
+
+    @Override
+    protected void insertAt(K key, int index, V value) {
+        ensureRingAt(key).insert(index, value);
+    }
+
+    @Override
+    protected V removeAt(K key, int index) {
+        Ring ring = data.get(key);
+        V result = cast(ring.remove(index));
+        removeIfEmpty(key, ring);
+        return result;
+    }
+
+    @Override
+    protected Iterator<K> keyIterator() {
+        return Collections.unmodifiableSet(data.keySet()).iterator();
+    }
+
+// views
+
+    /**
+     * Key view that reads the ring of its key with a single lookup per
+     * access, or per iteration.
+     */
+    class RingView extends RandomAccessKeyView {
+
+        RingView(K key) {
+            super(key);
+        }
+
+        @Override
+        public V get(int index) {
+            Ring ring = data.get(key);
+            int count = ring == null ? 0 : ring.count;
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key+", Size: "+count);
+            }
+            return cast(ring.get(index));
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            final Ring ring = data.get(key);
+            return new Iterator<V>() {
+                private int next;
+                private int last = -1;
+                private int expectedCount = ring == null ? 0 : ring.count;
+
+                @Override public boolean hasNext() {
+                    return next < expectedCount;
+                }
+
+                @Override public V next() {
+                    if (next >= expectedCount) {
+                        throw new NoSuchElementException();
+                    }
+                    if (ring.count != expectedCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    last = next++;
+                    return cast(ring.get(last));
+                }
+
+                @Override public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    if (ring.count != expectedCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    removeAt(key, last);
+                    modCount++;
+                    next = last;
+                    last = -1;
+                    expectedCount--;
+                }
+            };
+        }
+    }
+
+// private methods
+
+    Ring ensureRingAt(K key) {
+        Ring ring = data.get(key);
+        if (ring == null) {
+            ring = new Ring(INITIAL_CAPACITY);
+            data.put(key, ring);
+        }
+        return ring;
+    }
+
+    void removeIfEmpty(K key, Ring ring) {
+        if (ring.count == 0) {
+            data.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T) value;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread safe implementation of {@code BlockingDequeMap}.
+ * <p/>
+ * Waiting threads park on a condition of the lock of their key, so a thread
+ * that adds values to a key wakes up only a thread waiting for that key.
+ * While threads wait for a key that does not exist, the key keeps an empty
+ * deque that is not visible through the {@code DequeMap} methods.
+ * Waiting uses the locks of {@code java.util.concurrent} and not monitors,
+ * so waiting threads never hold a monitor.
+ * <p/>
+ * Everything else is as in {@link ConcurrentDequeHashMap}.
+ * 
+ * @see BlockingDequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BlockingDequeHashMap<K, V> extends ConcurrentDequeHashMap<K, V>
+    implements BlockingDequeMap<K, V> {
+
+    /**
+     * Creates a new empty deque-map.
+     */
+    public BlockingDequeHashMap() {
+    }
+
+    /**
+     * Creates a new empty deque-map.
+     * 
+     * @param expectedKeys the number of keys to hold without growing
+     * @param concurrencyLevel the expected number of threads that add or
+     * remove keys at the same time
+     */
+    public BlockingDequeHashMap(int expectedKeys, int concurrencyLevel) {
+        super(expectedKeys, concurrencyLevel);
+    }
+
+    @Override
+    public V take(K key) throws InterruptedException {
+        return await(key, -1, true);
+    }
+
+    @Override
+    public V takeLast(K key) throws InterruptedException {
+        return await(key, -1, false);
+    }
+
+    @Override
+    public V poll(K key, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(key, Math.max(unit.toNanos(timeout), 0), true);
+    }
+
+    @Override
+    public V pollLast(K key, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(key, Math.max(unit.toNanos(timeout), 0), false);
+    }
+
+    @Override
+    public int drainTo(K key, Collection<? super V> collection, int maxValues) {
+        // pop first, so that the collection is not used under the lock
+        List<V> values = popN(key, maxValues);
+        collection.addAll(values);
+        return values.size();
+    }
+
+    /**
+     * Waits for a value of the given key and removes it.
+     * 
+     * @param nanos the maximum time to wait, negative to wait for ever
+     * @param first whether to remove the first or the last value
+     * @return the removed value or {@code null} if the time elapsed
+     */
+    @SuppressWarnings("unchecked")
+    private V await(K key, long nanos, boolean first) throws InterruptedException {
+        Bucket b = lock(key, true);
+        try {
+            while (b.ring.count == 0) {
+                if (nanos == 0) {
+                    return null;
+                }
+                if (b.notEmpty == null) {
+                    b.notEmpty = b.lock.newCondition();
+                }
+                b.waiters++;
+                try {
+                    if (nanos < 0) {
+                        b.notEmpty.await();
+                    } else {
+                        nanos = Math.max(b.notEmpty.awaitNanos(nanos), 0);
+                    }
+                } finally {
+                    b.waiters--;
+                }
+            }
+            return (V) (first ? b.ring.removeFirst() : b.ring.removeLast());
+        } finally {
+            release(key, b);
+        }
+    }
+}
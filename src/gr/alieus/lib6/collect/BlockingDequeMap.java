@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code DequeMap} whose values can be waited for.
+ * <p/>
+ * The values of each key work as a blocking deque: a thread may wait for
+ * a key to get values instead of polling it with {@link #pop}.
+ * Waiting is per key; adding values to a key wakes up only threads waiting
+ * for that key.
+ * 
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public interface BlockingDequeMap<K, V> extends DequeMap<K, V> {
+
+    /**
+     * Returns and removes the first value of the given key, waiting for
+     * a value if the key does not exist.
+     * 
+     * @param key the key to take its first value
+     * @return the first value of {@code key}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    V take(K key) throws InterruptedException;
+
+    /**
+     * Returns and removes the last value of the given key, waiting for
+     * a value if the key does not exist.
+     * 
+     * @param key the key to take its last value
+     * @return the last value of {@code key}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    V takeLast(K key) throws InterruptedException;
+
+    /**
+     * Returns and removes the first value of the given key, waiting up to
+     * the given time for a value if the key does not exist.
+     * 
+     * @param key the key to pop its first value
+     * @param timeout how long to wait
+     * @param unit the unit of {@code timeout}
+     * @return the first value of {@code key} or {@code null} if the time
+     * elapsed before a value was added
+     * @throws InterruptedException if interrupted while waiting
+     */
+    V poll(K key, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns and removes the last value of the given key, waiting up to
+     * the given time for a value if the key does not exist.
+     * 
+     * @param key the key to pop its last value
+     * @param timeout how long to wait
+     * @param unit the unit of {@code timeout}
+     * @return the last value of {@code key} or {@code null} if the time
+     * elapsed before a value was added
+     * @throws InterruptedException if interrupted while waiting
+     */
+    V pollLast(K key, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Removes at most the given number of first values of the given key
+     * and adds them to the given collection, without waiting.
+     * 
+     * @param key the key to remove its values
+     * @param collection the collection to add the values to
+     * @param maxValues the maximum number of values to remove
+     * @return the number of values moved
+     */
+    int drainTo(K key, Collection<? super V> collection, int maxValues);
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import gr.alieus.lib6.collect.ArrayDequeHashMap.Ring;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe implementation of {@code DequeMap}.
+ * <p/>
+ * The keys are kept in a {@link ConcurrentHashMap} and the values of each
+ * key in a circular array deque guarded by a lock of its own. So operations
+ * on different keys do not contend with each other, and each operation on
+ * a single key, including the bulk ones like {@link #popN} and
+ * {@link #addAll}, is atomic. Adding to a key that does not exist and
+ * removing the last value of a key are atomic as well: a key never appears
+ * without values and values are never added to a removed deque.
+ * <p/>
+ * Operations on more than one key, like {@link #addMap} and {@link #clear},
+ * are not atomic as a whole. {@link #asMap} is weakly consistent: its
+ * iterators never throw {@code ConcurrentModificationException} and its
+ * lists are copies of the values of each key, taken atomically when the
+ * key is reached. The lists returned by {@link #getAll} are live, but each
+ * of their operations is atomic on its own, so compound actions on them,
+ * like iteration, should be avoided when the key is shared.
+ * <p/>
+ * Keys may not be {@code null}. Values may be {@code null}, but then
+ * {@code get} and {@code pop} cannot tell a {@code null} value from
+ * a missing key.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ConcurrentDequeHashMap<K, V> extends AbstractDequeMap<K, V> {
+
+    /**
+     * The values of a key and their lock.
+     * A bucket is dead once removed from the map; operations that find
+     * a dead bucket retry with the current bucket of the key.
+     * A bucket without values stays in the map only while threads wait
+     * for values on it.
+     */
+    static class Bucket {
+        final ReentrantLock lock = new ReentrantLock();
+        Ring ring = new Ring(ArrayDequeHashMap.INITIAL_CAPACITY);
+        boolean dead;
+
+        /** Whether the bucket has been counted in the number of keys. */
+        boolean counted;
+
+        /** The threads waiting for values; created for the first one. */
+        Condition notEmpty;
+        int waiters;
+    }
+
+    private final ConcurrentMap<K, Bucket> data;
+    private final AtomicInteger keyCount = new AtomicInteger();
+
+    /**
+     * Creates a new empty deque-map.
+     */
+    public ConcurrentDequeHashMap() {
+        this(16, 16);
+    }
+
+    /**
+     * Creates a new empty deque-map.
+     * 
+     * @param expectedKeys the number of keys to hold without growing
+     * @param concurrencyLevel the expected number of threads that add or
+     * remove keys at the same time
+     */
+    public ConcurrentDequeHashMap(int expectedKeys, int concurrencyLevel) {
+        data = new ConcurrentHashMap<K, Bucket>(expectedKeys, 0.75F, concurrencyLevel);
+    }
+
+    @Override
+    public V get(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return null;
+        }
+        try {
+            return cast(b.ring.get(0));
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    @Override
+    public void set(K key, V value) {
+        Bucket b = lock(key, true);
+        try {
+            b.ring = new Ring(ArrayDequeHashMap.INITIAL_CAPACITY);
+            b.ring.addLast(value);
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public V getLast(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return null;
+        }
+        try {
+            return cast(b.ring.get(b.ring.count - 1));
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    @Override
+    public V pop(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return null;
+        }
+        try {
+            return cast(b.ring.removeFirst());
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public V popLast(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return null;
+        }
+        try {
+            return cast(b.ring.removeLast());
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public void add(K key, V value) {
+        Bucket b = lock(key, true);
+        try {
+            b.ring.addFirst(value);
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public void addLast(K key, V value) {
+        Bucket b = lock(key, true);
+        try {
+            b.ring.addLast(value);
+        } finally {
+            release(key, b);
+        }
+    }
+
+    /**
+     * Adds the given value as the last value of {@code key} and returns
+     * the number of values of the key, atomically. A result of 1 means
+     * that the key did not exist.
+     * 
+     * @param key the key to which the value will be added
+     * @param value the value to add
+     * @return the number of values of {@code key} after the addition
+     */
+    public int addLastAndCount(K key, V value) {
+        Bucket b = lock(key, true);
+        try {
+            b.ring.addLast(value);
+            return b.ring.count;
+        } finally {
+            release(key, b);
+        }
+    }
+
+    /**
+     * Removes the N first values of the given key and returns the number
+     * of values left, atomically. A result of 0 means that the key no longer
+     * exists.
+     * 
+     * @param key the key to remove its N first values
+     * @param n number of values to remove
+     * @return the number of values of {@code key} after the removal
+     */
+    public int removeFirstAndCount(K key, int n) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return 0;
+        }
+        try {
+            n = Math.min(n, b.ring.count);
+            for (int i = 0; i < n; i++) {
+                b.ring.removeFirst();
+            }
+            return b.ring.count;
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public void setAll(K key, Collection<? extends V> values) {
+        Bucket b = lock(key, true);
+        try {
+            b.ring = new Ring(ArrayDequeHashMap.INITIAL_CAPACITY);
+            for (V value : values) {
+                b.ring.addLast(value);
+            }
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public List<V> popAll(K key) {
+        return popN(key, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<V> popAllLast(K key) {
+        return popNLast(key, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<V> popN(K key, int n) {
+        Bucket b = n > 0 ? lock(key, false) : null;
+        if (b == null) {
+            return new ArrayList<V>(0);
+        }
+        try {
+            n = Math.min(n, b.ring.count);
+            List<V> result = new ArrayList<V>(n);
+            for (int i = 0; i < n; i++) {
+                result.add(this.<V>cast(b.ring.removeFirst()));
+            }
+            return result;
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public List<V> popNLast(K key, int n) {
+        Bucket b = n > 0 ? lock(key, false) : null;
+        if (b == null) {
+            return new ArrayList<V>(0);
+        }
+        try {
+            n = Math.min(n, b.ring.count);
+            List<V> result = new ArrayList<V>(n);
+            for (int i = 0; i < n; i++) {
+                result.add(this.<V>cast(b.ring.removeLast()));
+            }
+            return result;
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public void addAll(K key, Collection<? extends V> values) {
+        if (values.isEmpty()) return;
+        // copy first, so that no foreign code runs under the lock
+        Object[] array = values.toArray();
+        Bucket b = lock(key, true);
+        try {
+            for (int i = array.length - 1; i >= 0; i--) {
+                b.ring.addFirst(array[i]);
+            }
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public void addAllLast(K key, Collection<? extends V> values) {
+        if (values.isEmpty()) return;
+        Object[] array = values.toArray();
+        Bucket b = lock(key, true);
+        try {
+            for (Object value : array) {
+                b.ring.addLast(value);
+            }
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    public int countOf(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return 0;
+        }
+        try {
+            return b.ring.count;
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The number is exact when no keys are added or removed concurrently.
+     */
+    @Override
+    public int size() {
+        return keyCount.get();
+    }
+
+    @Override
+    public void clearKey(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return;
+        }
+        b.ring = new Ring(ArrayDequeHashMap.INITIAL_CAPACITY);
+        release(key, b);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Keys are removed one at a time, so concurrent additions may survive.
+     */
+    @Override
+    public void clear() {
+        for (K key : data.keySet()) {
+            clearKey(key);
+        }
+    }
+
+    @Override
+    protected List<V> mapValue(K key) {
+        Bucket b = lock(key, false);
+        if (b == null) {
+            return null;
+        }
+        try {
+            List<V> copy = new ArrayList<V>(b.ring.count);
+            for (int i = 0; i < b.ring.count; i++) {
+                copy.add(this.<V>cast(b.ring.get(i)));
+            }
+            return Collections.unmodifiableList(copy);
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(K key, int index) {
+        Bucket b = lockChecked(key, index);
+        try {
+            return cast(b.ring.get(index));
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    @Override
+    protected V setValueAt(K key, int index, V value) {
+        Bucket b = lockChecked(key, index);
+        try {
+            return cast(b.ring.set(index, value));
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    @Override
+    protected void insertAt(K key, int index, V value) {
+        Bucket b = lock(key, true);
+        try {
+            if (index > b.ring.count) {
+                throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key
+                        +", Size: "+b.ring.count);
+            }
+            b.ring.insert(index, value);
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    protected V removeAt(K key, int index) {
+        Bucket b = lockChecked(key, index);
+        try {
+            return cast(b.ring.remove(index));
+        } finally {
+            release(key, b);
+        }
+    }
+
+    @Override
+    protected Iterator<K> keyIterator() {
+        return Collections.unmodifiableSet(data.keySet()).iterator();
+    }
+
+// private methods
+
+    /**
+     * Returns the locked live bucket of the given key.
+     * 
+     * @param create whether to create an empty bucket if the key does not
+     * exist; the caller must then {@link #release} it
+     * @return the locked bucket, or {@code null} if the key does not exist
+     * and {@code create} is false
+     */
+    Bucket lock(K key, boolean create) {
+        while (true) {
+            Bucket b = data.get(key);
+            if (b == null) {
+                if (!create) {
+                    return null;
+                }
+                Bucket created = new Bucket();
+                created.lock.lock();
+                b = data.putIfAbsent(key, created);
+                if (b == null) {
+                    return created;
+                }
+                created.lock.unlock();
+            }
+            b.lock.lock();
+            if (!b.dead) {
+                if (b.ring.count == 0 && !create) {
+                    // kept only for the threads waiting on it
+                    b.lock.unlock();
+                    return null;
+                }
+                return b;
+            }
+            b.lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@code lock(key, false)} but throws if the given index is not
+     * a position of the values of the key.
+     */
+    private Bucket lockChecked(K key, int index) {
+        Bucket b = lock(key, false);
+        int count = b == null ? 0 : b.ring.count;
+        if (index < 0 || index >= count) {
+            if (b != null) {
+                b.lock.unlock();
+            }
+            throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key
+                    +", Size: "+count);
+        }
+        return b;
+    }
+
+    /**
+     * Unlocks the given bucket, after updating the number of keys,
+     * removing the bucket if it has no values and no waiters, and
+     * waking up a waiter if it has values.
+     */
+    void release(K key, Bucket b) {
+        try {
+            if (b.ring.count == 0) {
+                if (b.counted) {
+                    b.counted = false;
+                    keyCount.decrementAndGet();
+                }
+                if (b.waiters == 0) {
+                    b.dead = true;
+                    data.remove(key, b);
+                }
+            } else {
+                if (!b.counted) {
+                    b.counted = true;
+                    keyCount.incrementAndGet();
+                }
+                if (b.waiters > 0) {
+                    // the woken thread wakes the next one if values remain
+                    b.notEmpty.signal();
+                }
+            }
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T) value;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import gr.alieus.lib6.io.BinaryCodec;
+import gr.alieus.lib6.io.BufferPool;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a deque-map written by a {@link DequeMapEncoder} from a channel,
+ * adding its values to a target deque-map.
+ * <p/>
+ * Decoding is incremental: {@link #read} takes whatever the channel has,
+ * adds every complete value to the target and keeps only the incomplete
+ * rest, so it works with non-blocking channels and never holds more than
+ * a key or a value of the input at once. The input is read into a direct
+ * buffer from a {@link BufferPool}; a key or value larger than the buffer
+ * gets a larger buffer of its own, up to the maximum record size (16MB by
+ * default), so a corrupt size cannot make the decoder allocate any amount.
+ * <p/>
+ * The decoder may read past the end of the deque-map, so the channel
+ * should carry nothing else after it. A decoder reads a single deque-map;
+ * its buffer goes back to the pool when it is done or closed.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class DequeMapDecoder<K, V> implements Closeable {
+
+    private static final int KEY_COUNT = 0;
+    private static final int KEY = 1;
+    private static final int VALUE_COUNT = 2;
+    private static final int VALUE = 3;
+    private static final int DONE = 4;
+
+    static final int DEFAULT_MAX_RECORD_SIZE = 16 << 20;
+
+    private final BinaryCodec<K> keyCodec;
+    private final ValueCodecSelector<K, V> valueCodecs;
+    private final BufferPool pool;
+    private final DequeMap<K, V> target;
+    private final int maxRecordSize;
+
+    /** The input not yet decoded, ready for reading from the channel. */
+    private ByteBuffer buffer;
+
+    private int state = KEY_COUNT;
+    private int keysLeft;
+    private int valuesLeft;
+    private K key;
+    private BinaryCodec<V> valueCodec;
+
+    /**
+     * Creates a new decoder that chooses the codec of the values per key,
+     * with keys and values of up to 16MB.
+     * 
+     * @param keyCodec converts the keys from binary form
+     * @param valueCodecs chooses the codec of the values of each key
+     * @param pool provides the buffer
+     * @param target the deque-map the values are added to
+     */
+    public DequeMapDecoder(BinaryCodec<K> keyCodec, ValueCodecSelector<K, V> valueCodecs,
+            BufferPool pool, DequeMap<K, V> target) {
+        this(keyCodec, valueCodecs, pool, target, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    /**
+     * Creates a new decoder that chooses the codec of the values per key.
+     * 
+     * @param keyCodec converts the keys from binary form
+     * @param valueCodecs chooses the codec of the values of each key
+     * @param pool provides the buffer
+     * @param target the deque-map the values are added to
+     * @param maxRecordSize the size in bytes of the largest key or value
+     * accepted
+     * @throws IllegalArgumentException if {@code maxRecordSize} is negative
+     * or too large for a buffer
+     */
+    public DequeMapDecoder(BinaryCodec<K> keyCodec, ValueCodecSelector<K, V> valueCodecs,
+            BufferPool pool, DequeMap<K, V> target, int maxRecordSize) {
+        if (maxRecordSize < 0 || maxRecordSize > Integer.MAX_VALUE - 4) {
+            throw new IllegalArgumentException("Illegal maximum record size: "+maxRecordSize);
+        }
+        this.maxRecordSize = maxRecordSize;
+        this.keyCodec = keyCodec;
+        this.valueCodecs = valueCodecs;
+        this.pool = pool;
+        this.target = target;
+        this.buffer = pool.acquire();
+    }
+
+    /**
+     * Creates a new decoder with the same codec for the values of all keys,
+     * with keys and values of up to 16MB.
+     * 
+     * @param keyCodec converts the keys from binary form
+     * @param valueCodec converts the values from binary form
+     * @param pool provides the buffer
+     * @param target the deque-map the values are added to
+     */
+    public DequeMapDecoder(BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec, BufferPool pool,
+            DequeMap<K, V> target) {
+        this(keyCodec, DequeMapEncoder.<K, V>selector(valueCodec), pool, target);
+    }
+
+    /**
+     * Reads from the given channel until the deque-map is complete or the
+     * channel has nothing more to give for now. Values are added last to
+     * the target as soon as they are read.
+     * 
+     * @param channel the channel
+     * @return {@code true} if the whole deque-map has been read,
+     * {@code false} if more input is needed
+     * @throws EOFException if the channel ends before the deque-map
+     * @throws StreamCorruptedException if the input has negative sizes or
+     * a key or value larger than the maximum record size
+     * @throws IOException if reading from the channel fails
+     * @throws IllegalStateException if the decoder is closed
+     */
+    public boolean read(ReadableByteChannel channel) throws IOException {
+        if (state == DONE) {
+            return true;
+        }
+        if (buffer == null) {
+            throw new IllegalStateException("Decoder is closed");
+        }
+        while (true) {
+            int n = channel.read(buffer);
+            if (n < 0) {
+                throw new EOFException("Channel ended before the deque-map");
+            }
+            buffer.flip();
+            decode();
+            if (state == DONE) {
+                close();
+                return true;
+            }
+            buffer.compact();
+            if (n == 0 && buffer.hasRemaining()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the whole deque-map has been read.
+     * 
+     * @return {@code true} if decoding is complete
+     */
+    public boolean isDone() {
+        return state == DONE;
+    }
+
+    /**
+     * Gives the buffer back to the pool. Does nothing if already closed.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Decodes the complete parts of the buffer, which is ready for getting.
+     */
+    private void decode() throws IOException {
+        while (true) {
+            switch (state) {
+            case KEY_COUNT:
+                if (buffer.remaining() < 4) {
+                    return;
+                }
+                keysLeft = count(buffer.getInt());
+                state = keysLeft == 0 ? DONE : KEY;
+                break;
+            case KEY:
+                if (!available()) {
+                    return;
+                }
+                key = get(keyCodec);
+                state = VALUE_COUNT;
+                break;
+            case VALUE_COUNT:
+                if (buffer.remaining() < 4) {
+                    return;
+                }
+                valuesLeft = count(buffer.getInt());
+                valueCodec = valueCodecs.codecOf(key);
+                state = VALUE;
+                if (valuesLeft == 0) {
+                    nextKey();
+                }
+                break;
+            case VALUE:
+                if (!available()) {
+                    return;
+                }
+                target.addLast(key, get(valueCodec));
+                if (--valuesLeft == 0) {
+                    nextKey();
+                }
+                break;
+            default:
+                return;
+            }
+        }
+    }
+
+    private void nextKey() {
+        key = null;
+        valueCodec = null;
+        state = --keysLeft == 0 ? DONE : KEY;
+    }
+
+    /**
+     * Returns whether the buffer holds the next key or value, size included,
+     * making room for it if the buffer is too small.
+     */
+    private boolean available() throws IOException {
+        if (buffer.remaining() < 4) {
+            return false;
+        }
+        int size = count(buffer.getInt(buffer.position()));
+        if (size > maxRecordSize) {
+            throw new StreamCorruptedException("Size: "+size+" exceeds the maximum record size: "
+                    +maxRecordSize);
+        }
+        // size is at most Integer.MAX_VALUE - 4, so 4 + size does not overflow
+        if (buffer.remaining() >= 4 + size) {
+            return true;
+        }
+        if (4 + size > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(4 + size);
+            larger.put(buffer);
+            larger.flip();
+            pool.release(buffer);
+            buffer = larger;
+        }
+        return false;
+    }
+
+    private <T> T get(BinaryCodec<T> codec) {
+        int size = buffer.getInt();
+        int end = buffer.position() + size;
+        int limit = buffer.limit();
+        buffer.limit(end);
+        T object = codec.read(buffer, size);
+        buffer.limit(limit);
+        buffer.position(end);
+        return object;
+    }
+
+    private static int count(int n) throws StreamCorruptedException {
+        if (n < 0) {
+            throw new StreamCorruptedException("Negative size: "+n);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import gr.alieus.lib6.io.BinaryCodec;
+import gr.alieus.lib6.io.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+
+/**
+ * Writes the contents of deque-maps to channels in binary form, to be read
+ * by a {@link DequeMapDecoder}.
+ * <p/>
+ * Keys and values are written by {@link BinaryCodec}s straight into direct
+ * buffers taken from a {@link BufferPool}, with no intermediate arrays or
+ * object streams. Filled buffers are written together with a gathering
+ * write when the channel supports it. A key or value larger than the
+ * buffers gets a buffer of its own, which is not pooled.
+ * <p/>
+ * The binary form is the number of keys, then for each key the key,
+ * the number of its values and its values from the first to the last.
+ * Keys and values are prefixed by their size; all numbers are {@code int}s
+ * in big endian order.
+ * <p/>
+ * An encoder holds no state between calls, so it may be shared by threads
+ * as long as its codecs may be shared.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class DequeMapEncoder<K, V> {
+
+    /** The number of filled buffers written at once. */
+    static final int GATHER_BUFFERS = 16;
+
+    private final BinaryCodec<K> keyCodec;
+    private final ValueCodecSelector<K, V> valueCodecs;
+    private final BufferPool pool;
+
+    /**
+     * Creates a new encoder that chooses the codec of the values per key.
+     * 
+     * @param keyCodec converts the keys to binary form
+     * @param valueCodecs chooses the codec of the values of each key
+     * @param pool provides the buffers
+     */
+    public DequeMapEncoder(BinaryCodec<K> keyCodec, ValueCodecSelector<K, V> valueCodecs,
+            BufferPool pool) {
+        this.keyCodec = keyCodec;
+        this.valueCodecs = valueCodecs;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a new encoder with the same codec for the values of all keys.
+     * 
+     * @param keyCodec converts the keys to binary form
+     * @param valueCodec converts the values to binary form
+     * @param pool provides the buffers
+     */
+    public DequeMapEncoder(BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec, BufferPool pool) {
+        this(keyCodec, DequeMapEncoder.<K, V>selector(valueCodec), pool);
+    }
+
+    /**
+     * Writes the given deque-map to the given channel. The channel should
+     * be in blocking mode; the method returns when everything is written.
+     * 
+     * @param dequeMap the deque-map
+     * @param channel the channel
+     * @return the number of bytes written
+     * @throws IOException if writing to the channel fails
+     */
+    public long encode(DequeMap<K, V> dequeMap, WritableByteChannel channel) throws IOException {
+        Output out = new Output(channel);
+        try {
+            Map<K, List<V>> map = dequeMap.asMap();
+            out.putInt(map.size());
+            for (Map.Entry<K, List<V>> en : map.entrySet()) {
+                List<V> values = en.getValue();
+                out.put(en.getKey(), keyCodec);
+                out.putInt(values.size());
+                BinaryCodec<V> codec = valueCodecs.codecOf(en.getKey());
+                for (V value : values) {
+                    out.put(value, codec);
+                }
+            }
+            out.flush();
+        } finally {
+            out.release();
+        }
+        return out.written;
+    }
+
+    /**
+     * The buffers of a single call to {@link #encode}.
+     */
+    final class Output {
+        final WritableByteChannel channel;
+        final List<ByteBuffer> filled = new ArrayList<ByteBuffer>();
+        ByteBuffer current;
+        long written;
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+            current = pool.acquire();
+        }
+
+        void putInt(int i) throws IOException {
+            if (current.remaining() < 4) {
+                next();
+            }
+            current.putInt(i);
+        }
+
+        <T> void put(T object, BinaryCodec<T> codec) throws IOException {
+            int size = codec.sizeOf(object);
+            putInt(size);
+            if (size > pool.getBufferSize()) {
+                ByteBuffer large = ByteBuffer.allocate(size);
+                codec.write(object, large);
+                filled.add(current);
+                current = large;
+                next();
+                return;
+            }
+            if (size > current.remaining()) {
+                next();
+            }
+            codec.write(object, current);
+        }
+
+        void next() throws IOException {
+            filled.add(current);
+            current = null;
+            if (filled.size() >= GATHER_BUFFERS) {
+                write();
+            }
+            current = pool.acquire();
+        }
+
+        void flush() throws IOException {
+            filled.add(current);
+            current = null;
+            write();
+        }
+
+        private void write() throws IOException {
+            ByteBuffer[] buffers = filled.toArray(new ByteBuffer[filled.size()]);
+            long remaining = 0;
+            for (ByteBuffer b : buffers) {
+                b.flip();
+                remaining += b.remaining();
+            }
+            if (channel instanceof GatheringByteChannel) {
+                GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                int first = 0;
+                while (remaining > 0) {
+                    long n = gathering.write(buffers, first, buffers.length - first);
+                    remaining -= n;
+                    written += n;
+                    while (!buffers[first].hasRemaining() && first < buffers.length - 1) {
+                        first++;
+                    }
+                }
+            } else {
+                for (ByteBuffer b : buffers) {
+                    while (b.hasRemaining()) {
+                        written += channel.write(b);
+                    }
+                }
+            }
+            release();
+        }
+
+        void release() {
+            for (ByteBuffer b : filled) {
+                pool.release(b);
+            }
+            filled.clear();
+            if (current != null) {
+                pool.release(current);
+                current = null;
+            }
+        }
+    }
+
+    static <K, V> ValueCodecSelector<K, V> selector(final BinaryCodec<V> codec) {
+        return new ValueCodecSelector<K, V>() {
+            @Override
+            public BinaryCodec<V> codecOf(K key) {
+                return codec;
+            }
+        };
+    }
+}
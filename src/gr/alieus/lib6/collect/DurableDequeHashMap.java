@@ -0,0 +1,804 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import gr.alieus.lib6.io.BinaryCodec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation of {@code DequeMap} whose contents survive restarts.
+ * <p/>
+ * The values are kept in memory, in an {@link ArrayDequeHashMap}, and every
+ * change is also appended to a log in a directory. Creating a deque-map on
+ * a directory that already has a log restores the contents it describes.
+ * Keys and values are written with a {@link BinaryCodec} each; {@code null}
+ * keys and values are not supported.
+ * <p/>
+ * The log is a sequence of segment files. When the current segment reaches
+ * the segment size a new one is started, and every few segments the whole
+ * contents are written to a checkpoint file, after which the older segments
+ * and checkpoints are deleted. So the log never grows much beyond
+ * the contents plus the changes of a few segments, and recovery reads the
+ * latest checkpoint and the segments after it, both through memory mapped
+ * buffers of at most 1GB at a time. Every record has a checksum; a record torn by a crash ends its
+ * segment and the changes after it in that segment are lost.
+ * <p/>
+ * When changes reach the disk depends on the {@link SyncPolicy}:
+ * after every change, in batches (group commit) or when the operating
+ * system decides. {@link #sync} forces the pending changes to the disk in
+ * any case, and {@link #close} syncs before closing the log. There is no
+ * background thread: a batch is committed by the change that fills it or
+ * comes after its interval, so the last changes before a pause stay in
+ * memory until the next change or {@code sync}.
+ * <p/>
+ * An I/O error closes the deque-map and is thrown wrapped in an
+ * {@code IllegalStateException}; the change that failed may or may not be
+ * in the log.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class DurableDequeHashMap<K, V> extends AbstractDequeMap<K, V> implements Closeable {
+
+    /**
+     * When the changes are forced to the disk.
+     */
+    public enum SyncPolicy {
+
+        /**
+         * Every change is written and forced to the disk before the method
+         * that made it returns. Nothing is lost in a crash, but every change
+         * waits for the disk.
+         */
+        EVERY_OPERATION,
+
+        /**
+         * Changes are buffered and written and forced together, when the
+         * buffer fills up or at the first change after the batch interval.
+         * Nothing commits a batch when no change follows it, so call
+         * {@link DurableDequeHashMap#sync} when changes pause, for example
+         * from a timer. A crash loses the changes not yet committed.
+         */
+        BATCHED,
+
+        /**
+         * Every change is written but never forced; the operating system
+         * writes it to the disk eventually. A crash of the process loses
+         * nothing, a crash of the system may lose anything not yet written.
+         */
+        OS
+    }
+
+    static final byte ADD = 1;
+    static final byte ADD_LAST = 2;
+    static final byte INSERT = 3;
+    static final byte SET = 4;
+    static final byte POP = 5;
+    static final byte POP_LAST = 6;
+    static final byte REMOVE = 7;
+    static final byte POP_N = 8;
+    static final byte POP_N_LAST = 9;
+    static final byte ADD_ALL = 10;
+    static final byte ADD_ALL_LAST = 11;
+    static final byte CLEAR_KEY = 12;
+    static final byte CLEAR = 13;
+    static final byte SET_ALL = 14;
+
+    /** The size of the length and the checksum before every record. */
+    static final int RECORD_HEADER = 8;
+
+    static final long DEFAULT_SEGMENT_SIZE = 64 << 20;
+    static final int DEFAULT_SEGMENTS_PER_CHECKPOINT = 8;
+    static final long DEFAULT_BATCH_MILLIS = 10;
+
+    /** The largest part of a file mapped at once by recovery. */
+    static final int MAP_WINDOW = 1 << 30;
+
+    /** The size of the buffered changes that commits a batch. */
+    static final int BATCH_BYTES = 64 << 10;
+
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final BinaryCodec<K> keyCodec;
+    private final BinaryCodec<V> valueCodec;
+    private final SyncPolicy policy;
+    private final long batchNanos;
+    private final long segmentSize;
+    private final int segmentsPerCheckpoint;
+    private final int mapWindow;
+
+    private final ArrayDequeHashMap<K, V> data = new ArrayDequeHashMap<K, V>();
+
+    private RandomAccessFile segment;
+    private long segmentNumber;
+    private long segmentLength;
+    private int segmentsSinceCheckpoint;
+
+    /** The changes not yet written to the segment. */
+    private ByteBuffer buffer = ByteBuffer.allocate(BATCH_BYTES);
+    private long firstPendingNanos;
+    private final CRC32 checksum = new CRC32();
+    /** The record being replayed, copied out of the mapped file. */
+    private byte[] recordBytes = new byte[256];
+
+    /**
+     * Opens a deque-map on the given directory with segments of 64MB,
+     * a checkpoint every 8 segments and batches of 10 milliseconds.
+     * 
+     * @param directory the directory of the log; created if needed
+     * @param keyCodec converts the keys to and from binary form
+     * @param valueCodec converts the values to and from binary form
+     * @param policy when the changes are forced to the disk
+     * @throws IOException if the directory cannot be created or the log
+     * cannot be read
+     */
+    public DurableDequeHashMap(File directory, BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec,
+            SyncPolicy policy) throws IOException {
+        this(directory, keyCodec, valueCodec, policy, DEFAULT_BATCH_MILLIS,
+                DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENTS_PER_CHECKPOINT);
+    }
+
+    /**
+     * Opens a deque-map on the given directory.
+     * 
+     * @param directory the directory of the log; created if needed
+     * @param keyCodec converts the keys to and from binary form
+     * @param valueCodec converts the values to and from binary form
+     * @param policy when the changes are forced to the disk
+     * @param batchMillis the time after which the next change commits
+     * a batch, used only by {@link SyncPolicy#BATCHED}
+     * @param segmentSize the size in bytes after which a new segment is
+     * started
+     * @param segmentsPerCheckpoint the number of segments started between
+     * checkpoints
+     * @throws IOException if the directory cannot be created or the log
+     * cannot be read
+     * @throws IllegalArgumentException if the batch interval is negative,
+     * the segment size is not positive or exceeds 1GB or the number of
+     * segments per checkpoint is not positive
+     */
+    public DurableDequeHashMap(File directory, BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec,
+            SyncPolicy policy, long batchMillis, long segmentSize, int segmentsPerCheckpoint)
+            throws IOException {
+        this(directory, keyCodec, valueCodec, policy, batchMillis, segmentSize,
+                segmentsPerCheckpoint, MAP_WINDOW);
+    }
+
+    DurableDequeHashMap(File directory, BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec,
+            SyncPolicy policy, long batchMillis, long segmentSize, int segmentsPerCheckpoint,
+            int mapWindow) throws IOException {
+        if (batchMillis < 0) {
+            throw new IllegalArgumentException("Illegal batch interval: "+batchMillis);
+        }
+        if (segmentSize <= 0 || segmentSize > 1 << 30) {
+            throw new IllegalArgumentException("Illegal segment size: "+segmentSize);
+        }
+        if (segmentsPerCheckpoint <= 0) {
+            throw new IllegalArgumentException("Illegal number of segments per checkpoint: "
+                    +segmentsPerCheckpoint);
+        }
+        this.directory = directory;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.policy = policy;
+        this.batchNanos = batchMillis * 1000000L;
+        this.segmentSize = segmentSize;
+        this.segmentsPerCheckpoint = segmentsPerCheckpoint;
+        this.mapWindow = mapWindow;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory "+directory);
+        }
+        recover();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return policy;
+    }
+
+    /**
+     * Writes the pending changes to the log and forces them to the disk,
+     * whatever the sync policy.
+     */
+    public void sync() {
+        checkOpen();
+        try {
+            commit(true);
+        } catch (IOException ex) {
+            throw failed(ex);
+        }
+    }
+
+    /**
+     * Writes the contents to a new checkpoint and deletes the segments and
+     * checkpoints it replaces. This happens anyway every few segments;
+     * call it to shrink the log right away, for example after removing
+     * most of the values.
+     */
+    public void checkpoint() {
+        checkOpen();
+        try {
+            writeCheckpoint();
+        } catch (IOException ex) {
+            throw failed(ex);
+        }
+    }
+
+    /**
+     * Syncs the pending changes and closes the log. The deque-map cannot
+     * be used afterwards; does nothing if already closed.
+     * 
+     * @throws IOException if writing the changes or closing the log fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        try {
+            commit(true);
+        } finally {
+            segment.close();
+            segment = null;
+        }
+    }
+
+    @Override
+    public int countOf(K key) {
+        return data.countOf(key);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void set(K key, V value) {
+        setAll(key, Collections.singletonList(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The change is logged as a single record, so a crash never leaves
+     * the key cleared but without its new values.
+     */
+    @Override
+    public void setAll(K key, Collection<? extends V> values) {
+        checkOpen();
+        if (values.isEmpty()) {
+            clearKey(key);
+        } else {
+            append(SET_ALL, key, values, values.size());
+            data.setAll(key, values);
+            logged();
+        }
+    }
+
+    @Override
+    public List<V> popN(K key, int n) {
+        checkOpen();
+        int count = Math.min(n, data.countOf(key));
+        if (count <= 0) {
+            return new ArrayList<V>(0);
+        }
+        append(POP_N, key, null, count);
+        List<V> result = data.popN(key, count);
+        logged();
+        return result;
+    }
+
+    @Override
+    public List<V> popNLast(K key, int n) {
+        checkOpen();
+        int count = Math.min(n, data.countOf(key));
+        if (count <= 0) {
+            return new ArrayList<V>(0);
+        }
+        append(POP_N_LAST, key, null, count);
+        List<V> result = data.popNLast(key, count);
+        logged();
+        return result;
+    }
+
+    @Override
+    public void addAll(K key, Collection<? extends V> values) {
+        checkOpen();
+        if (!values.isEmpty()) {
+            append(ADD_ALL, key, values, values.size());
+            data.addAll(key, values);
+            logged();
+        }
+    }
+
+    @Override
+    public void addAllLast(K key, Collection<? extends V> values) {
+        checkOpen();
+        if (!values.isEmpty()) {
+            append(ADD_ALL_LAST, key, values, values.size());
+            data.addAllLast(key, values);
+            logged();
+        }
+    }
+
+    @Override
+    public void clearKey(K key) {
+        checkOpen();
+        if (data.containsKey(key)) {
+            append(CLEAR_KEY, key, null, 0);
+            data.clearKey(key);
+            logged();
+        }
+    }
+
+    @Override
+    public void clear() {
+        checkOpen();
+        append(CLEAR, null, null, 0);
+        data.clear();
+        logged();
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(K key, int index) {
+        return data.getAll(key).get(index);
+    }
+
+    @Override
+    protected V setValueAt(K key, int index, V value) {
+        checkOpen();
+        append(SET, key, Collections.singletonList(value), index);
+        V old = data.getAll(key).set(index, value);
+        logged();
+        return old;
+    }
+
+    @Override
+    protected void insertAt(K key, int index, V value) {
+        checkOpen();
+        int count = data.countOf(key);
+        if (index == count) {
+            append(ADD_LAST, key, Collections.singletonList(value), 0);
+        } else if (index == 0) {
+            append(ADD, key, Collections.singletonList(value), 0);
+        } else {
+            append(INSERT, key, Collections.singletonList(value), index);
+        }
+        data.getAll(key).add(index, value);
+        logged();
+    }
+
+    @Override
+    protected V removeAt(K key, int index) {
+        checkOpen();
+        int count = data.countOf(key);
+        if (index == 0) {
+            append(POP, key, null, 0);
+        } else if (index == count - 1) {
+            append(POP_LAST, key, null, 0);
+        } else {
+            append(REMOVE, key, null, index);
+        }
+        V value = data.getAll(key).remove(index);
+        logged();
+        return value;
+    }
+
+    @Override
+    protected Iterator<K> keyIterator() {
+        return data.keyIterator();
+    }
+
+// private methods
+
+    /**
+     * Commits the record appended for the last change as the sync policy says.
+     */
+    private void logged() {
+        try {
+            if (policy == SyncPolicy.EVERY_OPERATION) {
+                commit(true);
+            } else if (policy == SyncPolicy.OS) {
+                commit(false);
+            } else if (buffer.position() >= BATCH_BYTES
+                    || System.nanoTime() - firstPendingNanos >= batchNanos) {
+                commit(true);
+            }
+        } catch (IOException ex) {
+            throw failed(ex);
+        }
+    }
+
+    /**
+     * Appends a record to the buffer. The mutators append the record of
+     * a change before making it, so a key or value that cannot be written
+     * fails the change without leaving the contents ahead of the log; on
+     * such a failure the buffer is left as it was.
+     * 
+     * @param values the values of the record, if any
+     * @param argument the index or the number of values of the record
+     */
+    private void append(byte op, K key, Collection<? extends V> values, int argument) {
+        if (buffer.position() == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        int size = 1;
+        if (key != null) {
+            size += 4 + keyCodec.sizeOf(key);
+        }
+        if (hasArgument(op)) {
+            size += 4;
+        }
+        if (values != null) {
+            for (V value : values) {
+                size += 4 + valueCodec.sizeOf(value);
+            }
+        }
+        if (buffer.remaining() < RECORD_HEADER + size) {
+            ByteBuffer larger = ByteBuffer.allocate(
+                    Math.max(buffer.capacity() * 2, buffer.position() + RECORD_HEADER + size));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int start = buffer.position();
+        try {
+            buffer.position(start + RECORD_HEADER);
+            buffer.put(op);
+            if (key != null) {
+                encode(key, keyCodec);
+            }
+            if (hasArgument(op)) {
+                buffer.putInt(argument);
+            }
+            if (values != null) {
+                for (V value : values) {
+                    encode(value, valueCodec);
+                }
+            }
+        } catch (RuntimeException ex) {
+            buffer.position(start);
+            throw ex;
+        }
+        checksum.reset();
+        checksum.update(buffer.array(), start + RECORD_HEADER, size);
+        buffer.putInt(start, size);
+        buffer.putInt(start + 4, (int) checksum.getValue());
+    }
+
+    private static boolean hasArgument(byte op) {
+        return op == INSERT || op == SET || op == REMOVE || op == POP_N || op == POP_N_LAST
+                || op == ADD_ALL || op == ADD_ALL_LAST || op == SET_ALL;
+    }
+
+    private <T> void encode(T object, BinaryCodec<T> codec) {
+        int length = codec.sizeOf(object);
+        buffer.putInt(length);
+        int end = buffer.position() + length;
+        codec.write(object, buffer);
+        buffer.position(end);
+    }
+
+    /**
+     * Writes the buffered changes to the current segment, forcing them to
+     * the disk if asked, and starts a new segment if the current one is full.
+     */
+    private void commit(boolean force) throws IOException {
+        if (buffer.position() > 0) {
+            segmentLength += buffer.position();
+            write(segment.getChannel());
+            if (force) {
+                segment.getChannel().force(false);
+            }
+        }
+        if (segmentLength >= segmentSize) {
+            nextSegment();
+            if (++segmentsSinceCheckpoint >= segmentsPerCheckpoint) {
+                writeCheckpoint();
+            }
+        }
+    }
+
+    /**
+     * Closes the current segment, forced to the disk, and starts the next one.
+     */
+    private void nextSegment() throws IOException {
+        segment.getChannel().force(false);
+        segment.close();
+        openSegment(segmentNumber + 1);
+    }
+
+    private void openSegment(long number) throws IOException {
+        segment = new RandomAccessFile(file(number, SEGMENT_SUFFIX), "rw");
+        segmentNumber = number;
+        segmentLength = segment.length();
+        segment.seek(segmentLength);
+    }
+
+    /**
+     * Starts a new segment and writes the contents to a checkpoint with its
+     * number, so the checkpoint replaces all the older files.
+     */
+    private void writeCheckpoint() throws IOException {
+        write(segment.getChannel());
+        nextSegment();
+        segmentsSinceCheckpoint = 0;
+
+        File temporary = file(segmentNumber, TEMPORARY_SUFFIX);
+        RandomAccessFile out = new RandomAccessFile(temporary, "rw");
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            for (Iterator<K> keys = data.keyIterator(); keys.hasNext(); ) {
+                K key = keys.next();
+                List<V> values = data.getAll(key);
+                append(ADD_ALL_LAST, key, values, values.size());
+                if (buffer.position() >= BATCH_BYTES) {
+                    write(channel);
+                }
+            }
+            write(channel);
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file(segmentNumber, CHECKPOINT_SUFFIX))) {
+            throw new IOException("Cannot rename "+temporary);
+        }
+        deleteBefore(segmentNumber);
+    }
+
+    private void write(FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Loads the latest checkpoint, replays the segments after it and opens
+     * a new segment.
+     */
+    private void recover() throws IOException {
+        long checkpoint = -1;
+        long lastSegment = -1;
+        for (File f : listFiles()) {
+            String name = f.getName();
+            if (name.endsWith(CHECKPOINT_SUFFIX)) {
+                checkpoint = Math.max(checkpoint, numberOf(name));
+            } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                lastSegment = Math.max(lastSegment, numberOf(name));
+            } else if (name.endsWith(TEMPORARY_SUFFIX)) {
+                // an unfinished checkpoint
+                f.delete();
+            }
+        }
+        if (checkpoint >= 0) {
+            File f = file(checkpoint, CHECKPOINT_SUFFIX);
+            if (!replay(f)) {
+                throw new IOException("Corrupt checkpoint "+f);
+            }
+            deleteBefore(checkpoint);
+        }
+        for (long n = Math.max(checkpoint, 0); n <= lastSegment; n++) {
+            File f = file(n, SEGMENT_SUFFIX);
+            if (f.exists()) {
+                replay(f);
+                segmentsSinceCheckpoint++;
+            }
+        }
+        // never append after a torn record
+        openSegment(Math.max(lastSegment + 1, Math.max(checkpoint, 0)));
+    }
+
+    /**
+     * Applies the records of the given file. The file is mapped a window
+     * at a time, each starting at a record and holding at least that record.
+     * 
+     * @return {@code false} if the file ends with an invalid record
+     */
+    private boolean replay(File f) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            long offset = 0;
+            int window = mapWindow;
+            while (length - offset >= RECORD_HEADER) {
+                ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(length - offset, window));
+                window = mapWindow;
+                while (records.remaining() >= RECORD_HEADER) {
+                    int start = records.position();
+                    int size = records.getInt(start);
+                    int sum = records.getInt(start + 4);
+                    if (size <= 0 || size > Integer.MAX_VALUE - RECORD_HEADER
+                            || size > length - offset - start - RECORD_HEADER) {
+                        return false;
+                    }
+                    if (size > records.remaining() - RECORD_HEADER) {
+                        // the record goes on after the window
+                        if (start == 0) {
+                            window = RECORD_HEADER + size;
+                        }
+                        break;
+                    }
+                    if (recordBytes.length < size) {
+                        recordBytes = new byte[Math.max(recordBytes.length * 2, size)];
+                    }
+                    records.position(start + RECORD_HEADER);
+                    records.get(recordBytes, 0, size);
+                    checksum.reset();
+                    checksum.update(recordBytes, 0, size);
+                    if ((int) checksum.getValue() != sum) {
+                        return false;
+                    }
+                    apply(ByteBuffer.wrap(recordBytes, 0, size));
+                }
+                offset += records.position();
+            }
+            return offset == length;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Applies the record at the position of the given buffer to the values.
+     */
+    private void apply(ByteBuffer record) {
+        byte op = record.get();
+        if (op == CLEAR) {
+            data.clear();
+            return;
+        }
+        K key = decode(record, keyCodec);
+        List<V> values = data.getAll(key);
+        switch (op) {
+        case ADD:
+            values.add(0, decode(record, valueCodec));
+            break;
+        case ADD_LAST:
+            values.add(decode(record, valueCodec));
+            break;
+        case INSERT:
+            int index = record.getInt();
+            values.add(index, decode(record, valueCodec));
+            break;
+        case SET:
+            index = record.getInt();
+            values.set(index, decode(record, valueCodec));
+            break;
+        case POP:
+            data.pop(key);
+            break;
+        case POP_LAST:
+            data.popLast(key);
+            break;
+        case REMOVE:
+            values.remove(record.getInt());
+            break;
+        case POP_N:
+            data.popN(key, record.getInt());
+            break;
+        case POP_N_LAST:
+            data.popNLast(key, record.getInt());
+            break;
+        case ADD_ALL:
+        case ADD_ALL_LAST:
+        case SET_ALL:
+            int count = record.getInt();
+            List<V> added = new ArrayList<V>(count);
+            for (int i = 0; i < count; i++) {
+                added.add(decode(record, valueCodec));
+            }
+            if (op == ADD_ALL) {
+                data.addAll(key, added);
+            } else if (op == ADD_ALL_LAST) {
+                data.addAllLast(key, added);
+            } else {
+                data.setAll(key, added);
+            }
+            break;
+        case CLEAR_KEY:
+            data.clearKey(key);
+            break;
+        default:
+            throw new IllegalStateException("Unknown log record: "+op);
+        }
+    }
+
+    private static <T> T decode(ByteBuffer in, BinaryCodec<T> codec) {
+        int length = in.getInt();
+        int end = in.position() + length;
+        int limit = in.limit();
+        in.limit(end);
+        T object = codec.read(in, length);
+        in.limit(limit);
+        in.position(end);
+        return object;
+    }
+
+    private void deleteBefore(long number) throws IOException {
+        for (File f : listFiles()) {
+            String name = f.getName();
+            if ((name.endsWith(SEGMENT_SUFFIX) || name.endsWith(CHECKPOINT_SUFFIX))
+                    && numberOf(name) < number && !f.delete()) {
+                throw new IOException("Cannot delete "+f);
+            }
+        }
+    }
+
+    private File[] listFiles() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list directory "+directory);
+        }
+        return files;
+    }
+
+    private File file(long number, String suffix) {
+        return new File(directory, String.format("%016x", number)+suffix);
+    }
+
+    private static long numberOf(String name) {
+        return Long.parseLong(name.substring(0, name.indexOf('.')), 16);
+    }
+
+    private void checkOpen() {
+        if (segment == null) {
+            throw new IllegalStateException("Deque-map on "+directory+" is closed");
+        }
+    }
+
+    private IllegalStateException failed(IOException ex) {
+        try {
+            segment.close();
+        } catch (IOException ignored) {
+        }
+        segment = null;
+        return new IllegalStateException("Log in "+directory+" failed", ex);
+    }
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.*;
+
+/**
+ * Implementation of {@code DequeMap} that can also pop values from any key,
+ * either visiting the keys in turn or in the order the values were added.
+ * <p/>
+ * The keys with values form a ring. {@link #popAny} pops the first value of
+ * the key at the current position of the ring and moves to the next key,
+ * so keys are served round robin, one value at a time, whatever the number
+ * of their values. New keys join the ring right before the current
+ * position, so they are served after the keys that were already waiting.
+ * <p/>
+ * Unless disabled at construction, all the values are also linked in the
+ * order they were added, whatever the key and whatever the end of its deque
+ * they were added to. {@link #popOldest} pops the value added first of all
+ * (global first in first out).
+ * <p/>
+ * Both take constant time, as do all the operations at the ends of a deque;
+ * the ring is updated as keys get their first value or lose their last one.
+ * Indexed access walks the deque from its nearest end.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class FairDequeHashMap<K, V> extends AbstractDequeMap<K, V> {
+
+    /**
+     * A value, linked in the deque of its key and in the order of addition.
+     */
+    static final class Node<K> {
+        Object value;
+        final KeyDeque<K> owner;
+        Node<K> previous;
+        Node<K> next;
+        Node<K> older;
+        Node<K> newer;
+
+        Node(Object value, KeyDeque<K> owner) {
+            this.value = value;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * The deque of a key and its neighbours in the ring of keys.
+     */
+    static final class KeyDeque<K> {
+        final K key;
+        Node<K> head;
+        Node<K> tail;
+        int count;
+        KeyDeque<K> previousKey;
+        KeyDeque<K> nextKey;
+
+        KeyDeque(K key) {
+            this.key = key;
+        }
+    }
+
+    private final Map<K, KeyDeque<K>> data = new HashMap<K, KeyDeque<K>>();
+    private final boolean globalOrder;
+
+    /** The key {@code popAny} pops from; {@code null} when there are no keys. */
+    private KeyDeque<K> current;
+
+    private Node<K> oldest;
+    private Node<K> newest;
+
+    /**
+     * Creates a new empty deque-map that keeps the order of addition
+     * of the values.
+     */
+    public FairDequeHashMap() {
+        this(true);
+    }
+
+    /**
+     * Creates a new empty deque-map.
+     * 
+     * @param globalOrder whether to keep the order of addition of the
+     * values, which {@link #popOldest} needs
+     */
+    public FairDequeHashMap(boolean globalOrder) {
+        this.globalOrder = globalOrder;
+    }
+
+    /**
+     * Returns the key {@link #popAny} will pop from.
+     * 
+     * @return the current key of the ring or {@code null} if there are no keys
+     */
+    public K peekAnyKey() {
+        return current == null ? null : current.key;
+    }
+
+    /**
+     * Returns and removes the first value of the current key of the ring,
+     * and moves to the next key.
+     * 
+     * @return the first value of the current key or {@code null} if there
+     * are no keys
+     */
+    public V popAny() {
+        KeyDeque<K> deque = current;
+        if (deque == null) {
+            return null;
+        }
+        current = deque.nextKey;
+        return cast(unlink(deque.head));
+    }
+
+    /**
+     * Returns the key of the value {@link #popOldest} will pop.
+     * 
+     * @return the key of the oldest value or {@code null} if there are no keys
+     * @throws IllegalStateException if the order of addition is not kept
+     */
+    public K peekOldestKey() {
+        checkGlobalOrder();
+        return oldest == null ? null : oldest.owner.key;
+    }
+
+    /**
+     * Returns and removes the value that was added before all the others.
+     * 
+     * @return the oldest value or {@code null} if there are no keys
+     * @throws IllegalStateException if the order of addition is not kept
+     */
+    public V popOldest() {
+        checkGlobalOrder();
+        return oldest == null ? null : this.<V>cast(unlink(oldest));
+    }
+
+    @Override
+    public V get(K key) {
+        KeyDeque<K> deque = data.get(key);
+        return deque == null ? null : this.<V>cast(deque.head.value);
+    }
+
+    @Override
+    public V getLast(K key) {
+        KeyDeque<K> deque = data.get(key);
+        return deque == null ? null : this.<V>cast(deque.tail.value);
+    }
+
+    @Override
+    public V pop(K key) {
+        KeyDeque<K> deque = data.get(key);
+        return deque == null ? null : this.<V>cast(unlink(deque.head));
+    }
+
+    @Override
+    public V popLast(K key) {
+        KeyDeque<K> deque = data.get(key);
+        return deque == null ? null : this.<V>cast(unlink(deque.tail));
+    }
+
+    @Override
+    public void add(K key, V value) {
+        link(ensureDequeAt(key), 0, value);
+    }
+
+    @Override
+    public void addLast(K key, V value) {
+        KeyDeque<K> deque = ensureDequeAt(key);
+        link(deque, deque.count, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The iterators of the returned list walk the nodes of the deque, so
+     * iterating over it takes linear time.
+     */
+    @Override
+    public List<V> getAll(K key) {
+        return new NodeView(key);
+    }
+
+    @Override
+    public int countOf(K key) {
+        KeyDeque<K> deque = data.get(key);
+        return deque == null ? 0 : deque.count;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void clearKey(K key) {
+        KeyDeque<K> deque = data.get(key);
+        while (deque != null && deque.count > 0) {
+            unlink(deque.tail);
+        }
+    }
+
+    @Override
+    public void clear() {
+        data.clear();
+        current = null;
+        oldest = null;
+        newest = null;
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(K key, int index) {
+        return cast(nodeAt(data.get(key), index).value);
+    }
+
+    @Override
+    protected V setValueAt(K key, int index, V value) {
+        Node<K> node = nodeAt(data.get(key), index);
+        V old = cast(node.value);
+        node.value = value;
+        return old;
+    }
+
+    @Override
+    protected void insertAt(K key, int index, V value) {
+        link(ensureDequeAt(key), index, value);
+    }
+
+    @Override
+    protected V removeAt(K key, int index) {
+        return cast(unlink(nodeAt(data.get(key), index)));
+    }
+
+    @Override
+    protected Iterator<K> keyIterator() {
+        return Collections.unmodifiableSet(data.keySet()).iterator();
+    }
+
+// views
+
+    /**
+     * Key view whose iterators walk the nodes of the deque, instead of
+     * looking up the key and walking to the node for every index.
+     */
+    class NodeView extends KeyView {
+
+        NodeView(K key) {
+            super(key);
+        }
+
+        @Override
+        public V get(int index) {
+            KeyDeque<K> deque = data.get(key);
+            checkIndex(index, deque == null ? 0 : deque.count);
+            return cast(nodeAt(deque, index).value);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<V> listIterator(int index) {
+            KeyDeque<K> deque = data.get(key);
+            int count = deque == null ? 0 : deque.count;
+            checkIndex(index, count + 1);
+            return new NodeIterator(deque, index == count ? null : nodeAt(deque, index), index);
+        }
+
+        private void checkIndex(int index, int bound) {
+            if (index < 0 || index >= bound) {
+                throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key
+                        +", Size: "+size());
+            }
+        }
+
+        class NodeIterator implements ListIterator<V> {
+
+            /** The deque of the key, {@code null} or empty if it has no values. */
+            private KeyDeque<K> deque;
+            private Node<K> next;
+            private Node<K> lastReturned;
+            private int nextIndex;
+            private int expectedCount;
+
+            NodeIterator(KeyDeque<K> deque, Node<K> next, int nextIndex) {
+                this.deque = deque;
+                this.next = next;
+                this.nextIndex = nextIndex;
+                expectedCount = deque == null ? 0 : deque.count;
+            }
+
+            @Override public boolean hasNext() {
+                return nextIndex < expectedCount;
+            }
+
+            @Override public V next() {
+                checkForComodification();
+                if (nextIndex >= expectedCount) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = next;
+                next = next.next;
+                nextIndex++;
+                return cast(lastReturned.value);
+            }
+
+            @Override public boolean hasPrevious() {
+                return nextIndex > 0;
+            }
+
+            @Override public V previous() {
+                checkForComodification();
+                if (nextIndex == 0) {
+                    throw new NoSuchElementException();
+                }
+                next = next == null ? deque.tail : next.previous;
+                lastReturned = next;
+                nextIndex--;
+                return cast(lastReturned.value);
+            }
+
+            @Override public int nextIndex() {
+                return nextIndex;
+            }
+
+            @Override public int previousIndex() {
+                return nextIndex - 1;
+            }
+
+            @Override public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                checkForComodification();
+                if (lastReturned == next) {
+                    next = next.next;
+                } else {
+                    nextIndex--;
+                }
+                unlink(lastReturned);
+                lastReturned = null;
+                expectedCount--;
+                modCount++;
+            }
+
+            @Override public void set(V e) {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                checkForComodification();
+                lastReturned.value = e;
+            }
+
+            @Override public void add(V e) {
+                checkForComodification();
+                if (deque == null || deque.count == 0) {
+                    // the key has no values, or lost them through this iterator
+                    deque = ensureDequeAt(key);
+                    expectedCount = deque.count;
+                }
+                linkBefore(deque, next, e);
+                nextIndex++;
+                lastReturned = null;
+                expectedCount++;
+                modCount++;
+            }
+
+            private void checkForComodification() {
+                if ((deque == null ? 0 : deque.count) != expectedCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        }
+    }
+
+// private methods
+
+    private KeyDeque<K> ensureDequeAt(K key) {
+        KeyDeque<K> deque = data.get(key);
+        if (deque == null) {
+            deque = new KeyDeque<K>(key);
+            data.put(key, deque);
+            // join the ring right before the current key
+            if (current == null) {
+                deque.previousKey = deque;
+                deque.nextKey = deque;
+                current = deque;
+            } else {
+                deque.previousKey = current.previousKey;
+                deque.nextKey = current;
+                current.previousKey.nextKey = deque;
+                current.previousKey = deque;
+            }
+        }
+        return deque;
+    }
+
+    /**
+     * Adds a value at the given position of the given deque and as the
+     * newest value.
+     */
+    private void link(KeyDeque<K> deque, int index, Object value) {
+        linkBefore(deque, index == deque.count ? null : nodeAt(deque, index), value);
+    }
+
+    /**
+     * Adds a value to the given deque before the given node, or last if
+     * {@code next} is {@code null}, and as the newest value.
+     */
+    private void linkBefore(KeyDeque<K> deque, Node<K> next, Object value) {
+        Node<K> node = new Node<K>(value, deque);
+        if (deque.count == 0) {
+            deque.head = node;
+            deque.tail = node;
+        } else if (next == null) {
+            node.previous = deque.tail;
+            deque.tail.next = node;
+            deque.tail = node;
+        } else {
+            node.next = next;
+            node.previous = next.previous;
+            if (next.previous == null) {
+                deque.head = node;
+            } else {
+                next.previous.next = node;
+            }
+            next.previous = node;
+        }
+        deque.count++;
+
+        if (globalOrder) {
+            node.older = newest;
+            if (newest == null) {
+                oldest = node;
+            } else {
+                newest.newer = node;
+            }
+            newest = node;
+        }
+    }
+
+    /**
+     * Removes the given value from its deque and from the order of addition,
+     * and removes its key if it was its last value.
+     */
+    private Object unlink(Node<K> node) {
+        KeyDeque<K> deque = node.owner;
+        if (node.previous == null) {
+            deque.head = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            deque.tail = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+
+        if (globalOrder) {
+            if (node.older == null) {
+                oldest = node.newer;
+            } else {
+                node.older.newer = node.newer;
+            }
+            if (node.newer == null) {
+                newest = node.older;
+            } else {
+                node.newer.older = node.older;
+            }
+        }
+
+        if (--deque.count == 0) {
+            data.remove(deque.key);
+            // leave the ring
+            if (deque.nextKey == deque) {
+                current = null;
+            } else {
+                deque.previousKey.nextKey = deque.nextKey;
+                deque.nextKey.previousKey = deque.previousKey;
+                if (current == deque) {
+                    current = deque.nextKey;
+                }
+            }
+        }
+        return node.value;
+    }
+
+    private Node<K> nodeAt(KeyDeque<K> deque, int index) {
+        if (index < deque.count / 2) {
+            Node<K> node = deque.head;
+            for (int i = 0; i < index; i++) {
+                node = node.next;
+            }
+            return node;
+        }
+        Node<K> node = deque.tail;
+        for (int i = deque.count - 1; i > index; i--) {
+            node = node.previous;
+        }
+        return node;
+    }
+
+    private void checkGlobalOrder() {
+        if (!globalOrder) {
+            throw new IllegalStateException("The order of addition is not kept");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T) value;
+    }
+}
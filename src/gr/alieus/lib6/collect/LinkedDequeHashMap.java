@@ -17,6 +17,10 @@
 
 package gr.alieus.lib6.collect;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import java.util.*;
@@ -28,6 +32,12 @@ import static gr.alieus.lib6.collect.CollectUtil.reverseCopy;
  * Implementation of {@code DequeMap} that uses a hash based map whose 
  * values are linked deques.
  * <p/> 
+ * A key with a single value keeps the value directly in the map, without
+ * a deque. The deque is created when a second value is added to the key
+ * and dropped when a removal leaves the key with a single value again,
+ * so maps where most keys have one value take little more memory than
+ * a plain {@code HashMap}.
+ * <p/> 
  * NOTE: this implementation is not thread safe.
  * 
  * @see DequeMap
@@ -45,67 +55,100 @@ public class LinkedDequeHashMap<K, V>
      * when they get empty.   
      */
     
+    /*
+     * A slot of data holds either the single value of its key or the deque
+     * (bucket) of its key. Values that are null or linked lists themselves
+     * are always kept in buckets, so a slot is a bucket exactly when it is
+     * a LinkedList. Buckets are inflated by ensureBucketAt and deflated by
+     * compact; iterators over a bucket never deflate it, so that the bucket
+     * stays the same while they are open.
+     */
+    
     /*
      * NOTE: some methods create deques (buckets) via ensureBucketAt and they remove
      * them immediately. A different approach would be not to create the bucket at all
      * if it is to be removed immediately.
      */
     
-    private static final long serialVersionUID = 1L;
+    /*
+     * The serialized form is written by writeObject: the keys and their
+     * values, without the buckets or the views.
+     */
+    
+    private static final long serialVersionUID = 2L;
 
-    private final Map<K, LinkedList<V>> data = new HashMap<K, LinkedList<V>>();
-    private final Map<K, List<V>> mapView = new MapView();
+    /** The most keys {@code readObject} makes room for before reading them. */
+    static final int MAX_PRESIZED_KEYS = 1 << 16;
+    
+    transient Map<K, Object> data = new HashMap<K, Object>();
+    private transient Map<K, List<V>> mapView = new MapView();
     
     @Override
     public V get(K key) {
-        LinkedList<V> bucket = data.get(key);
-        return bucket == null || bucket.isEmpty()
-                // a bucket is never supposed to be empty. but you never know.. 
-                ? null
-                : bucket.peek();
+        Object slot = data.get(key);
+        if (isBucket(slot)) {
+            // a bucket is never supposed to be empty. but you never know.. 
+            return bucket(slot).peek();
+        }
+        return cast(slot);
     }
 
     @Override
     public void set(K key, V value) {
-        LinkedList<V> bucket = ensureBucketAt(key);
-        bucket.clear();  // now it's empty...
-        bucket.add(value);
+        if (canInline(value)) {
+            data.put(key, value);
+        } else {
+            LinkedList<V> bucket = new LinkedList<V>();
+            bucket.add(value);
+            data.put(key, bucket);
+        }
     }
 
     @Override
     public V getLast(K key) {
-        LinkedList<V> bucket = data.get(key);
-        return bucket == null || bucket.isEmpty()
-                ? null
-                : bucket.peekLast();
+        Object slot = data.get(key);
+        if (isBucket(slot)) {
+            return bucket(slot).peekLast();
+        }
+        return cast(slot);
     }
 
     @Override
     public V pop(K key) {
-        LinkedList<V> bucket = ensureBucketAt(key);
+        Object slot = data.get(key);
+        if (!isBucket(slot)) {
+            return removeSingle(key, slot);
+        }
+        LinkedList<V> bucket = bucket(slot);
         V result = bucket.poll();
-        removeIfEmpty(key, bucket);
+        compact(key, bucket);
         return result;
     }
 
     @Override
     public V popLast(K key) {
-        LinkedList<V> bucket = ensureBucketAt(key);
+        Object slot = data.get(key);
+        if (!isBucket(slot)) {
+            return removeSingle(key, slot);
+        }
+        LinkedList<V> bucket = bucket(slot);
         V result = bucket.pollLast();
-        removeIfEmpty(key, bucket);
+        compact(key, bucket);
         return result;
     }
 
     @Override
     public void add(K key, V value) {
-        ensureBucketAt(key).addFirst(value);
-        
+        if (!putIfAbsent(key, value)) {
+            ensureBucketAt(key).addFirst(value);
+        }
     }
 
     @Override
     public void addLast(K key, V value) {
-        ensureBucketAt(key).addLast(value);
-        
+        if (!putIfAbsent(key, value)) {
+            ensureBucketAt(key).addLast(value);
+        }
     }
 
     /** 
@@ -121,10 +164,13 @@ public class LinkedDequeHashMap<K, V>
 
     @Override
     public void setAll(K key, Collection<? extends V> values) {
-        LinkedList<V> bucket = ensureBucketAt(key);
-        bucket.clear();  // now it's empty...
-        bucket.addAll(values);
-        removeIfEmpty(key, bucket);
+        if (values.isEmpty()) {
+            data.remove(key);
+        } else {
+            LinkedList<V> bucket = new LinkedList<V>(values);
+            data.put(key, bucket);
+            compact(key, bucket);
+        }
     }
 
     @Override
@@ -139,7 +185,11 @@ public class LinkedDequeHashMap<K, V>
 
     @Override
     public List<V> popN(K key, int n) {
-        LinkedList<V> bucket = ensureBucketAt(key);
+        Object slot = data.get(key);
+        if (!isBucket(slot)) {
+            return popSingle(key, slot, n);
+        }
+        LinkedList<V> bucket = bucket(slot);
         if (n >= bucket.size()) {
             // we send a copy instead of the actual bucket and then clear the bucket
             // so that if an iterator over the values of this key is open, it
@@ -152,13 +202,18 @@ public class LinkedDequeHashMap<K, V>
             List<V> bucketSubList = bucket.subList(0, n);
             List<V> result = new ArrayList<V>(bucketSubList);
             bucketSubList.clear();
+            compact(key, bucket);
             return result;
         }
     }
 
     @Override
     public List<V> popNLast(K key, int n) {
-        LinkedList<V> bucket = ensureBucketAt(key);
+        Object slot = data.get(key);
+        if (!isBucket(slot)) {
+            return popSingle(key, slot, n);
+        }
+        LinkedList<V> bucket = bucket(slot);
         if (n >= bucket.size()) {
             // we send a copy instead of the actual bucket and then clear the bucket
             // so that if an iterator over the values of this key is open, it
@@ -171,6 +226,7 @@ public class LinkedDequeHashMap<K, V>
             List<V> bucketSubList = bucket.subList(bucket.size()-n, bucket.size());
             List<V> result = reverseCopy(bucketSubList);
             bucketSubList.clear();
+            compact(key, bucket);
             return result;
         }
     }
@@ -178,22 +234,24 @@ public class LinkedDequeHashMap<K, V>
     @Override
     public void addAll(K key, Collection<? extends V> values) {
         if (values.isEmpty()) return;
+        if (values.size() == 1 && putIfAbsent(key, values.iterator().next())) return;
         ensureBucketAt(key).addAll(0, values);
     }
 
     @Override
     public void addAllLast(K key, Collection<? extends V> values) {
         if (values.isEmpty()) return;
+        if (values.size() == 1 && putIfAbsent(key, values.iterator().next())) return;
         ensureBucketAt(key).addAll(values);
         
     }
 
     @Override
     public int countOf(K key) {
-        LinkedList<V> bucket = data.get(key);
-        return bucket == null
+        Object slot = data.get(key);
+        return slot == null
                 ? 0
-                : bucket.size();
+                : isBucket(slot) ? bucket(slot).size() : 1;
     }
 
     @Override
@@ -295,18 +353,83 @@ public class LinkedDequeHashMap<K, V>
     }
     
     public String toString() {
-        return data.toString();
+        return mapView.toString();
     };
     
+// serialization
+    
+    /**
+     * Saves this deque-map to a stream.
+     * 
+     * @serialData the number of keys ({@code int}), then for each key
+     * the key ({@code Object}), the number of its values ({@code int}) and
+     * its values ({@code Object}s) from the first to the last
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(data.size());
+        for (Map.Entry<K, Object> en : data.entrySet()) {
+            s.writeObject(en.getKey());
+            Object slot = en.getValue();
+            if (isBucket(slot)) {
+                LinkedList<V> bucket = bucket(slot);
+                s.writeInt(bucket.size());
+                for (V value : bucket) {
+                    s.writeObject(value);
+                }
+            } else {
+                s.writeInt(1);
+                s.writeObject(slot);
+            }
+        }
+    }
+    
+    /**
+     * Restores this deque-map from a stream, sizing the map for the number
+     * of keys up front. The number comes from the stream, so the initial
+     * size is capped and larger maps grow as the keys are read.
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int keyCount = s.readInt();
+        if (keyCount < 0) {
+            throw new InvalidObjectException("Illegal number of keys: "+keyCount);
+        }
+        data = new HashMap<K, Object>(Math.max((int) (Math.min(keyCount, MAX_PRESIZED_KEYS) / .75f) + 1, 16));
+        mapView = new MapView();
+        for (int i = 0; i < keyCount; i++) {
+            K key = cast(s.readObject());
+            int count = s.readInt();
+            if (count <= 0) {
+                throw new InvalidObjectException("Illegal number of values: "+count+" of key: "+key);
+            }
+            V first = cast(s.readObject());
+            if (count == 1 && canInline(first)) {
+                data.put(key, first);
+            } else {
+                LinkedList<V> bucket = new LinkedList<V>();
+                bucket.add(first);
+                for (int j = 1; j < count; j++) {
+                    bucket.add(this.<V>cast(s.readObject()));
+                }
+                data.put(key, bucket);
+            }
+        }
+    }
+    
 // private methods
     
     LinkedList<V> ensureBucketAt(K key) {
-        LinkedList<V> bucket = data.get(key);
+        Object slot = data.get(key);
         
-        if (bucket == null) {
-            bucket = new LinkedList<V>();
-            data.put(key, bucket);
+        if (isBucket(slot)) {
+            return bucket(slot);
         }
+        LinkedList<V> bucket = new LinkedList<V>();
+        if (slot != null) {
+            bucket.add(this.<V>cast(slot));  // inflate the single value
+        }
+        data.put(key, bucket);
         
         return bucket;
     }
@@ -319,6 +442,72 @@ public class LinkedDequeHashMap<K, V>
         return false;
     }
     
+    /**
+     * Removes the given bucket if it is empty or replaces it by its value
+     * if it has a single value that can be kept without a bucket.
+     */
+    void compact(K key, LinkedList<V> bucket) {
+        if (!removeIfEmpty(key, bucket) && bucket.size() == 1 && canInline(bucket.peek())) {
+            data.put(key, bucket.peek());
+        }
+    }
+    
+    /**
+     * Maps the given key to the given value without a bucket, if the key
+     * does not exist and the value can be kept without a bucket.
+     * 
+     * @return {@code true} if the value was added
+     */
+    private boolean putIfAbsent(K key, V value) {
+        if (!canInline(value) || data.containsKey(key)) {
+            return false;
+        }
+        data.put(key, value);
+        return true;
+    }
+    
+    /** Removes and returns the single value of key, if any. */
+    private V removeSingle(K key, Object slot) {
+        if (slot != null) {
+            data.remove(key);
+        }
+        return cast(slot);
+    }
+    
+    private List<V> popSingle(K key, Object slot, int n) {
+        List<V> result = new ArrayList<V>(1);
+        if (slot != null && n > 0) {
+            result.add(removeSingle(key, slot));
+        }
+        return result;
+    }
+    
+    /** Returns the values of a slot as a list, or {@code null} for no slot. */
+    List<V> valuesOf(Object slot) {
+        if (isBucket(slot)) {
+            return bucket(slot);
+        }
+        return slot == null ? null : Collections.singletonList(this.<V>cast(slot));
+    }
+    
+    static boolean isBucket(Object slot) {
+        return slot instanceof LinkedList;
+    }
+    
+    static boolean canInline(Object value) {
+        return value != null && !(value instanceof LinkedList);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private LinkedList<V> bucket(Object slot) {
+        return (LinkedList<V>) slot;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T) value;
+    }
+    
     
     
 // views
@@ -343,33 +532,33 @@ public class LinkedDequeHashMap<K, V>
 
         @Override
         public boolean contains(Object o) {
-            LinkedList<V> bucket = data.get(key);
-            return bucket != null && bucket.contains(o);
+            List<V> values = valuesOf(data.get(key));
+            return values != null && values.contains(o);
         }
 
         @Override
         @SuppressWarnings("unchecked")
         public Iterator<V> iterator() {
-            LinkedList<V> bucket = data.get(key);
-            return bucket == null
+            List<V> values = valuesOf(data.get(key));
+            return values == null
                 ? Collections.EMPTY_LIST.iterator()
-                : Collections.unmodifiableList(bucket).iterator();
+                : Collections.unmodifiableList(values).iterator();
         }
         
         @Override
         public Object[] toArray() {
-            LinkedList<V> bucket = data.get(key);
-            return bucket == null ? new Object[0] : bucket.toArray();
+            List<V> values = valuesOf(data.get(key));
+            return values == null ? new Object[0] : values.toArray();
         }
 
         @Override
         @SuppressWarnings("unchecked")
         public <T> T[] toArray(T[] a) {
-            LinkedList<V> bucket = data.get(key);
-            return bucket == null
+            List<V> values = valuesOf(data.get(key));
+            return values == null
                     ? (T[])java.lang.reflect.Array.newInstance(
                             a.getClass().getComponentType(), 0)
-                    : bucket.toArray(a);
+                    : values.toArray(a);
         }
 
         @Override
@@ -380,23 +569,26 @@ public class LinkedDequeHashMap<K, V>
 
         @Override
         public boolean remove(Object o) {
-            LinkedList<V> bucket = data.get(key);
-            if (bucket == null) {
+            Object slot = data.get(key);
+            if (slot == null) {
                 return false;
+            } else if (!isBucket(slot)) {
+                return slot.equals(o) && removeSingle(key, slot) != null;
             } else {
+                LinkedList<V> bucket = bucket(slot);
                 boolean result = bucket.remove(o);
-                removeIfEmpty(key, bucket);
+                compact(key, bucket);
                 return result;
             }
         }
 
         @Override
         public boolean containsAll(Collection<?> c) {
-            LinkedList<V> bucket = data.get(key);
-            if (bucket == null) {
+            List<V> values = valuesOf(data.get(key));
+            if (values == null) {
                 return c.isEmpty();
             } else {
-                return bucket.containsAll(c);
+                return values.containsAll(c);
             }
         }
 
@@ -411,29 +603,40 @@ public class LinkedDequeHashMap<K, V>
             if (c.isEmpty()) {
                 return false;
             }
-            return ensureBucketAt(key).addAll(index, c);
+            LinkedList<V> bucket = ensureBucketAt(key);
+            try {
+                return bucket.addAll(index, c);
+            } finally {
+                compact(key, bucket);
+            }
         }
 
         @Override
         public boolean removeAll(Collection<?> c) {
-            LinkedList<V> bucket = data.get(key);
-            if (bucket == null) {
+            Object slot = data.get(key);
+            if (slot == null) {
                 return false;
+            } else if (!isBucket(slot)) {
+                return c.contains(slot) && removeSingle(key, slot) != null;
             } else {
+                LinkedList<V> bucket = bucket(slot);
                 boolean result = bucket.removeAll(c);
-                removeIfEmpty(key, bucket);
+                compact(key, bucket);
                 return result;
             }
         }
 
         @Override
         public boolean retainAll(Collection<?> c) {
-            LinkedList<V> bucket = data.get(key);
-            if (bucket == null) {
+            Object slot = data.get(key);
+            if (slot == null) {
                 return false;
+            } else if (!isBucket(slot)) {
+                return !c.contains(slot) && removeSingle(key, slot) != null;
             } else {
+                LinkedList<V> bucket = bucket(slot);
                 boolean result = bucket.retainAll(c);
-                removeIfEmpty(key, bucket);
+                compact(key, bucket);
                 return result;
             }
         }
@@ -445,12 +648,20 @@ public class LinkedDequeHashMap<K, V>
 
         @Override
         public V get(int index) {
-            return getBucketChecked().get(index);
+            return getValuesChecked().get(index);
         }
 
         @Override
         public V set(int index, V element) {
-            return getBucketChecked().set(index, element);
+            Object slot = getSlotChecked();
+            if (isBucket(slot)) {
+                return bucket(slot).set(index, element);
+            }
+            if (index != 0) {
+                throw new IndexOutOfBoundsException("Index: "+index+", Size: 1");
+            }
+            LinkedDequeHashMap.this.set(key, element);
+            return cast(slot);
         }
 
         @Override
@@ -458,31 +669,44 @@ public class LinkedDequeHashMap<K, V>
             if (index == 0) {
                 LinkedDequeHashMap.this.add(key, element);
             } else {
-                getBucketChecked().add(index, element);
+                getSlotChecked();
+                ensureBucketAt(key).add(index, element);
             }
             
         }
 
         @Override
         public V remove(int index) {
-            LinkedList<V> bucket = getBucketChecked();
+            Object slot = getSlotChecked();
+            if (!isBucket(slot)) {
+                if (index != 0) {
+                    throw new IndexOutOfBoundsException("Index: "+index+", Size: 1");
+                }
+                return removeSingle(key, slot);
+            }
+            LinkedList<V> bucket = bucket(slot);
             V result = bucket.remove(index);
-            removeIfEmpty(key, bucket);
+            compact(key, bucket);
             return result;
         }
         
         @SuppressWarnings("unchecked")
         @Override
         public ListIterator<V> listIterator(final int index) {
-            final LinkedList<V> bucket = data.get(key);
+            // a single value is iterated in place and it is inflated to a
+            // bucket only when it is modified through the iterator
+            final Object slot = data.get(key);
             
             return new ListIterator<V>() {
                 
                 {
-                    if (bucket != null) {
-                        origIt = bucket.listIterator(index);
+                    if (isBucket(slot)) {
+                        origIt = bucket(slot).listIterator(index);
 //                        weHaveBucket = true;
-                        currentBucket = bucket;
+                        currentBucket = bucket(slot);
+                    } else if (slot != null) {
+                        origIt = Collections.singletonList(LinkedDequeHashMap.this.<V>cast(slot)).listIterator(index);
+                        single = slot;
                     } else {
                         origIt = Collections.EMPTY_LIST.listIterator();
                     }
@@ -490,6 +714,8 @@ public class LinkedDequeHashMap<K, V>
                 
                 ListIterator<V> origIt;
                 LinkedList<V> currentBucket;
+                Object single;
+                int lastDirection;
 //                boolean weHaveBucket;
                 
                 @Override public boolean hasNext() {
@@ -497,7 +723,9 @@ public class LinkedDequeHashMap<K, V>
                 }
 
                 @Override public V next() {
-                    return origIt.next();
+                    V result = origIt.next();
+                    lastDirection = 1;
+                    return result;
                 }
 
                 @Override public boolean hasPrevious() {
@@ -505,7 +733,9 @@ public class LinkedDequeHashMap<K, V>
                 }
 
                 @Override public V previous() {
-                    return origIt.previous();
+                    V result = origIt.previous();
+                    lastDirection = -1;
+                    return result;
                 }
 
                 @Override public int nextIndex() {
@@ -517,21 +747,25 @@ public class LinkedDequeHashMap<K, V>
                 }
 
                 @Override public void remove() {
+                    inflateSingle();
                     ensureWeAreStilAtBucket();
                     origIt.remove();
-                    currentBucket = data.get(key);
-                    if (currentBucket != null) {
+                    lastDirection = 0;
+                    if (currentBucket == data.get(key)) {
                         removeIfEmpty(key, currentBucket);
                     }
                 }
 
                 @Override public void set(V e) {
+                    inflateSingle();
                     origIt.set(e);
                     
                 }
 
                 @Override
                 public void add(V e) {
+                    inflateSingle();
+                    lastDirection = 0;
                     if (currentBucket != null) {
                         ensureWeAreStilAtBucket();
                         origIt.add(e);
@@ -542,6 +776,31 @@ public class LinkedDequeHashMap<K, V>
                     }
                 }
                 
+                // replaces the iterated single value by a bucket and moves
+                // to the same position in it
+                void inflateSingle() throws IllegalStateException {
+                    if (single == null) {
+                        return;
+                    }
+                    if (single != data.get(key)) {
+                        throw new IllegalStateException(
+                            "The iterated list is not the deque of key: "+key
+                            +" anymore");
+                    }
+                    int cursor = origIt.nextIndex();
+                    currentBucket = ensureBucketAt(key);
+                    single = null;
+                    if (lastDirection > 0) {
+                        origIt = currentBucket.listIterator(cursor - 1);
+                        origIt.next();
+                    } else if (lastDirection < 0) {
+                        origIt = currentBucket.listIterator(cursor + 1);
+                        origIt.previous();
+                    } else {
+                        origIt = currentBucket.listIterator(cursor);
+                    }
+                }
+                
                 // throws an exception
                 void ensureWeAreStilAtBucket() throws IllegalStateException {
                     if (currentBucket != data.get(key)) {
@@ -553,13 +812,17 @@ public class LinkedDequeHashMap<K, V>
             };
         };
 
-        LinkedList<V> getBucketChecked() throws IndexOutOfBoundsException {
-            LinkedList<V> bucket = data.get(key);
-            if (bucket == null) {
+        Object getSlotChecked() throws IndexOutOfBoundsException {
+            Object slot = data.get(key);
+            if (slot == null) {
                 throw new IndexOutOfBoundsException("Key: "+key
                         +" does not curentlly exist in deque-map");
             }
-            return bucket;
+            return slot;
+        }
+        
+        List<V> getValuesChecked() throws IndexOutOfBoundsException {
+            return valuesOf(getSlotChecked());
         }
         
 
@@ -576,7 +839,7 @@ public class LinkedDequeHashMap<K, V>
         
         @Override
         public List<V> get(Object key) {
-            LinkedList<V> result = data.get(key);
+            List<V> result = valuesOf(data.get(key));
             return result == null ? null : Collections.unmodifiableList(result);
         }
         
@@ -585,21 +848,6 @@ public class LinkedDequeHashMap<K, V>
             return LinkedDequeHashMap.this.size();
         }
         
-        @Override
-        public boolean containsValue(Object value) {
-            return data.containsValue(value);
-        }
-        
-        @Override
-        public boolean equals(Object o) {
-            return data.equals(o);
-        }
-        
-        @Override
-        public int hashCode() {
-            return data.hashCode();
-        }
-        
         @Override
         public Set<K> keySet() {
             return Collections.unmodifiableSet(data.keySet());
@@ -607,13 +855,13 @@ public class LinkedDequeHashMap<K, V>
         
         @Override
         public Collection<List<V>> values() {
-            final Collection<LinkedList<V>> origValues = data.values();
+            final Collection<Object> origValues = data.values();
             
             return new AbstractCollection<List<V>>() {
 
                 @Override
                 public Iterator<List<V>> iterator() {
-                    final Iterator<LinkedList<V>> origIt = origValues.iterator();
+                    final Iterator<Object> origIt = origValues.iterator();
                     return new Iterator<List<V>>() {
 
                         @Override public boolean hasNext() {
@@ -621,7 +869,7 @@ public class LinkedDequeHashMap<K, V>
                         }
 
                         @Override public List<V> next() {
-                            return Collections.unmodifiableList(origIt.next());
+                            return Collections.unmodifiableList(valuesOf(origIt.next()));
                         }
 
                         @Override public void remove() {
@@ -642,7 +890,7 @@ public class LinkedDequeHashMap<K, V>
             return new AbstractSet<Map.Entry<K,List<V>>>() {
                 
                 @Override public Iterator<java.util.Map.Entry<K, List<V>>> iterator() {
-                    final Iterator<java.util.Map.Entry<K, LinkedList<V>>> origIt
+                    final Iterator<java.util.Map.Entry<K, Object>> origIt
                       = data.entrySet().iterator();
                     
                     return new Iterator<Map.Entry<K,List<V>>>() {
@@ -652,23 +900,11 @@ public class LinkedDequeHashMap<K, V>
                         }
 
                         @Override public java.util.Map.Entry<K, List<V>> next() {
-                            final java.util.Map.Entry<K, LinkedList<V>> origEntry
+                            final java.util.Map.Entry<K, Object> origEntry
                                  = origIt.next();
-                            return new Entry<K, List<V>>() {
-
-                                @Override public K getKey() {
-                                    return origEntry.getKey();
-                                }
-
-                                @Override public List<V> getValue() {
-                                    return Collections.unmodifiableList(origEntry.getValue());
-                                }
-
-                                @Override public List<V> setValue(List<V> value) {
-                                    throw new UnsupportedOperationException("Muttation not allowed.");
-                                }
-
-                            };
+                            // the entries must be comparable with those of other maps
+                            return new SimpleImmutableEntry<K, List<V>>(origEntry.getKey(),
+                                    Collections.unmodifiableList(valuesOf(origEntry.getValue())));
                         }
                         
                         @Override public void remove() {
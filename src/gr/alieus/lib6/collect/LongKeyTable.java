@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table of {@code long} keys, each with a deque kept
+ * as a circular array: the array, the position of its first value and the
+ * number of its values. The arrays are {@code long[]} or {@code Object[]},
+ * depending on the user of the table.
+ * <p/>
+ * A slot is empty when its count is zero, so a key is removed by freeing
+ * its slot as soon as its deque gets empty. Probing is linear and removal
+ * moves back the entries that follow, so there are no tombstones.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+final class LongKeyTable {
+
+    /** The capacity of a new deque; always a power of two. */
+    static final int INITIAL_RING_CAPACITY = 4;
+
+    long[] keys;
+    int[] counts;
+    int[] heads;
+    Object[] rings;
+    int size;
+    private int threshold;
+
+    LongKeyTable(int expectedKeys) {
+        if (expectedKeys < 0) {
+            throw new IllegalArgumentException("Illegal number of keys: "+expectedKeys);
+        }
+        int capacity = 4;
+        while (capacity * 3 / 4 < expectedKeys) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Probes the table for the given key.
+     * 
+     * @return the slot of the key, or {@code ~slot} of the empty slot where
+     * the key would be inserted
+     */
+    int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (counts[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    /**
+     * Puts the given key in the given empty slot with an empty deque.
+     * The caller must add a value before probing again and then call
+     * {@link #growIfNeeded}.
+     */
+    int insert(int i, long key) {
+        keys[i] = key;
+        heads[i] = 0;
+        size++;
+        return i;
+    }
+
+    /**
+     * Empties the given slot, moving back the following entries that
+     * would not be found otherwise.
+     */
+    void free(int i) {
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (counts[j] == 0) {
+                break;
+            }
+            int home = hash(keys[j]) & mask;
+            // the entry at j may move to i if i is between its home and j
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                counts[i] = counts[j];
+                heads[i] = heads[j];
+                rings[i] = rings[j];
+                i = j;
+            }
+        }
+        counts[i] = 0;
+        rings[i] = null;
+        size--;
+    }
+
+    void growIfNeeded() {
+        if (size <= threshold) {
+            return;
+        }
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int[] oldHeads = heads;
+        Object[] oldRings = rings;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldCounts[j] != 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while (counts[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+                heads[i] = oldHeads[j];
+                rings[i] = oldRings[j];
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(rings, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the first slot with a key at or after the given one.
+     * 
+     * @return the slot or the length of the table if there is none
+     */
+    int nextSlot(int i) {
+        while (i < keys.length && counts[i] == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position in its array of the value at the given index
+     * of the deque at the given slot.
+     */
+    int position(int i, int index, int ringLength) {
+        return (heads[i] + index) & (ringLength - 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        heads = new int[capacity];
+        rings = new Object[capacity];
+        threshold = capacity * 3 / 4;
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
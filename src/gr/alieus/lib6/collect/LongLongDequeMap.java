@@ -0,0 +1,475 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Deque-map from {@code long} keys to {@code long} values.
+ * <p/>
+ * It offers the operations of {@link DequeMap} on primitives: keys are
+ * kept in an open addressing table and the values of each key in a
+ * circular {@code long[]}, so a value takes 8 bytes instead of a boxed
+ * value and a list node. Adding, popping and reading values allocate
+ * nothing, except when a deque or the table grows. Values are read in bulk
+ * into arrays or one by one with a reusable {@link ValueCursor}; keys are
+ * visited with a {@link KeyCursor}.
+ * <p/>
+ * As in every deque-map, a key exists only while it has values. Since there
+ * is no {@code null} to return, the methods that read a value of a key that
+ * does not exist throw a {@code NoSuchElementException}.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class LongLongDequeMap {
+
+    /**
+     * Reusable cursor over the values of a key, first to last.
+     * The cursor must not be used after the values of its key change.
+     */
+    public final class ValueCursor {
+        private long[] ring;
+        private int position;
+        private int remaining;
+
+        ValueCursor() {
+        }
+
+        /**
+         * Moves this cursor before the first value of the given key.
+         * 
+         * @param key the key to visit its values
+         * @return this cursor
+         */
+        public ValueCursor reset(long key) {
+            int i = table.indexOf(key);
+            if (i < 0) {
+                ring = null;
+                remaining = 0;
+            } else {
+                ring = (long[]) table.rings[i];
+                position = table.heads[i] - 1;
+                remaining = table.counts[i];
+            }
+            return this;
+        }
+
+        /**
+         * Moves to the next value.
+         * 
+         * @return {@code false} if there are no more values
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            position = (position + 1) & (ring.length - 1);
+            return true;
+        }
+
+        /**
+         * Returns the value this cursor is at.
+         * 
+         * @return the current value
+         */
+        public long value() {
+            return ring[position];
+        }
+    }
+
+    /**
+     * Reusable cursor over the keys of the deque-map, in no particular order.
+     * The cursor must not be used after keys are added or removed.
+     */
+    public final class KeyCursor {
+        private int slot = -1;
+
+        KeyCursor() {
+        }
+
+        /**
+         * Moves this cursor before the first key.
+         * 
+         * @return this cursor
+         */
+        public KeyCursor reset() {
+            slot = -1;
+            return this;
+        }
+
+        /**
+         * Moves to the next key.
+         * 
+         * @return {@code false} if there are no more keys
+         */
+        public boolean next() {
+            slot = table.nextSlot(slot + 1);
+            return slot < table.keys.length;
+        }
+
+        /**
+         * Returns the key this cursor is at.
+         * 
+         * @return the current key
+         */
+        public long key() {
+            return table.keys[slot];
+        }
+
+        /**
+         * Returns the number of values of the key this cursor is at.
+         * 
+         * @return the number of values of the current key
+         */
+        public int count() {
+            return table.counts[slot];
+        }
+    }
+
+    private final LongKeyTable table;
+
+    /**
+     * Creates a new empty deque-map.
+     */
+    public LongLongDequeMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty deque-map with room for the given number of keys.
+     * 
+     * @param expectedKeys the number of keys to hold without growing
+     * @throws IllegalArgumentException if {@code expectedKeys} is negative
+     */
+    public LongLongDequeMap(int expectedKeys) {
+        table = new LongKeyTable(expectedKeys);
+    }
+
+    /**
+     * Returns the first value of the given key.
+     * 
+     * @param key the key to obtain its first value
+     * @return the first value of {@code key}
+     * @throws NoSuchElementException if the key does not exist
+     */
+    public long get(long key) {
+        int i = indexOfExisting(key);
+        return ((long[]) table.rings[i])[table.heads[i]];
+    }
+
+    /**
+     * Returns the last value of the given key.
+     * 
+     * @param key the key to obtain its last value
+     * @return the last value of {@code key}
+     * @throws NoSuchElementException if the key does not exist
+     */
+    public long getLast(long key) {
+        int i = indexOfExisting(key);
+        long[] ring = (long[]) table.rings[i];
+        return ring[table.position(i, table.counts[i] - 1, ring.length)];
+    }
+
+    /**
+     * Returns the value at the given position of the values of the given key.
+     * 
+     * @param key the key
+     * @param index the position of the value
+     * @return the value at {@code index}
+     * @throws IndexOutOfBoundsException if the key has no value at
+     * {@code index}
+     */
+    public long get(long key, int index) {
+        int i = table.indexOf(key);
+        int count = i < 0 ? 0 : table.counts[i];
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key+", Size: "+count);
+        }
+        long[] ring = (long[]) table.rings[i];
+        return ring[table.position(i, index, ring.length)];
+    }
+
+    /**
+     * Sets the value of the given key, removing any others.
+     * 
+     * @param key the key to set its value
+     * @param value the value to set for key
+     */
+    public void set(long key, long value) {
+        int i = table.indexOf(key);
+        if (i < 0) {
+            addLast(key, value);
+        } else {
+            // a slot with no values is empty, so the count never drops to 0
+            ((long[]) table.rings[i])[0] = value;
+            table.heads[i] = 0;
+            table.counts[i] = 1;
+        }
+    }
+
+    /**
+     * Returns and removes the first value of the given key.
+     * 
+     * @param key the key to pop its first value
+     * @return the first value of {@code key}
+     * @throws NoSuchElementException if the key does not exist
+     */
+    public long pop(long key) {
+        int i = indexOfExisting(key);
+        long[] ring = (long[]) table.rings[i];
+        long value = ring[table.heads[i]];
+        table.heads[i] = (table.heads[i] + 1) & (ring.length - 1);
+        if (--table.counts[i] == 0) {
+            table.free(i);
+        }
+        return value;
+    }
+
+    /**
+     * Returns and removes the last value of the given key.
+     * 
+     * @param key the key to pop its last value
+     * @return the last value of {@code key}
+     * @throws NoSuchElementException if the key does not exist
+     */
+    public long popLast(long key) {
+        int i = indexOfExisting(key);
+        long[] ring = (long[]) table.rings[i];
+        long value = ring[table.position(i, table.counts[i] - 1, ring.length)];
+        if (--table.counts[i] == 0) {
+            table.free(i);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the N first values of the given key and puts them in the
+     * given array. If the key has less than N values, all of them are removed.
+     * 
+     * @param key the key to pop its N first values
+     * @param destination the array to put the values in
+     * @param offset the position of the first value in {@code destination}
+     * @param n the number of values to pop
+     * @return the number of values popped
+     */
+    public int popN(long key, long[] destination, int offset, int n) {
+        int i = table.indexOf(key);
+        if (i < 0 || n <= 0) {
+            return 0;
+        }
+        long[] ring = (long[]) table.rings[i];
+        n = Math.min(n, table.counts[i]);
+        int head = table.heads[i];
+        for (int j = 0; j < n; j++) {
+            destination[offset + j] = ring[head];
+            head = (head + 1) & (ring.length - 1);
+        }
+        table.heads[i] = head;
+        if ((table.counts[i] -= n) == 0) {
+            table.free(i);
+        }
+        return n;
+    }
+
+    /**
+     * Removes the N last values of the given key and puts them in the
+     * given array in reverse order. If the key has less than N values,
+     * all of them are removed.
+     * 
+     * @param key the key to pop its N last values
+     * @param destination the array to put the values in
+     * @param offset the position of the last value in {@code destination}
+     * @param n the number of values to pop
+     * @return the number of values popped
+     */
+    public int popNLast(long key, long[] destination, int offset, int n) {
+        int i = table.indexOf(key);
+        if (i < 0 || n <= 0) {
+            return 0;
+        }
+        long[] ring = (long[]) table.rings[i];
+        n = Math.min(n, table.counts[i]);
+        int count = table.counts[i];
+        for (int j = 0; j < n; j++) {
+            destination[offset + j] = ring[table.position(i, --count, ring.length)];
+        }
+        if ((table.counts[i] = count) == 0) {
+            table.free(i);
+        }
+        return n;
+    }
+
+    /**
+     * Adds the given value as the <strong>first</strong> value of {@code key}.
+     * 
+     * @param key the key to which the value will be added
+     * @param value the value to add
+     */
+    public void add(long key, long value) {
+        int i = slotFor(key);
+        long[] ring = room(i, 1);
+        table.heads[i] = (table.heads[i] - 1) & (ring.length - 1);
+        ring[table.heads[i]] = value;
+        table.counts[i]++;
+        table.growIfNeeded();
+    }
+
+    /**
+     * Adds the given value as the last value of {@code key}.
+     * 
+     * @param key the key to which the value will be added
+     * @param value the value to add
+     */
+    public void addLast(long key, long value) {
+        int i = slotFor(key);
+        long[] ring = room(i, 1);
+        ring[table.position(i, table.counts[i], ring.length)] = value;
+        table.counts[i]++;
+        table.growIfNeeded();
+    }
+
+    /**
+     * Adds the given values as the last values of {@code key}, in order.
+     * 
+     * @param key the key to which the values will be added
+     * @param values the array of the values
+     * @param offset the position of the first value in {@code values}
+     * @param length the number of values to add
+     */
+    public void addAllLast(long key, long[] values, int offset, int length) {
+        if (length <= 0) return;
+        int i = slotFor(key);
+        long[] ring = room(i, length);
+        for (int j = 0; j < length; j++) {
+            ring[table.position(i, table.counts[i] + j, ring.length)] = values[offset + j];
+        }
+        table.counts[i] += length;
+        table.growIfNeeded();
+    }
+
+    /**
+     * Returns the number of values of the given key.
+     * 
+     * @param key the key
+     * @return the number of values of {@code key}
+     */
+    public int countOf(long key) {
+        int i = table.indexOf(key);
+        return i < 0 ? 0 : table.counts[i];
+    }
+
+    /**
+     * Returns {@code true} if the given key has values.
+     * 
+     * @param key the key to check for existence
+     * @return {@code true} if the given key exists
+     */
+    public boolean containsKey(long key) {
+        return table.indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the number of keys.
+     * 
+     * @return the number of keys
+     */
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * Removes all values of the given key.
+     * 
+     * @param key the key to remove its values
+     */
+    public void clearKey(long key) {
+        int i = table.indexOf(key);
+        if (i >= 0) {
+            table.free(i);
+        }
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Returns a new cursor over the values of the given key.
+     * 
+     * @param key the key
+     * @return a cursor before the first value of {@code key}
+     */
+    public ValueCursor values(long key) {
+        return new ValueCursor().reset(key);
+    }
+
+    /**
+     * Returns a new cursor over the keys.
+     * 
+     * @return a cursor before the first key
+     */
+    public KeyCursor keys() {
+        return new KeyCursor();
+    }
+
+// private methods
+
+    private int indexOfExisting(long key) {
+        int i = table.indexOf(key);
+        if (i < 0) {
+            throw new NoSuchElementException("Key: "+key+" does not exist.");
+        }
+        return i;
+    }
+
+    /** Returns the slot of the given key, taking an empty one if needed. */
+    private int slotFor(long key) {
+        int i = table.indexOf(key);
+        return i >= 0 ? i : table.insert(~i, key);
+    }
+
+    /**
+     * Returns the array of the deque at the given slot, grown if needed
+     * so that it can take the given number of values more.
+     */
+    private long[] room(int i, int extra) {
+        long[] ring = (long[]) table.rings[i];
+        int count = table.counts[i];
+        if (ring != null && count + extra <= ring.length) {
+            return ring;
+        }
+        int capacity = ring == null ? LongKeyTable.INITIAL_RING_CAPACITY : ring.length;
+        while (capacity < count + extra) {
+            capacity <<= 1;
+        }
+        long[] grown = new long[capacity];
+        for (int j = 0; j < count; j++) {
+            grown[j] = ring[table.position(i, j, ring.length)];
+        }
+        table.rings[i] = grown;
+        table.heads[i] = 0;
+        return grown;
+    }
+}
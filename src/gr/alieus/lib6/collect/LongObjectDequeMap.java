@@ -0,0 +1,520 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.*;
+
+/**
+ * Implementation of {@code DequeMap} with {@code long} keys.
+ * <p/>
+ * Keys are kept unboxed in an open addressing table and the values of each
+ * key in a circular array, so there is neither a boxed key nor a list node
+ * per value. Besides the {@code DequeMap} methods, which take boxed keys,
+ * there are overloads of the frequent ones that take primitive keys and
+ * allocate nothing, except when a deque or the table grows. Values and keys
+ * can also be visited with reusable cursors, without iterators or boxing.
+ * The lists returned by {@link #getAll} are {@link RandomAccess}.
+ * <p/>
+ * Keys may not be {@code null}.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @see LongLongDequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <V> the type of the values
+ */
+public class LongObjectDequeMap<V> extends AbstractDequeMap<Long, V> {
+
+    /**
+     * Reusable cursor over the values of a key, first to last.
+     * The cursor must not be used after the values of its key change.
+     */
+    public final class ValueCursor {
+        private Object[] ring;
+        private int position;
+        private int remaining;
+
+        ValueCursor() {
+        }
+
+        /**
+         * Moves this cursor before the first value of the given key.
+         * 
+         * @param key the key to visit its values
+         * @return this cursor
+         */
+        public ValueCursor reset(long key) {
+            int i = table.indexOf(key);
+            if (i < 0) {
+                ring = null;
+                remaining = 0;
+            } else {
+                ring = (Object[]) table.rings[i];
+                position = table.heads[i] - 1;
+                remaining = table.counts[i];
+            }
+            return this;
+        }
+
+        /**
+         * Moves to the next value.
+         * 
+         * @return {@code false} if there are no more values
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            position = (position + 1) & (ring.length - 1);
+            return true;
+        }
+
+        /**
+         * Returns the value this cursor is at.
+         * 
+         * @return the current value
+         */
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) ring[position];
+        }
+    }
+
+    /**
+     * Reusable cursor over the keys of the deque-map, in no particular order.
+     * The cursor must not be used after keys are added or removed.
+     */
+    public final class KeyCursor {
+        private int slot = -1;
+
+        KeyCursor() {
+        }
+
+        /**
+         * Moves this cursor before the first key.
+         * 
+         * @return this cursor
+         */
+        public KeyCursor reset() {
+            slot = -1;
+            return this;
+        }
+
+        /**
+         * Moves to the next key.
+         * 
+         * @return {@code false} if there are no more keys
+         */
+        public boolean next() {
+            slot = table.nextSlot(slot + 1);
+            return slot < table.keys.length;
+        }
+
+        /**
+         * Returns the key this cursor is at.
+         * 
+         * @return the current key
+         */
+        public long key() {
+            return table.keys[slot];
+        }
+
+        /**
+         * Returns the number of values of the key this cursor is at.
+         * 
+         * @return the number of values of the current key
+         */
+        public int count() {
+            return table.counts[slot];
+        }
+    }
+
+    private final LongKeyTable table;
+
+    /**
+     * Creates a new empty deque-map.
+     */
+    public LongObjectDequeMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty deque-map with room for the given number of keys.
+     * 
+     * @param expectedKeys the number of keys to hold without growing
+     * @throws IllegalArgumentException if {@code expectedKeys} is negative
+     */
+    public LongObjectDequeMap(int expectedKeys) {
+        table = new LongKeyTable(expectedKeys);
+    }
+
+// primitive keys
+
+    /**
+     * Like {@link #get(Long)}, without boxing the key.
+     * 
+     * @param key the key to obtain its first value
+     * @return the first value of {@code key} or {@code null}
+     */
+    public V get(long key) {
+        int i = table.indexOf(key);
+        return i < 0 ? null : this.<V>cast(((Object[]) table.rings[i])[table.heads[i]]);
+    }
+
+    /**
+     * Like {@link #getLast(Long)}, without boxing the key.
+     * 
+     * @param key the key to obtain its last value
+     * @return the last value of {@code key} or {@code null}
+     */
+    public V getLast(long key) {
+        int i = table.indexOf(key);
+        return i < 0 ? null : this.<V>cast(valueAt(i, table.counts[i] - 1));
+    }
+
+    /**
+     * Like {@link #set(Long, Object)}, without boxing the key.
+     * 
+     * @param key the key to set its value
+     * @param value the value to set for key
+     */
+    public void set(long key, V value) {
+        int i = table.indexOf(key);
+        if (i < 0) {
+            addLast(key, value);
+        } else {
+            // a slot with no values is empty, so the count never drops to 0
+            Object[] ring = (Object[]) table.rings[i];
+            Arrays.fill(ring, null);
+            ring[0] = value;
+            table.heads[i] = 0;
+            table.counts[i] = 1;
+        }
+    }
+
+    /**
+     * Like {@link #pop(Long)}, without boxing the key.
+     * 
+     * @param key the key to pop its first value
+     * @return the first value of {@code key} or {@code null}
+     */
+    public V pop(long key) {
+        int i = table.indexOf(key);
+        return i < 0 ? null : this.<V>cast(remove(i, 0));
+    }
+
+    /**
+     * Like {@link #popLast(Long)}, without boxing the key.
+     * 
+     * @param key the key to pop its last value
+     * @return the last value of {@code key} or {@code null}
+     */
+    public V popLast(long key) {
+        int i = table.indexOf(key);
+        return i < 0 ? null : this.<V>cast(remove(i, table.counts[i] - 1));
+    }
+
+    /**
+     * Like {@link #add(Long, Object)}, without boxing the key.
+     * 
+     * @param key the key to which the value will be added
+     * @param value the value to add
+     */
+    public void add(long key, V value) {
+        insert(slotFor(key), 0, value);
+    }
+
+    /**
+     * Like {@link #addLast(Long, Object)}, without boxing the key.
+     * 
+     * @param key the key to which the value will be added
+     * @param value the value to add
+     */
+    public void addLast(long key, V value) {
+        int i = slotFor(key);
+        insert(i, table.counts[i], value);
+    }
+
+    /**
+     * Like {@link #countOf(Long)}, without boxing the key.
+     * 
+     * @param key the key
+     * @return the number of values of {@code key}
+     */
+    public int countOf(long key) {
+        int i = table.indexOf(key);
+        return i < 0 ? 0 : table.counts[i];
+    }
+
+    /**
+     * Like {@link #containsKey(Long)}, without boxing the key.
+     * 
+     * @param key the key to check for existence
+     * @return {@code true} if the given key exists
+     */
+    public boolean containsKey(long key) {
+        return table.indexOf(key) >= 0;
+    }
+
+    /**
+     * Like {@link #clearKey(Long)}, without boxing the key.
+     * 
+     * @param key the key to remove its values
+     */
+    public void clearKey(long key) {
+        int i = table.indexOf(key);
+        if (i >= 0) {
+            table.free(i);
+        }
+    }
+
+    /**
+     * Returns a new cursor over the values of the given key.
+     * 
+     * @param key the key
+     * @return a cursor before the first value of {@code key}
+     */
+    public ValueCursor values(long key) {
+        return new ValueCursor().reset(key);
+    }
+
+    /**
+     * Returns a new cursor over the keys.
+     * 
+     * @return a cursor before the first key
+     */
+    public KeyCursor keys() {
+        return new KeyCursor();
+    }
+
+// DequeMap
+
+    @Override
+    public V get(Long key) {
+        return get(key.longValue());
+    }
+
+    @Override
+    public void set(Long key, V value) {
+        set(key.longValue(), value);
+    }
+
+    @Override
+    public V getLast(Long key) {
+        return getLast(key.longValue());
+    }
+
+    @Override
+    public V pop(Long key) {
+        return pop(key.longValue());
+    }
+
+    @Override
+    public V popLast(Long key) {
+        return popLast(key.longValue());
+    }
+
+    @Override
+    public void add(Long key, V value) {
+        add(key.longValue(), value);
+    }
+
+    @Override
+    public void addLast(Long key, V value) {
+        addLast(key.longValue(), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The returned list is {@link RandomAccess}.
+     */
+    @Override
+    public List<V> getAll(Long key) {
+        return new RandomAccessKeyView(key);
+    }
+
+    @Override
+    public int countOf(Long key) {
+        return countOf(key.longValue());
+    }
+
+    @Override
+    public boolean containsKey(Long key) {
+        return containsKey(key.longValue());
+    }
+
+    @Override
+    public int size() {
+        return table.size;
+    }
+
+    @Override
+    public void clearKey(Long key) {
+        clearKey(key.longValue());
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(Long key, int index) {
+        return cast(valueAt(table.indexOf(key), index));
+    }
+
+    @Override
+    protected V setValueAt(Long key, int index, V value) {
+        int i = table.indexOf(key);
+        Object[] ring = (Object[]) table.rings[i];
+        int position = table.position(i, index, ring.length);
+        V old = cast(ring[position]);
+        ring[position] = value;
+        return old;
+    }
+
+    @Override
+    protected void insertAt(Long key, int index, V value) {
+        insert(slotFor(key), index, value);
+    }
+
+    @Override
+    protected V removeAt(Long key, int index) {
+        return cast(remove(table.indexOf(key), index));
+    }
+
+    @Override
+    protected Iterator<Long> keyIterator() {
+        return new Iterator<Long>() {
+            private int slot = table.nextSlot(0);
+
+            @Override public boolean hasNext() {
+                return slot < table.keys.length;
+            }
+
+            @Override public Long next() {
+                if (slot >= table.keys.length) {
+                    throw new NoSuchElementException();
+                }
+                long key = table.keys[slot];
+                slot = table.nextSlot(slot + 1);
+                return key;
+            }
+
+            @Override public void remove() {
+                throw new UnsupportedOperationException("Removal not allowed.");
+            }
+        };
+    }
+
+// private methods
+
+    /** Returns the slot of the given key, taking an empty one if needed. */
+    private int slotFor(long key) {
+        int i = table.indexOf(key);
+        return i >= 0 ? i : table.insert(~i, key);
+    }
+
+    private Object valueAt(int i, int index) {
+        Object[] ring = (Object[]) table.rings[i];
+        return ring[table.position(i, index, ring.length)];
+    }
+
+    /**
+     * Inserts a value in the deque at the given slot, moving the values
+     * of the shorter side.
+     */
+    private void insert(int i, int index, Object value) {
+        Object[] ring = room(i);
+        int mask = ring.length - 1;
+        int count = table.counts[i];
+        if (index < count / 2 || index == 0) {
+            // move the front part one position to the left
+            int head = (table.heads[i] - 1) & mask;
+            table.heads[i] = head;
+            for (int j = 0; j < index; j++) {
+                ring[(head + j) & mask] = ring[(head + j + 1) & mask];
+            }
+        } else {
+            int head = table.heads[i];
+            for (int j = count; j > index; j--) {
+                ring[(head + j) & mask] = ring[(head + j - 1) & mask];
+            }
+        }
+        ring[(table.heads[i] + index) & mask] = value;
+        table.counts[i]++;
+        table.growIfNeeded();
+    }
+
+    /**
+     * Removes a value from the deque at the given slot, moving the values
+     * of the shorter side, and frees the slot if the deque gets empty.
+     */
+    private Object remove(int i, int index) {
+        Object[] ring = (Object[]) table.rings[i];
+        int mask = ring.length - 1;
+        int head = table.heads[i];
+        int count = table.counts[i];
+        Object value = ring[(head + index) & mask];
+        if (index < count / 2) {
+            for (int j = index; j > 0; j--) {
+                ring[(head + j) & mask] = ring[(head + j - 1) & mask];
+            }
+            ring[head] = null;
+            table.heads[i] = (head + 1) & mask;
+        } else {
+            for (int j = index; j < count - 1; j++) {
+                ring[(head + j) & mask] = ring[(head + j + 1) & mask];
+            }
+            ring[(head + count - 1) & mask] = null;
+        }
+        if (--table.counts[i] == 0) {
+            table.free(i);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the array of the deque at the given slot, grown if needed
+     * so that it can take one value more.
+     */
+    private Object[] room(int i) {
+        Object[] ring = (Object[]) table.rings[i];
+        int count = table.counts[i];
+        if (ring != null && count < ring.length) {
+            return ring;
+        }
+        Object[] grown = new Object[ring == null ? LongKeyTable.INITIAL_RING_CAPACITY : ring.length * 2];
+        for (int j = 0; j < count; j++) {
+            grown[j] = ring[table.position(i, j, ring.length)];
+        }
+        table.rings[i] = grown;
+        table.heads[i] = 0;
+        return grown;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T) value;
+    }
+}
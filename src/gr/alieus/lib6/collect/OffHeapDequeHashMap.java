@@ -0,0 +1,534 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import gr.alieus.lib6.io.BinaryCodec;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Implementation of {@code DequeMap} that keeps the values outside the heap.
+ * <p/>
+ * Values are converted to their binary form by a {@link BinaryCodec} and
+ * stored as records in direct {@code ByteBuffer}s, so the garbage collector
+ * sees a few large buffers instead of an object per value. Only the keys
+ * and a small descriptor per key stay on the heap.
+ * <p/>
+ * The buffers are allocated in slabs of fixed size chunks. The values of
+ * a key take a doubly linked list of chunks: values added last are written
+ * at the end of the last chunk and values added first before the start of
+ * the first chunk, taking a new chunk when there is no room. Each record is
+ * its length, the binary form and the length again, so it can be read from
+ * either end. Chunks emptied by pops are kept in a free list and reused;
+ * slabs are never given back until the deque-map itself is collected.
+ * <p/>
+ * Values are decoded on every read, so reading returns a new object each
+ * time. The binary form of a value, plus 8 bytes, must fit in a chunk.
+ * Adding and removing values is supported at both ends only: the lists
+ * returned by {@link #getAll} throw {@code UnsupportedOperationException}
+ * for insertions and removals in the middle and for {@code set}.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class OffHeapDequeHashMap<K, V> extends AbstractDequeMap<K, V> {
+
+    /**
+     * The chunks and number of values of a key.
+     */
+    static final class KeyDeque {
+        int head;
+        int tail;
+        int count;
+    }
+
+    static final int DEFAULT_CHUNK_SIZE = 4096;
+    static final int DEFAULT_CHUNKS_PER_SLAB = 256;
+
+    /** The bytes of a record besides the binary form: two lengths. */
+    static final int RECORD_OVERHEAD = 8;
+
+    private final BinaryCodec<V> codec;
+    private final int chunkSize;
+    private final int chunksPerSlab;
+
+    /** A buffer per slab, used for the positioned reads and writes of the codec. */
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+    /** The chunks of all the keys, linked per key; -1 ends a list. */
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+
+    /** The offsets of the first and after the last used byte of every chunk. */
+    private int[] start = new int[0];
+    private int[] end = new int[0];
+    private int chunkCount;
+
+    private int[] freeChunks = new int[16];
+    private int freeCount;
+
+    private final Map<K, KeyDeque> data = new HashMap<K, KeyDeque>();
+
+    /**
+     * Creates a new empty deque-map with chunks of 4KB in slabs of 1MB.
+     * 
+     * @param codec converts the values to and from binary form
+     */
+    public OffHeapDequeHashMap(BinaryCodec<V> codec) {
+        this(codec, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_PER_SLAB);
+    }
+
+    /**
+     * Creates a new empty deque-map.
+     * 
+     * @param codec converts the values to and from binary form
+     * @param chunkSize the size of a chunk in bytes; every key with values
+     * takes at least one chunk
+     * @param chunksPerSlab the number of chunks allocated at once
+     * @throws IllegalArgumentException if the chunk size is less than 16
+     * bytes or the slab size is not positive or exceeds 2GB
+     */
+    public OffHeapDequeHashMap(BinaryCodec<V> codec, int chunkSize, int chunksPerSlab) {
+        if (chunkSize < 16) {
+            throw new IllegalArgumentException("Illegal chunk size: "+chunkSize);
+        }
+        if (chunksPerSlab <= 0 || (long) chunkSize * chunksPerSlab > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal number of chunks per slab: "+chunksPerSlab);
+        }
+        this.codec = codec;
+        this.chunkSize = chunkSize;
+        this.chunksPerSlab = chunksPerSlab;
+    }
+
+    /**
+     * Returns the number of bytes allocated outside the heap.
+     * 
+     * @return the total size of the slabs
+     */
+    public long getAllocatedBytes() {
+        return (long) slabs.size() * chunksPerSlab * chunkSize;
+    }
+
+    /**
+     * Returns the number of chunks in use by keys.
+     * 
+     * @return the number of used chunks
+     */
+    public int getNumberOfUsedChunks() {
+        return chunkCount - freeCount;
+    }
+
+    @Override
+    public V get(K key) {
+        KeyDeque deque = data.get(key);
+        return deque == null ? null : readAt(deque.head, start[deque.head]);
+    }
+
+    @Override
+    public V getLast(K key) {
+        KeyDeque deque = data.get(key);
+        return deque == null ? null : readBefore(deque.tail, end[deque.tail]);
+    }
+
+    @Override
+    public V pop(K key) {
+        KeyDeque deque = data.get(key);
+        return deque == null ? null : removeFirst(key, deque);
+    }
+
+    @Override
+    public V popLast(K key) {
+        KeyDeque deque = data.get(key);
+        return deque == null ? null : removeLast(key, deque);
+    }
+
+    @Override
+    public void add(K key, V value) {
+        int size = sizeOf(value);
+        int need = size + RECORD_OVERHEAD;
+        KeyDeque deque = data.get(key);
+        // the deque changes only after the value is written
+        if (deque != null && start[deque.head] >= need) {
+            int chunk = deque.head;
+            write(chunk, start[chunk] - need, value, size);
+            start[chunk] -= need;
+        } else {
+            int chunk = allocateChunk(chunkSize);
+            writeToNewChunk(chunk, chunkSize - need, value, size);
+            start[chunk] -= need;
+            if (deque == null) {
+                deque = newDeque(key, chunk);
+            } else {
+                next[chunk] = deque.head;
+                previous[deque.head] = chunk;
+                deque.head = chunk;
+            }
+        }
+        deque.count++;
+    }
+
+    @Override
+    public void addLast(K key, V value) {
+        int size = sizeOf(value);
+        int need = size + RECORD_OVERHEAD;
+        KeyDeque deque = data.get(key);
+        if (deque != null && chunkSize - end[deque.tail] >= need) {
+            int chunk = deque.tail;
+            write(chunk, end[chunk], value, size);
+            end[chunk] += need;
+        } else {
+            int chunk = allocateChunk(0);
+            writeToNewChunk(chunk, 0, value, size);
+            end[chunk] += need;
+            if (deque == null) {
+                deque = newDeque(key, chunk);
+            } else {
+                previous[chunk] = deque.tail;
+                next[deque.tail] = chunk;
+                deque.tail = chunk;
+            }
+        }
+        deque.count++;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The returned list supports additions and removals only at its ends,
+     * and its iterators read the values in a single pass.
+     */
+    @Override
+    public List<V> getAll(K key) {
+        return new OffHeapKeyView(key);
+    }
+
+    @Override
+    public int countOf(K key) {
+        KeyDeque deque = data.get(key);
+        return deque == null ? 0 : deque.count;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void clearKey(K key) {
+        KeyDeque deque = data.remove(key);
+        if (deque != null) {
+            for (int chunk = deque.head; chunk != -1; chunk = next[chunk]) {
+                releaseChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The slabs are kept for the values added next.
+     */
+    @Override
+    public void clear() {
+        data.clear();
+        chunkCount = 0;
+        freeCount = 0;
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(K key, int index) {
+        Cursor cursor = new Cursor(data.get(key));
+        for (int i = 0; i < index; i++) {
+            cursor.skip();
+        }
+        return cursor.read();
+    }
+
+    /**
+     * Not supported: values are not replaced in place.
+     */
+    @Override
+    protected V setValueAt(K key, int index, V value) {
+        throw new UnsupportedOperationException("Values can only be added or removed at the ends.");
+    }
+
+    /**
+     * Supported only at the ends of the deque.
+     */
+    @Override
+    protected void insertAt(K key, int index, V value) {
+        if (index == countOf(key)) {
+            addLast(key, value);
+        } else if (index == 0) {
+            add(key, value);
+        } else {
+            throw new UnsupportedOperationException("Values can only be added or removed at the ends.");
+        }
+    }
+
+    /**
+     * Supported only at the ends of the deque.
+     */
+    @Override
+    protected V removeAt(K key, int index) {
+        KeyDeque deque = data.get(key);
+        if (index == 0) {
+            return removeFirst(key, deque);
+        } else if (index == deque.count - 1) {
+            return removeLast(key, deque);
+        }
+        throw new UnsupportedOperationException("Values can only be added or removed at the ends.");
+    }
+
+    @Override
+    protected Iterator<K> keyIterator() {
+        return Collections.unmodifiableSet(data.keySet()).iterator();
+    }
+
+// views
+
+    class OffHeapKeyView extends KeyView {
+
+        OffHeapKeyView(K key) {
+            super(key);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            final KeyDeque deque = data.get(key);
+            return new Iterator<V>() {
+                private final Cursor cursor = deque == null ? null : new Cursor(deque);
+                private int remaining = deque == null ? 0 : deque.count;
+
+                @Override public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                @Override public V next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    if (data.get(key) != deque || deque.count < remaining) {
+                        throw new ConcurrentModificationException();
+                    }
+                    remaining--;
+                    V value = cursor.read();
+                    if (remaining > 0) {
+                        cursor.skip();
+                    }
+                    return value;
+                }
+
+                @Override public void remove() {
+                    throw new UnsupportedOperationException("Removal not allowed.");
+                }
+            };
+        }
+    }
+
+    /**
+     * Walks the records of a key from the first to the last.
+     */
+    final class Cursor {
+        int chunk;
+        int offset;
+
+        Cursor(KeyDeque deque) {
+            chunk = deque.head;
+            offset = start[chunk];
+        }
+
+        V read() {
+            return readAt(chunk, offset);
+        }
+
+        void skip() {
+            offset += slab(chunk).getInt(base(chunk) + offset) + RECORD_OVERHEAD;
+            if (offset == end[chunk]) {
+                chunk = next[chunk];
+                offset = start[chunk];
+            }
+        }
+    }
+
+// private methods
+
+    private KeyDeque newDeque(K key, int chunk) {
+        KeyDeque deque = new KeyDeque();
+        deque.head = chunk;
+        deque.tail = chunk;
+        data.put(key, deque);
+        return deque;
+    }
+
+    private V removeFirst(K key, KeyDeque deque) {
+        int chunk = deque.head;
+        int size = slab(chunk).getInt(base(chunk) + start[chunk]);
+        V value = readAt(chunk, start[chunk]);
+        start[chunk] += size + RECORD_OVERHEAD;
+        deque.count--;
+        if (start[chunk] == end[chunk]) {
+            if (chunk == deque.tail) {
+                data.remove(key);
+            } else {
+                deque.head = next[chunk];
+                previous[deque.head] = -1;
+            }
+            releaseChunk(chunk);
+        }
+        return value;
+    }
+
+    private V removeLast(K key, KeyDeque deque) {
+        int chunk = deque.tail;
+        V value = readBefore(chunk, end[chunk]);
+        int size = slab(chunk).getInt(base(chunk) + end[chunk] - 4);
+        end[chunk] -= size + RECORD_OVERHEAD;
+        deque.count--;
+        if (start[chunk] == end[chunk]) {
+            if (chunk == deque.head) {
+                data.remove(key);
+            } else {
+                deque.tail = previous[chunk];
+                next[deque.tail] = -1;
+            }
+            releaseChunk(chunk);
+        }
+        return value;
+    }
+
+    private int sizeOf(V value) {
+        int size = codec.sizeOf(value);
+        if (size < 0 || size > chunkSize - RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Value of "+size+" bytes does not fit in a chunk of "
+                    +chunkSize+" bytes");
+        }
+        return size;
+    }
+
+    /**
+     * Writes a record at the given offset of the given chunk. The codec
+     * cannot write past the record, so a failed write leaves the other
+     * records intact.
+     * 
+     * @throws IllegalStateException if the codec does not write
+     * {@code size} bytes
+     */
+    private void write(int chunk, int offset, V value, int size) {
+        ByteBuffer slab = slab(chunk);
+        int position = base(chunk) + offset;
+        slab.clear();
+        slab.limit(position + 4 + size);
+        slab.position(position + 4);
+        codec.write(value, slab);
+        if (slab.position() != position + 4 + size) {
+            throw new IllegalStateException("Codec wrote "+(slab.position() - position - 4)
+                    +" bytes instead of "+size);
+        }
+        slab.clear();
+        slab.putInt(position, size);
+        slab.putInt(position + 4 + size, size);
+    }
+
+    /** Writes a record in a chunk just allocated, releasing it if that fails. */
+    private void writeToNewChunk(int chunk, int offset, V value, int size) {
+        boolean written = false;
+        try {
+            write(chunk, offset, value, size);
+            written = true;
+        } finally {
+            if (!written) {
+                releaseChunk(chunk);
+            }
+        }
+    }
+
+    /** Reads the record that starts at the given offset of the given chunk. */
+    private V readAt(int chunk, int offset) {
+        ByteBuffer slab = slab(chunk);
+        int position = base(chunk) + offset;
+        int size = slab.getInt(position);
+        slab.limit(position + 4 + size);
+        slab.position(position + 4);
+        V value = codec.read(slab, size);
+        slab.clear();
+        return value;
+    }
+
+    /** Reads the record that ends at the given offset of the given chunk. */
+    private V readBefore(int chunk, int offset) {
+        int size = slab(chunk).getInt(base(chunk) + offset - 4);
+        return readAt(chunk, offset - size - RECORD_OVERHEAD);
+    }
+
+    private ByteBuffer slab(int chunk) {
+        return slabs.get(chunk / chunksPerSlab);
+    }
+
+    private int base(int chunk) {
+        return (chunk % chunksPerSlab) * chunkSize;
+    }
+
+    /**
+     * Takes a free chunk, or a new one, allocating a slab if needed.
+     * 
+     * @param offset where the records of the chunk will start
+     */
+    private int allocateChunk(int offset) {
+        int chunk;
+        if (freeCount > 0) {
+            chunk = freeChunks[--freeCount];
+        } else {
+            chunk = chunkCount++;
+            if (chunk == slabs.size() * chunksPerSlab) {
+                slabs.add(ByteBuffer.allocateDirect(chunkSize * chunksPerSlab));
+            }
+            if (chunk == next.length) {
+                int length = Math.max(16, next.length * 2);
+                next = Arrays.copyOf(next, length);
+                previous = Arrays.copyOf(previous, length);
+                start = Arrays.copyOf(start, length);
+                end = Arrays.copyOf(end, length);
+            }
+        }
+        next[chunk] = -1;
+        previous[chunk] = -1;
+        start[chunk] = offset;
+        end[chunk] = offset;
+        return chunk;
+    }
+
+    private void releaseChunk(int chunk) {
+        if (freeCount == freeChunks.length) {
+            freeChunks = Arrays.copyOf(freeChunks, freeCount * 2);
+        }
+        freeChunks[freeCount++] = chunk;
+    }
+}
@@ -0,0 +1,692 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import java.util.*;
+
+/**
+ * Implementation of {@code DequeMap} with its own open addressing hash table,
+ * whose values are linked deques.
+ * <p/>
+ * Each slot of the table keeps the key, its hash code, the number of its
+ * values and the first and last node of its deque, so there is no bucket
+ * object per key. Every operation on a key finds the slot of the key with
+ * a single probe of the table: adding to a key that does not exist takes
+ * the empty slot the probe stopped at, and removing the last value of a key
+ * frees the slot found, by moving back the entries that follow it
+ * (linear probing with backward shift deletion, so there are no tombstones).
+ * <p/>
+ * Indexed access walks the deque from its nearest end, so the lists returned
+ * by {@link #getAll} are not {@link RandomAccess}. Use
+ * {@link ArrayDequeHashMap} for that.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @see DequeMap
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class OpenDequeHashMap<K, V> extends AbstractDequeMap<K, V> {
+
+    /**
+     * Node of a deque.
+     */
+    static final class Node {
+        Object value;
+        Node previous;
+        Node next;
+
+        Node(Object value) {
+            this.value = value;
+        }
+    }
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    /** Stands for the {@code null} key in the table, where null means empty. */
+    static final Object NULL_KEY = new Object();
+
+    private Object[] keys;
+    private int[] hashes;
+    private int[] counts;
+    private Node[] heads;
+    private Node[] tails;
+
+    private int size;
+
+    /** The size above which the table grows: 3/4 of its length. */
+    private int threshold;
+
+    /**
+     * Creates a new empty deque-map.
+     */
+    public OpenDequeHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty deque-map with room for the given number of keys.
+     * 
+     * @param expectedKeys the number of keys to hold without growing
+     * @throws IllegalArgumentException if {@code expectedKeys} is negative
+     */
+    public OpenDequeHashMap(int expectedKeys) {
+        if (expectedKeys < 0) {
+            throw new IllegalArgumentException("Illegal number of keys: "+expectedKeys);
+        }
+        int capacity = 4;
+        while (capacity * 3 / 4 < expectedKeys) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    @Override
+    public V get(K key) {
+        int i = indexOf(key);
+        return i < 0 ? null : this.<V>cast(heads[i].value);
+    }
+
+    @Override
+    public void set(K key, V value) {
+        int i = indexOf(key);
+        if (i < 0) {
+            insert(~i, key, value);
+        } else {
+            Node node = new Node(value);
+            heads[i] = node;
+            tails[i] = node;
+            counts[i] = 1;
+        }
+    }
+
+    @Override
+    public V getLast(K key) {
+        int i = indexOf(key);
+        return i < 0 ? null : this.<V>cast(tails[i].value);
+    }
+
+    @Override
+    public V pop(K key) {
+        int i = indexOf(key);
+        return i < 0 ? null : this.<V>cast(unlinkFirst(i));
+    }
+
+    @Override
+    public V popLast(K key) {
+        int i = indexOf(key);
+        return i < 0 ? null : this.<V>cast(unlinkLast(i));
+    }
+
+    @Override
+    public void add(K key, V value) {
+        int i = indexOf(key);
+        if (i < 0) {
+            insert(~i, key, value);
+        } else {
+            linkFirst(i, new Node(value));
+        }
+    }
+
+    @Override
+    public void addLast(K key, V value) {
+        int i = indexOf(key);
+        if (i < 0) {
+            insert(~i, key, value);
+        } else {
+            linkLast(i, new Node(value));
+        }
+    }
+
+    @Override
+    public List<V> popN(K key, int n) {
+        int i = indexOf(key);
+        if (i < 0 || n <= 0) {
+            return new ArrayList<V>(0);
+        }
+        n = Math.min(n, counts[i]);
+        List<V> result = new ArrayList<V>(n);
+        for (int j = 0; j < n; j++) {
+            // the last unlink may free the slot, so the key is not touched after it
+            result.add(this.<V>cast(unlinkFirst(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public List<V> popNLast(K key, int n) {
+        int i = indexOf(key);
+        if (i < 0 || n <= 0) {
+            return new ArrayList<V>(0);
+        }
+        n = Math.min(n, counts[i]);
+        List<V> result = new ArrayList<V>(n);
+        for (int j = 0; j < n; j++) {
+            result.add(this.<V>cast(unlinkLast(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public void addAll(K key, Collection<? extends V> values) {
+        if (values.isEmpty()) return;
+        // link the values in order and put the chain in front of the deque
+        Node first = null;
+        Node last = null;
+        for (V value : values) {
+            Node node = new Node(value);
+            if (first == null) {
+                first = node;
+            } else {
+                last.next = node;
+                node.previous = last;
+            }
+            last = node;
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            i = occupy(~i, key);
+        } else {
+            last.next = heads[i];
+            heads[i].previous = last;
+            last = tails[i];
+        }
+        heads[i] = first;
+        tails[i] = last;
+        counts[i] += values.size();
+        growIfNeeded();
+    }
+
+    @Override
+    public void addAllLast(K key, Collection<? extends V> values) {
+        if (values.isEmpty()) return;
+        Iterator<? extends V> it = values.iterator();
+        int i = indexOf(key);
+        if (i < 0) {
+            i = occupy(~i, key);
+            Node node = new Node(it.next());
+            heads[i] = node;
+            tails[i] = node;
+            counts[i] = 1;
+        }
+        while (it.hasNext()) {
+            linkLast(i, new Node(it.next()));
+        }
+        growIfNeeded();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The iterators of the returned list walk the nodes of the deque, so
+     * iterating over it takes linear time.
+     */
+    @Override
+    public List<V> getAll(K key) {
+        return new NodeView(key);
+    }
+
+    @Override
+    public int countOf(K key) {
+        int i = indexOf(key);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clearKey(K key) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            free(i);
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(heads, null);
+        Arrays.fill(tails, null);
+        size = 0;
+    }
+
+// primitives
+
+    @Override
+    protected V valueAt(K key, int index) {
+        return cast(nodeAt(indexOf(key), index).value);
+    }
+
+    @Override
+    protected V setValueAt(K key, int index, V value) {
+        Node node = nodeAt(indexOf(key), index);
+        V old = cast(node.value);
+        node.value = value;
+        return old;
+    }
+
+    @Override
+    protected void insertAt(K key, int index, V value) {
+        int i = indexOf(key);
+        if (i < 0) {
+            insert(~i, key, value);
+        } else if (index == counts[i]) {
+            linkLast(i, new Node(value));
+        } else {
+            linkBefore(i, nodeAt(i, index), new Node(value));
+        }
+    }
+
+    @Override
+    protected V removeAt(K key, int index) {
+        int i = indexOf(key);
+        return cast(unlink(i, nodeAt(i, index)));
+    }
+
+    @Override
+    protected Iterator<K> keyIterator() {
+        return new Iterator<K>() {
+            private int index = advance(0);
+
+            @Override public boolean hasNext() {
+                return index < keys.length;
+            }
+
+            @Override public K next() {
+                if (index >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+                Object key = keys[index];
+                index = advance(index + 1);
+                return cast(key == NULL_KEY ? null : key);
+            }
+
+            @Override public void remove() {
+                throw new UnsupportedOperationException("Removal not allowed.");
+            }
+
+            private int advance(int i) {
+                while (i < keys.length && keys[i] == null) {
+                    i++;
+                }
+                return i;
+            }
+        };
+    }
+
+// views
+
+    /**
+     * Key view whose iterators walk the nodes of the deque, instead of
+     * looking up the key and walking to the node for every index.
+     * <p/>
+     * Modifying the key other than through an iterator, while iterating,
+     * has undefined results.
+     */
+    class NodeView extends KeyView {
+
+        NodeView(K key) {
+            super(key);
+        }
+
+        @Override
+        public V get(int index) {
+            int i = slot();
+            checkIndex(index, i < 0 ? 0 : counts[i]);
+            return cast(nodeAt(i, index).value);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<V> listIterator(int index) {
+            int i = slot();
+            int count = i < 0 ? 0 : counts[i];
+            checkIndex(index, count + 1);
+            return new NodeIterator(index == count ? null : nodeAt(i, index), index, count);
+        }
+
+        // the slot of the key, as indexOf means the List method here
+        private int slot() {
+            return OpenDequeHashMap.this.indexOf(key);
+        }
+
+        private void checkIndex(int index, int bound) {
+            if (index < 0 || index >= bound) {
+                throw new IndexOutOfBoundsException("Index: "+index+", Key: "+key
+                        +", Size: "+size());
+            }
+        }
+
+        class NodeIterator implements ListIterator<V> {
+
+            private Node next;
+            private Node lastReturned;
+            private int nextIndex;
+            private int expectedCount;
+
+            NodeIterator(Node next, int nextIndex, int expectedCount) {
+                this.next = next;
+                this.nextIndex = nextIndex;
+                this.expectedCount = expectedCount;
+            }
+
+            @Override public boolean hasNext() {
+                return nextIndex < expectedCount;
+            }
+
+            @Override public V next() {
+                checkForComodification();
+                if (nextIndex >= expectedCount) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = next;
+                next = next.next;
+                nextIndex++;
+                return cast(lastReturned.value);
+            }
+
+            @Override public boolean hasPrevious() {
+                return nextIndex > 0;
+            }
+
+            @Override public V previous() {
+                int i = checkForComodification();
+                if (nextIndex == 0) {
+                    throw new NoSuchElementException();
+                }
+                next = next == null ? tails[i] : next.previous;
+                lastReturned = next;
+                nextIndex--;
+                return cast(lastReturned.value);
+            }
+
+            @Override public int nextIndex() {
+                return nextIndex;
+            }
+
+            @Override public int previousIndex() {
+                return nextIndex - 1;
+            }
+
+            @Override public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                int i = checkForComodification();
+                if (lastReturned == next) {
+                    next = next.next;
+                } else {
+                    nextIndex--;
+                }
+                unlink(i, lastReturned);
+                lastReturned = null;
+                expectedCount--;
+                modCount++;
+            }
+
+            @Override public void set(V e) {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                checkForComodification();
+                lastReturned.value = e;
+            }
+
+            @Override public void add(V e) {
+                int i = checkForComodification();
+                if (i < 0) {
+                    insert(~i, key, e);
+                } else if (next == null) {
+                    linkLast(i, new Node(e));
+                } else {
+                    linkBefore(i, next, new Node(e));
+                }
+                nextIndex++;
+                lastReturned = null;
+                expectedCount++;
+                modCount++;
+            }
+
+            /**
+             * @return the slot of the key, or {@code ~slot} if it has no values
+             */
+            private int checkForComodification() {
+                int i = slot();
+                if ((i < 0 ? 0 : counts[i]) != expectedCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return i;
+            }
+        }
+    }
+
+// hash table
+
+    /**
+     * Probes the table for the given key.
+     * 
+     * @return the slot of the key, or {@code ~slot} of the empty slot where
+     * the key would be inserted
+     */
+    private int indexOf(Object key) {
+        Object k = key == null ? NULL_KEY : key;
+        int hash = hash(k);
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (true) {
+            Object candidate = keys[i];
+            if (candidate == null) {
+                return ~i;
+            }
+            if (hashes[i] == hash && (candidate == k || candidate.equals(k))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Puts the key with a single value in the given empty slot. */
+    private void insert(int i, K key, V value) {
+        occupy(i, key);
+        Node node = new Node(value);
+        heads[i] = node;
+        tails[i] = node;
+        counts[i] = 1;
+        growIfNeeded();
+    }
+
+    /**
+     * Puts the key with no values in the given empty slot.
+     * The caller must add at least one value and then call {@link #growIfNeeded}.
+     */
+    private int occupy(int i, K key) {
+        Object k = key == null ? NULL_KEY : key;
+        keys[i] = k;
+        hashes[i] = hash(k);
+        counts[i] = 0;
+        size++;
+        return i;
+    }
+
+    /**
+     * Empties the given slot, moving back the following entries that
+     * would not be found otherwise.
+     */
+    private void free(int i) {
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == null) {
+                break;
+            }
+            int home = hashes[j] & mask;
+            // the entry at j may move to i if i is between its home and j
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                hashes[i] = hashes[j];
+                counts[i] = counts[j];
+                heads[i] = heads[j];
+                tails[i] = tails[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        heads[i] = null;
+        tails[i] = null;
+        size--;
+    }
+
+    private void growIfNeeded() {
+        if (size <= threshold) {
+            return;
+        }
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        Node[] oldHeads = heads;
+        Node[] oldTails = tails;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                hashes[i] = oldHashes[j];
+                counts[i] = oldCounts[j];
+                heads[i] = oldHeads[j];
+                tails[i] = oldTails[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+        heads = new Node[capacity];
+        tails = new Node[capacity];
+        threshold = capacity * 3 / 4;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+// deques
+
+    private void linkFirst(int i, Node node) {
+        node.next = heads[i];
+        heads[i].previous = node;
+        heads[i] = node;
+        counts[i]++;
+    }
+
+    private void linkLast(int i, Node node) {
+        node.previous = tails[i];
+        tails[i].next = node;
+        tails[i] = node;
+        counts[i]++;
+    }
+
+    private void linkBefore(int i, Node next, Node node) {
+        node.next = next;
+        node.previous = next.previous;
+        if (next.previous == null) {
+            heads[i] = node;
+        } else {
+            next.previous.next = node;
+        }
+        next.previous = node;
+        counts[i]++;
+    }
+
+    /** Removes the given node of the key at the given slot, freeing the slot if empty. */
+    private Object unlink(int i, Node node) {
+        if (node.previous == null) {
+            return unlinkFirst(i);
+        }
+        if (node.next == null) {
+            return unlinkLast(i);
+        }
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        counts[i]--;
+        return node.value;
+    }
+
+    /** Removes the first value of the key at the given slot, freeing the slot if empty. */
+    private Object unlinkFirst(int i) {
+        Node node = heads[i];
+        if (--counts[i] == 0) {
+            free(i);
+        } else {
+            heads[i] = node.next;
+            heads[i].previous = null;
+        }
+        return node.value;
+    }
+
+    private Object unlinkLast(int i) {
+        Node node = tails[i];
+        if (--counts[i] == 0) {
+            free(i);
+        } else {
+            tails[i] = node.previous;
+            tails[i].next = null;
+        }
+        return node.value;
+    }
+
+    private Node nodeAt(int i, int index) {
+        if (index < counts[i] / 2) {
+            Node node = heads[i];
+            for (int j = 0; j < index; j++) {
+                node = node.next;
+            }
+            return node;
+        }
+        Node node = tails[i];
+        for (int j = counts[i] - 1; j > index; j--) {
+            node = node.previous;
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T) value;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import gr.alieus.lib6.io.BinaryCodec;
+
+/**
+ * Chooses the codec of the values of a key, so that keys of a deque-map
+ * can hold values of different types or encodings.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see DequeMapEncoder
+ * @see DequeMapDecoder
+ */
+public interface ValueCodecSelector<K, V> {
+
+    /**
+     * Returns the codec of the values of the given key.
+     * Both ends of a transfer must return the same codec for the same key.
+     * 
+     * @param key the key
+     * @return the codec of the values of {@code key}
+     */
+    BinaryCodec<V> codecOf(K key);
+}
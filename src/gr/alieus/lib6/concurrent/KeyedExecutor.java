@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.concurrent;
+
+import gr.alieus.lib6.collect.ConcurrentDequeHashMap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks in order per key, and in parallel across keys.
+ * <p/>
+ * Tasks are queued by key in a {@link ConcurrentDequeHashMap}, so queuing
+ * tasks of different keys does not contend. A key with queued tasks has
+ * exactly one worker in the underlying executor: the worker runs up to
+ * {@code batchSize} tasks of its key in a row, in the order they were
+ * submitted, and then, if more tasks are queued, submits itself again,
+ * so that the keys share the threads of the executor fairly. So tasks of
+ * the same key never run at the same time and each task sees the effects
+ * of the tasks of its key submitted before it.
+ * <p/>
+ * The tasks are queued until their key's worker runs them, so the
+ * executor should not reject tasks, that is its queue should be unbounded
+ * and it should not be shut down while tasks are submitted. If it rejects
+ * the worker of a key that had no tasks, {@link #execute} removes the task
+ * again and rethrows the exception. If it rejects a worker that submits
+ * itself again, the tasks left stay queued and their key is stalled: its
+ * worker is submitted again by the next call of {@code execute}, for any
+ * key, or of {@link #retryStalled}. So when tasks stop coming after
+ * a rejection, call {@code retryStalled} once the executor accepts tasks
+ * again, or the tasks of the stalled keys wait forever.
+ * A task that throws does not stop the tasks queued after it; the
+ * exception is thrown to the executor after the rest of the batch is
+ * rescheduled.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <K> the type of the keys
+ */
+public class KeyedExecutor<K> {
+
+    static final int DEFAULT_BATCH_SIZE = 16;
+
+    private final ConcurrentDequeHashMap<K, Runnable> queues;
+    private final Executor executor;
+    private final int batchSize;
+
+    /** Keys with queued tasks but no worker, as the executor rejected it. */
+    private final Set<K> stalled = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+
+    /**
+     * Creates a new keyed executor with the default batch size (16).
+     * 
+     * @param executor runs the workers of the keys
+     */
+    public KeyedExecutor(Executor executor) {
+        this(executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a new keyed executor.
+     * 
+     * @param executor runs the workers of the keys
+     * @param batchSize the maximum number of tasks of a key that a worker
+     * runs before giving its thread to other keys
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    public KeyedExecutor(Executor executor, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Illegal batch size: "+batchSize);
+        }
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.queues = new ConcurrentDequeHashMap<K, Runnable>();
+    }
+
+    /**
+     * Queues the given task to run after the tasks of its key that were
+     * submitted before it.
+     * Before queuing, the workers of the stalled keys are submitted again.
+     * 
+     * @param key the key of the task
+     * @param task the task to run
+     * @throws RejectedExecutionException if the executor rejects the worker
+     * of the key or of a stalled key; the task is not queued then
+     */
+    public void execute(K key, Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (!stalled.isEmpty()) {
+            // resubmit the workers of the tasks left by a rejection first
+            retryStalled();
+        }
+        if (queues.addLastAndCount(key, task) == 1) {
+            // the key had no tasks, so it has no worker
+            try {
+                executor.execute(new Worker(key));
+            } catch (RejectedExecutionException e) {
+                // without a worker the task is still the first one
+                if (queues.removeFirstAndCount(key, 1) > 0) {
+                    stalled.add(key);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Submits again the workers of the keys that are stalled, because the
+     * executor rejected them, so that their queued tasks run.
+     * 
+     * @throws RejectedExecutionException if the executor rejects a worker
+     * again; its key, and the keys not yet retried, stay stalled
+     */
+    public void retryStalled() {
+        for (K key : stalled) {
+            if (stalled.remove(key)) {
+                try {
+                    executor.execute(new Worker(key));
+                } catch (RejectedExecutionException e) {
+                    stalled.add(key);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks of the given key that have not
+     * completed, including the running ones and the ones of a stalled key,
+     * which wait for {@link #execute} or {@link #retryStalled}.
+     * 
+     * @param key the key
+     * @return the number of tasks of {@code key}
+     */
+    public int getNumberOfTasks(K key) {
+        return queues.countOf(key);
+    }
+
+    /**
+     * Returns the number of stalled keys.
+     * Package private for the tests.
+     * 
+     * @return the number of keys whose worker was rejected
+     */
+    int getNumberOfStalledKeys() {
+        return stalled.size();
+    }
+
+    /**
+     * Returns the number of keys with tasks that have not completed.
+     * 
+     * @return the number of keys with tasks
+     */
+    public int getNumberOfKeys() {
+        return queues.size();
+    }
+
+    /**
+     * Runs tasks of a key. The tasks stay queued until they complete,
+     * so that the key keeps existing, and keeps this worker, while they run.
+     */
+    private final class Worker implements Runnable {
+        private final K key;
+
+        Worker(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            int done = 0;
+            try {
+                // only this worker removes tasks, so the first ones stay put
+                List<Runnable> tasks = queues.getAll(key);
+                int n = Math.min(batchSize, tasks.size());
+                while (done < n) {
+                    Runnable task = tasks.get(done);
+                    done++;
+                    task.run();
+                }
+            } finally {
+                if (queues.removeFirstAndCount(key, done) > 0) {
+                    try {
+                        executor.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        stalled.add(key);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts objects to and from their binary form.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @param <T> the type of the objects
+ * @see BinaryCodecs
+ */
+public interface BinaryCodec<T> {
+
+    /**
+     * Returns the number of bytes {@link #write} needs for the given object.
+     * 
+     * @param value the object
+     * @return the size of the binary form of {@code value}
+     */
+    int sizeOf(T value);
+
+    /**
+     * Writes the binary form of the given object at the position of
+     * the given buffer, advancing its position by {@code sizeOf(value)}.
+     * 
+     * @param value the object
+     * @param buffer the buffer with at least {@code sizeOf(value)} bytes remaining
+     */
+    void write(T value, ByteBuffer buffer);
+
+    /**
+     * Reads an object from its binary form at the position of
+     * the given buffer, advancing its position by {@code length}.
+     * 
+     * @param buffer the buffer
+     * @param length the size of the binary form
+     * @return the object
+     */
+    T read(ByteBuffer buffer, int length);
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Common {@link BinaryCodec}s.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public final class BinaryCodecs {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final BinaryCodec<byte[]> BYTES = new BinaryCodec<byte[]>() {
+        @Override
+        public int sizeOf(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        public void write(byte[] value, ByteBuffer buffer) {
+            buffer.put(value);
+        }
+
+        @Override
+        public byte[] read(ByteBuffer buffer, int length) {
+            byte[] value = new byte[length];
+            buffer.get(value);
+            return value;
+        }
+    };
+
+    private static final BinaryCodec<String> UTF8 = new BinaryCodec<String>() {
+        @Override
+        public int sizeOf(String value) {
+            int size = 0;
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    size++;
+                } else if (c < 0x800) {
+                    size += 2;
+                } else if (isPairAt(value, i)) {
+                    size += 4;
+                    i++;
+                } else if (isSurrogate(c)) {
+                    size++; // replaced by '?'
+                } else {
+                    size += 3;
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public void write(String value, ByteBuffer buffer) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else if (isPairAt(value, i)) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (cp >> 18)));
+                    buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (cp & 0x3F)));
+                } else if (isSurrogate(c)) {
+                    buffer.put((byte) '?');
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        @Override
+        public String read(ByteBuffer buffer, int length) {
+            if (buffer.hasArray()) {
+                String value = new String(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(), length, UTF_8);
+                buffer.position(buffer.position() + length);
+                return value;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    private BinaryCodecs() {
+    }
+
+    /**
+     * Returns the codec of byte arrays, whose binary form is themselves.
+     * 
+     * @return the codec of byte arrays
+     */
+    public static BinaryCodec<byte[]> bytes() {
+        return BYTES;
+    }
+
+    /**
+     * Returns the codec of strings in UTF-8.
+     * Unpaired surrogate characters are written as {@code '?'}.
+     * 
+     * @return the UTF-8 codec
+     */
+    public static BinaryCodec<String> utf8() {
+        return UTF8;
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static boolean isPairAt(String s, int i) {
+        return Character.isHighSurrogate(s.charAt(i)) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of the same size.
+ * <p/>
+ * Direct buffers are expensive to allocate and are freed only by the
+ * garbage collector, so code that does I/O in bursts should reuse them.
+ * The pool keeps up to a maximum number of released buffers and allocates
+ * a new buffer when none is available. It is thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    /**
+     * Creates a new empty pool.
+     * 
+     * @param bufferSize the capacity of the buffers
+     * @param maxPooled the maximum number of buffers kept for reuse
+     * @throws IllegalArgumentException if the buffer size is not positive
+     * or the maximum number of buffers is negative
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Illegal buffer size: "+bufferSize);
+        }
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Illegal number of buffers: "+maxPooled);
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers available for reuse.
+     * 
+     * @return the number of pooled buffers
+     */
+    public int getNumberOfPooledBuffers() {
+        return pooledCount.get();
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one.
+     * 
+     * @return a cleared direct buffer of the pool's size
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooledCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool. Buffers that were not taken from a
+     * pool of the same size are ignored, as are buffers beyond the maximum.
+     * The buffer must not be used afterwards.
+     * 
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (pooledCount.incrementAndGet() > maxPooled) {
+            pooledCount.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+/**
+ * Compresses and decompresses byte arrays.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ * @see LzfCodec
+ * @see DeflateCodec
+ */
+public interface CompressionCodec {
+
+    /**
+     * Compresses a part of the given array.
+     * 
+     * @param data the array
+     * @param offset the start of the part to compress
+     * @param length the length of the part to compress
+     * @return the compressed bytes
+     */
+    byte[] compress(byte[] data, int offset, int length);
+
+    /**
+     * Decompresses the given bytes.
+     * 
+     * @param compressed bytes returned by {@link #compress}
+     * @param originalLength the length of the part that was compressed
+     * @return the original bytes
+     * @throws IllegalArgumentException if the bytes are corrupt
+     */
+    byte[] decompress(byte[] compressed, int originalLength);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression codec using the deflate algorithm of {@code java.util.zip}.
+ * It compresses better than {@link LzfCodec}, the pure Java codec, but
+ * more slowly and through native zlib.
+ * <p/>
+ * The deflater and the inflater are reused by every call. They hold native
+ * zlib memory, which is freed by {@link #close} instead of waiting for
+ * finalization; close the codec when it is no longer needed.
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class DeflateCodec implements CompressionCodec, Closeable {
+
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Creates a new codec with the given compression level.
+     * 
+     * @param level the compression level, from 1 (fastest)
+     * to 9 (best compression)
+     */
+    public DeflateCodec(int level) {
+        deflater = new Deflater(level);
+    }
+
+    /**
+     * Creates a new codec with the fastest compression level, which suits
+     * caches where values are compressed on every store.
+     */
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] out = new byte[Math.max(64, length / 2)];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            size += deflater.deflate(out, size, out.length - size);
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    @Override
+    public byte[] decompress(byte[] compressed, int originalLength) {
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] out = new byte[originalLength];
+        try {
+            int size = 0;
+            while (size < originalLength) {
+                int n = inflater.inflate(out, size, originalLength - size);
+                if (n == 0) {
+                    if (inflater.finished() || inflater.needsInput()) {
+                        throw new IllegalArgumentException("Truncated data: "
+                                +size+" of "+originalLength+" bytes");
+                    }
+                    // no progress, e.g. data that needs a preset dictionary
+                    throw new IllegalArgumentException("Corrupt data");
+                }
+                size += n;
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Corrupt data", ex);
+        }
+        return out;
+    }
+
+    /**
+     * Frees the native memory of the deflater and the inflater.
+     * The codec cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+}
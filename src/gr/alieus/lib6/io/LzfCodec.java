@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation, either version 3 of the License or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+import java.util.Arrays;
+
+/**
+ * Compression codec in pure Java, using the LZF format: a sequence of
+ * literal runs and back references to the last 8KB of the output.
+ * <p/>
+ * It needs no native memory and compresses and decompresses much faster
+ * than {@link DeflateCodec}, at a lower compression ratio, which suits
+ * caches that compress values on every store and decompress them on every
+ * lookup. Repetitive data such as JSON still compresses several times.
+ * <p/>
+ * NOTE: this implementation is not thread safe.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class LzfCodec implements CompressionCodec {
+
+    private static final int HASH_BITS = 14;
+    private static final int MAX_LITERALS = 32;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_MATCH = (1 << 8) + (1 << 3);
+
+    /**
+     * The last position of every hashed 3 byte sequence. Positions left by
+     * previous calls are told apart by comparing the bytes.
+     */
+    private final int[] hashTable = new int[1 << HASH_BITS];
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        // a control byte for every 32 literals in the worst case
+        byte[] out = new byte[length + length / MAX_LITERALS + 1];
+        int end = offset + length;
+        int ip = offset;
+        int op = 1;
+        int run = 0;       // the literals of the current run
+        int runStart = 0;  // the control byte of the current run
+        while (ip < end) {
+            if (ip < end - 2) {
+                int h = hash(data, ip);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+                int distance = ip - ref - 1;
+                if (ref >= offset && ref < ip && distance < MAX_OFFSET
+                        && data[ref] == data[ip] && data[ref + 1] == data[ip + 1]
+                        && data[ref + 2] == data[ip + 2]) {
+                    int max = Math.min(MAX_MATCH, end - ip);
+                    int len = 3;
+                    while (len < max && data[ref + len] == data[ip + len]) {
+                        len++;
+                    }
+                    if (run == 0) {
+                        op--;  // the run has no literals, drop its control byte
+                    } else {
+                        out[runStart] = (byte) (run - 1);
+                    }
+                    int code = len - 2;
+                    if (code < 7) {
+                        out[op++] = (byte) ((code << 5) + (distance >> 8));
+                    } else {
+                        out[op++] = (byte) ((7 << 5) + (distance >> 8));
+                        out[op++] = (byte) (code - 7);
+                    }
+                    out[op++] = (byte) distance;
+                    ip += len;
+                    run = 0;
+                    runStart = op++;
+                    continue;
+                }
+            }
+            out[op++] = data[ip++];
+            if (++run == MAX_LITERALS) {
+                out[runStart] = (byte) (run - 1);
+                run = 0;
+                runStart = op++;
+            }
+        }
+        if (run == 0) {
+            op--;
+        } else {
+            out[runStart] = (byte) (run - 1);
+        }
+        return Arrays.copyOf(out, op);
+    }
+
+    @Override
+    public byte[] decompress(byte[] compressed, int originalLength) {
+        byte[] out = new byte[originalLength];
+        int ip = 0;
+        int op = 0;
+        while (ip < compressed.length) {
+            int control = compressed[ip++] & 0xff;
+            if (control < MAX_LITERALS) {
+                int run = control + 1;
+                if (run > compressed.length - ip || run > originalLength - op) {
+                    throw new IllegalArgumentException("Corrupt data");
+                }
+                System.arraycopy(compressed, ip, out, op, run);
+                ip += run;
+                op += run;
+            } else {
+                int len = control >> 5;
+                if (len == 7) {
+                    if (ip == compressed.length) {
+                        throw new IllegalArgumentException("Corrupt data");
+                    }
+                    len += compressed[ip++] & 0xff;
+                }
+                len += 2;
+                if (ip == compressed.length) {
+                    throw new IllegalArgumentException("Corrupt data");
+                }
+                int ref = op - ((control & 0x1f) << 8) - (compressed[ip++] & 0xff) - 1;
+                if (ref < 0 || len > originalLength - op) {
+                    throw new IllegalArgumentException("Corrupt data");
+                }
+                // byte by byte, as the reference may overlap the copy
+                for (int i = 0; i < len; i++) {
+                    out[op++] = out[ref++];
+                }
+            }
+        }
+        if (op != originalLength) {
+            throw new IllegalArgumentException("Truncated data: "+op+" of "+originalLength+" bytes");
+        }
+        return out;
+    }
+
+    private static int hash(byte[] data, int i) {
+        int v = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | data[i + 2] & 0xff;
+        return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
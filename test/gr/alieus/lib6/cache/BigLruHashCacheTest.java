@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.Test;
+
+/**
+ * Test of BigLruHashCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class BigLruHashCacheTest {
+
+    @Test
+    public void growthTest() {
+        BigLruHashCache<Long, Long> cache = new BigLruHashCache<Long, Long>(300000);
+        for (long i = 0; i < 300000; i++) {
+            cache.store(i, -i);
+        }
+        assertEquals(300000, cache.getNumberOfEntries());
+        // grown over several chunks, one bucket at a time
+        assertTrue(cache.getNumberOfBuckets() > 3 * BigLruHashCache.CHUNK_SIZE);
+        assertTrue(cache.getNumberOfBuckets() >= 300000 / 0.75 - 1);
+        for (long i = 0; i < 300000; i++) {
+            assertEquals(Long.valueOf(-i), cache.lookUp(i));
+        }
+        assertNull(cache.lookUp(300000L));
+        assertEquals(300000, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void lruTest() {
+        BigLruHashCache<Integer, String> cache = new BigLruHashCache<Integer, String>(3);
+        cache.store(1, "a");
+        cache.store(2, "b");
+        cache.store(3, "c");
+        assertEquals("a", cache.lookUp(1));
+        cache.store(4, "d"); // evicts 2
+        assertNull(cache.lookUp(2));
+        assertEquals("a", cache.lookUp(1));
+        assertEquals("c", cache.lookUp(3));
+        assertEquals("d", cache.lookUp(4));
+        assertEquals(3, cache.getNumberOfEntries());
+
+        assertEquals("c", cache.remove(3));
+        assertNull(cache.remove(3));
+        assertEquals("a", cache.storeIfAbsent(1, "x"));
+        assertNull(cache.storeIfAbsent(5, "e"));
+        assertTrue(cache.replace(5, "e", "f"));
+        assertFalse(cache.replace(5, "e", "g"));
+        assertNull(cache.compute(5, new Computation<Integer, String>() {
+            @Override
+            public String compute(Integer key, String value) {
+                return null;
+            }
+        }));
+        assertEquals(2, cache.getNumberOfEntries());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getNumberOfEntries());
+        assertNull(cache.lookUp(1));
+    }
+}
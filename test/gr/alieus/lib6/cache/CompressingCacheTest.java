@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import gr.alieus.lib6.io.BinaryCodecs;
+import gr.alieus.lib6.io.DeflateCodec;
+
+import org.junit.Test;
+
+/**
+ * Test of CompressingCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class CompressingCacheTest {
+
+    private static String json(int i) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int j = 0; j < 100; j++) {
+            sb.append("{\"id\": ").append(i).append(", \"name\": \"item\", \"tags\": []},");
+        }
+        return sb.append("]").toString();
+    }
+
+    @Test
+    public void compressionTest() {
+        CompressingCache<Integer, String> cache = new CompressingCache<Integer, String>(
+                100, 1000000, BinaryCodecs.utf8(), new DeflateCodec(), 256, 0);
+        cache.store(1, "small");
+        assertEquals(5, cache.getWeight());
+        String large = json(2);
+        cache.store(2, large);
+        long compressed = cache.getWeight() - 5;
+        assertTrue("compressed to "+compressed, compressed * 5 < large.length());
+
+        assertEquals("small", cache.lookUp(1));
+        assertEquals(0, cache.getNumberOfDecompressions());
+        assertEquals(large, cache.lookUp(2));
+        assertEquals(large, cache.lookUp(2));
+        assertEquals(2, cache.getNumberOfDecompressions());
+
+        assertEquals(large, cache.remove(2));
+        assertEquals(5, cache.getWeight());
+    }
+
+    @Test
+    public void hotSetTest() {
+        CompressingCache<Integer, String> cache = new CompressingCache<Integer, String>(
+                100, 1000000, BinaryCodecs.utf8(), new DeflateCodec(), 256, 2);
+        for (int i = 0; i < 3; i++) {
+            cache.store(i, json(i));
+        }
+        for (int n = 0; n < 10; n++) {
+            assertEquals(json(0), cache.lookUp(0));
+            assertEquals(json(1), cache.lookUp(1));
+        }
+        assertEquals(2, cache.getNumberOfDecompressions());
+
+        // a new value is never served from the hot set
+        cache.store(0, json(5));
+        assertEquals(json(5), cache.lookUp(0));
+        assertEquals(3, cache.getNumberOfDecompressions());
+    }
+
+    @Test
+    public void weightCapacityTest() {
+        CompressingCache<Integer, String> cache = new CompressingCache<Integer, String>(
+                1000, 1000, BinaryCodecs.utf8(), new DeflateCodec(), 1000000, 0);
+        for (int i = 0; i < 20; i++) {
+            cache.store(i, "0123456789012345678901234567890123456789012345678" + (char) ('a' + i));
+        }
+        // 50 bytes each
+        assertEquals(20, cache.getNumberOfEntries());
+        assertEquals(1000, cache.getWeight());
+        cache.store(20, "x");
+        assertEquals(20, cache.getNumberOfEntries());
+        assertNull(cache.lookUp(0));
+        assertEquals(951, cache.getWeight());
+    }
+
+    @Test
+    public void conditionalTest() {
+        CompressingCache<Integer, String> cache = new CompressingCache<Integer, String>(
+                100, 1000000, BinaryCodecs.utf8(), new DeflateCodec(), 256, 4);
+        assertNull(cache.storeIfAbsent(1, json(1)));
+        assertEquals(json(1), cache.storeIfAbsent(1, json(2)));
+        assertFalse(cache.replace(1, json(2), json(3)));
+        assertTrue(cache.replace(1, json(1), json(3)));
+        assertEquals(json(3), cache.lookUp(1));
+        assertEquals(json(3) + "x", cache.compute(1, new Computation<Integer, String>() {
+            @Override
+            public String compute(Integer key, String value) {
+                return value + "x";
+            }
+        }));
+        assertEquals(json(3) + "x", cache.lookUp(1));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test of ConsistentHashCache and the socket shards.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class ConsistentHashCacheTest {
+
+    private static final int KEYS = 20000;
+
+    @Test
+    public void routingTest() {
+        ConsistentHashCache<Integer, Integer> cache = new ConsistentHashCache<Integer, Integer>(100);
+        for (int i = 0; i < 4; i++) {
+            cache.addShard("shard"+i, new LruHashCache<Integer, Integer>(KEYS));
+        }
+        for (int i = 0; i < KEYS; i++) {
+            cache.store(i, i);
+        }
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(Integer.valueOf(i), cache.lookUp(i));
+        }
+        Map<Integer, Cache<Integer, Integer>> before = shards(cache);
+        Map<String, Integer> load = new HashMap<String, Integer>();
+        for (String name : cache.getShardNames()) {
+            load.put(name, 0);
+        }
+
+        // adding a fifth shard moves about a fifth of the keys, all to the new shard
+        LruHashCache<Integer, Integer> fifth = new LruHashCache<Integer, Integer>(KEYS);
+        cache.addShard("shard4", fifth);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            Cache<Integer, Integer> shard = cache.shardOf(i);
+            if (shard != before.get(i)) {
+                assertSame(fifth, shard);
+                moved++;
+            }
+        }
+        assertTrue("moved "+moved, moved > KEYS / 10 && moved < KEYS * 3 / 10);
+        assertNull(cache.lookUp(keyOn(cache, fifth)));
+
+        // removing it moves them back and nothing else
+        assertSame(fifth, cache.removeShard("shard4"));
+        assertEquals(before, shards(cache));
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(Integer.valueOf(i), cache.lookUp(i));
+        }
+    }
+
+    @Test
+    public void equalHashCodesTest() {
+        // "Aa" and "BB" have the same hash code
+        ConsistentHashCache<Integer, Integer> cache = new ConsistentHashCache<Integer, Integer>(100);
+        LruHashCache<Integer, Integer> first = new LruHashCache<Integer, Integer>(KEYS);
+        LruHashCache<Integer, Integer> second = new LruHashCache<Integer, Integer>(KEYS);
+        cache.addShard("Aa", first);
+        cache.addShard("BB", second);
+        int onSecond = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (cache.shardOf(i) == second) {
+                onSecond++;
+            }
+        }
+        assertTrue("on second "+onSecond, onSecond > KEYS / 4 && onSecond < KEYS * 3 / 4);
+    }
+
+    @Test
+    public void collisionTest() {
+        // two names whose single virtual nodes take the same point
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        String first = null;
+        String second = null;
+        for (int i = 0; second == null; i++) {
+            String name = "shard"+i;
+            second = names.put(ConsistentHashCache.pointOf(name+"#0"), name);
+            first = name;
+        }
+        LruHashCache<Integer, Integer> shard = new LruHashCache<Integer, Integer>(KEYS);
+        ConsistentHashCache<Integer, Integer> cache = new ConsistentHashCache<Integer, Integer>(1);
+        cache.addShard(first, shard);
+        cache.addShard(second, new LruHashCache<Integer, Integer>(KEYS));
+        ConsistentHashCache<Integer, Integer> reversed = new ConsistentHashCache<Integer, Integer>(1);
+        reversed.addShard(second, new LruHashCache<Integer, Integer>(KEYS));
+        reversed.addShard(first, shard);
+        // the order of addition does not decide which shard keeps the point
+        assertEquals(cache.shardOf(0) == shard, reversed.shardOf(0) == shard);
+    }
+
+    @Test
+    public void socketShardTest() throws Exception {
+        Cache<String, String> remote = CacheUtil.synchronizedCache(new LruHashCache<String, String>(100));
+        SocketCacheServer<String, String> server = new SocketCacheServer<String, String>(remote);
+        SocketCacheClient<String, String> client = new SocketCacheClient<String, String>("localhost", server.getPort());
+        try {
+            ConsistentHashCache<String, String> cache = new ConsistentHashCache<String, String>(10);
+            cache.addShard("remote", client);
+
+            cache.store("a", "1");
+            assertEquals("1", cache.lookUp("a"));
+            assertEquals("1", remote.lookUp("a"));
+            assertNull(cache.lookUp("b"));
+            assertEquals("1", cache.storeIfAbsent("a", "2"));
+            assertNull(cache.storeIfAbsent("b", "2"));
+            assertFalse(cache.replace("b", "1", "3"));
+            assertTrue(cache.replace("b", "2", "3"));
+            assertEquals("3", remote.lookUp("b"));
+
+            Computation<String, String> append = new Computation<String, String>() {
+                @Override
+                public String compute(String key, String value) {
+                    return value == null ? "x" : value.length() > 2 ? null : value + "x";
+                }
+            };
+            assertEquals("x", cache.compute("c", append));
+            assertEquals("xx", cache.compute("c", append));
+            assertEquals("xxx", cache.compute("c", append));
+            assertNull(cache.compute("c", append));
+            assertNull(remote.lookUp("c"));
+
+            assertEquals("3", cache.remove("b"));
+            cache.invalidateAll();
+            assertNull(remote.lookUp("a"));
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    private static Map<Integer, Cache<Integer, Integer>> shards(ConsistentHashCache<Integer, Integer> cache) {
+        Map<Integer, Cache<Integer, Integer>> result = new HashMap<Integer, Cache<Integer, Integer>>();
+        for (int i = 0; i < KEYS; i++) {
+            result.put(i, cache.shardOf(i));
+        }
+        return result;
+    }
+
+    private static Integer keyOn(ConsistentHashCache<Integer, Integer> cache, Cache<Integer, Integer> shard) {
+        for (int i = 0; ; i++) {
+            if (cache.shardOf(i) == shard) {
+                return i;
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test of HotKeyTracker.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class HotKeyTrackerTest {
+
+    @Test
+    public void topKTest() {
+        HotKeyTracker<Integer> tracker = new HotKeyTracker<Integer>(4, 1024);
+        Cache<Integer, String> cache = CacheUtil.tracking(new LruHashCache<Integer, String>(100), tracker);
+        Random random = new Random(3);
+        int[] actual = new int[100000];
+        for (int i = 0; i < 100000; i++) {
+            // keys 0, 1 and 2 take 20%, 10% and 5% of the traffic
+            int r = random.nextInt(100);
+            int key = r < 20 ? 0 : r < 30 ? 1 : r < 35 ? 2 : 3 + random.nextInt(99990);
+            actual[key]++;
+            cache.lookUp(key);
+        }
+        assertEquals(100000, tracker.getNumberOfAccesses());
+
+        List<HotKeyTracker.HotKey<Integer>> top = tracker.getTopK();
+        assertTrue(top.size() <= 4);
+        long bound = tracker.getErrorBound();
+        for (int i = 0; i < 3; i++) {
+            HotKeyTracker.HotKey<Integer> hot = top.get(i);
+            assertEquals(Integer.valueOf(i), hot.getKey());
+            assertTrue(hot.getEstimate() >= actual[i]);
+            assertTrue(hot.getEstimate() <= actual[i] + bound);
+            assertTrue(tracker.estimate(i) >= actual[i]);
+        }
+
+        tracker.decay();
+        assertEquals(Integer.valueOf(0), tracker.getTopK().get(0).getKey());
+        assertTrue(tracker.getNumberOfAccesses() <= 50000);
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        final HotKeyTracker<String> tracker = new HotKeyTracker<String>(2, 256);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        tracker.record(i % 2 == 0 ? "hot" : "cold" + id + "-" + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, tracker.getNumberOfAccesses());
+        assertTrue(tracker.estimate("hot") >= 20000);
+        assertEquals("hot", tracker.getTopK().get(0).getKey());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of LoadingCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class LoadingCacheTest {
+
+    private final Map<String, String> origin = new HashMap<String, String>();
+    private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) {
+            return origin.get(key);
+        }
+    };
+    private LruHashCache<String, String> backing;
+    private LoadingCache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        origin.put("a", "1");
+        backing = new LruHashCache<String, String>(2);
+        cache = new LoadingCache<String, String>(backing, loader,
+                new NegativeCache<String>(1024, 1, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void testLoadsOnce() {
+        assertEquals("1", cache.get("a"));
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.getNumberOfLoads());
+    }
+
+    @Test
+    public void testAbsentKeysDoNotReachLoader() {
+        cache.get("a");
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.get("missing"+(i % 3)));
+        }
+        assertEquals(4, cache.getNumberOfLoads());
+        assertEquals(7, cache.getNegativeHits());
+        // absent keys take no space from the real entries
+        assertEquals("1", backing.lookUp("a"));
+    }
+
+    @Test
+    public void testStoreForgetsAbsence() {
+        assertNull(cache.get("b"));
+        cache.store("b", "2");
+        cache.remove("b");
+        origin.put("b", "3");
+        assertEquals("3", cache.get("b"));
+    }
+
+    @Test
+    public void testWithoutNegativeCache() {
+        LoadingCache<String, String> plain = new LoadingCache<String, String>(backing, loader);
+        plain.get("missing");
+        plain.get("missing");
+        assertEquals(2, plain.getNumberOfLoads());
+    }
+}
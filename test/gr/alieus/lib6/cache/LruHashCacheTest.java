@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test of LruHashCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class LruHashCacheTest {
+
+    private static final Computation<String, Integer> INCREMENT = new Computation<String, Integer>() {
+        @Override
+        public Integer compute(String key, Integer value) {
+            return value == null ? 1 : value + 1;
+        }
+    };
+
+    private static final Computation<String, Integer> REMOVE = new Computation<String, Integer>() {
+        @Override
+        public Integer compute(String key, Integer value) {
+            return null;
+        }
+    };
+
+    @Test
+    public void store_lookUpTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(10);
+        assertNull(cache.lookUp("a"));
+        cache.store("a", 1);
+        cache.store("b", 2);
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+        cache.store("a", 3);
+        assertEquals(Integer.valueOf(3), cache.lookUp("a"));
+        assertEquals(Integer.valueOf(2), cache.lookUp("b"));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictionTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(2);
+        cache.store("a", 1);
+        cache.store("b", 2);
+        cache.lookUp("a"); // now "b" is the least recently used
+        cache.store("c", 3);
+        assertNull(cache.lookUp("b"));
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+        assertEquals(Integer.valueOf(3), cache.lookUp("c"));
+    }
+
+    @Test
+    public void removeTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(2);
+        cache.store("a", 1);
+        cache.store("b", 2);
+        assertEquals(Integer.valueOf(1), cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertNull(cache.lookUp("a"));
+
+        // the removed entry must not take up space
+        cache.store("c", 3);
+        assertEquals(Integer.valueOf(2), cache.lookUp("b"));
+        assertEquals(Integer.valueOf(3), cache.lookUp("c"));
+    }
+
+    @Test
+    public void storeIfAbsent_replaceTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(10);
+        assertNull(cache.storeIfAbsent("a", 1));
+        assertEquals(Integer.valueOf(1), cache.storeIfAbsent("a", 2));
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+
+        assertFalse(cache.replace("a", 2, 3));
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+        assertTrue(cache.replace("a", 1, 3));
+        assertEquals(Integer.valueOf(3), cache.lookUp("a"));
+        assertFalse(cache.replace("b", null, 1));
+        assertNull(cache.lookUp("b"));
+    }
+
+    @Test
+    public void computeTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(10);
+        assertEquals(Integer.valueOf(1), cache.compute("a", INCREMENT));
+        assertEquals(Integer.valueOf(2), cache.compute("a", INCREMENT));
+        assertEquals(Integer.valueOf(2), cache.lookUp("a"));
+
+        assertNull(cache.compute("a", REMOVE));
+        assertNull(cache.lookUp("a"));
+        assertNull(cache.compute("b", REMOVE));
+    }
+
+    @Test
+    public void synchronizedComputeTest() throws InterruptedException {
+        final Cache<String, Integer> cache
+            = CacheUtil.synchronizedCache(new LruHashCache<String, Integer>(10));
+        final int perThread = 10000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        cache.compute("counter", INCREMENT);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(Integer.valueOf(threads.length * perThread), cache.lookUp("counter"));
+    }
+
+    @Test
+    public void invalidateAllTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(3);
+        cache.store("a", 1);
+        cache.store("b", 2);
+        cache.invalidateAll();
+        assertNull(cache.lookUp("a"));
+        assertNull(cache.remove("b"));
+        assertNull(cache.storeIfAbsent("b", 3));
+        assertEquals(Integer.valueOf(3), cache.lookUp("b"));
+
+        // stale entries are evicted before live ones
+        cache.store("c", 4);
+        cache.store("d", 5);
+        cache.store("e", 6);
+        assertEquals(Integer.valueOf(4), cache.lookUp("c"));
+        assertEquals(Integer.valueOf(5), cache.lookUp("d"));
+        assertEquals(Integer.valueOf(6), cache.lookUp("e"));
+    }
+
+    @Test
+    public void invalidateTagTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(10);
+        cache.store("a", 1, "x");
+        cache.store("b", 2, "y");
+        cache.store("c", 3);
+        cache.invalidateTag("x");
+        cache.invalidateTag("z");
+        assertNull(cache.lookUp("a"));
+        assertEquals(Integer.valueOf(2), cache.lookUp("b"));
+        assertEquals(Integer.valueOf(3), cache.lookUp("c"));
+
+        // storing again under an invalidated tag makes the entry live
+        cache.store("a", 4, "x");
+        assertEquals(Integer.valueOf(4), cache.lookUp("a"));
+        // re-storing without a tag removes the tag
+        cache.store("b", 5);
+        cache.invalidateTag("y");
+        assertEquals(Integer.valueOf(5), cache.lookUp("b"));
+        // as does any other write
+        cache.store("c", 6, "z");
+        assertTrue(cache.replace("c", 6, 7));
+        cache.invalidateTag("z");
+        assertEquals(Integer.valueOf(7), cache.lookUp("c"));
+    }
+
+    @Test
+    public void growingTableTest() {
+        LruHashCache<Integer, Integer> cache = new LruHashCache<Integer, Integer>(1000, 16);
+        assertTrue(cache.table.length < 100);
+        for (int i = 0; i < 1500; i++) {
+            cache.store(i, i);
+        }
+        assertEquals(new LruHashCache<Integer, Integer>(1000).table.length, cache.table.length);
+        assertEquals(1000, cache.getNumberOfEntries());
+        assertNull(cache.lookUp(499));
+        for (int i = 500; i < 1500; i++) {
+            assertEquals(Integer.valueOf(i), cache.lookUp(i));
+        }
+    }
+
+    @Test
+    public void tagCleanupTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(4);
+        for (int i = 0; i < 100; i++) {
+            cache.store("k"+i, i, "request "+i);
+        }
+        // only the tags of the entries still cached are kept
+        assertEquals(4, cache.getNumberOfTags());
+        cache.remove("k99");
+        assertEquals(3, cache.getNumberOfTags());
+
+        // stale entries are purged before live ones are evicted
+        cache.store("a", 1, "t");
+        cache.store("b", 2);
+        cache.store("c", 3, "t");
+        cache.store("d", 4);
+        cache.invalidateTag("t");
+        cache.store("e", 5);
+        cache.store("f", 6);
+        assertEquals(Integer.valueOf(2), cache.lookUp("b"));
+        assertEquals(Integer.valueOf(4), cache.lookUp("d"));
+        assertEquals(4, cache.getNumberOfEntries());
+        assertEquals(0, cache.getNumberOfTags());
+    }
+
+    @Test
+    public void incrementalSweepTest() {
+        LruHashCache<Integer, Integer> cache = new LruHashCache<Integer, Integer>(10000);
+        for (int i = 0; i < 10000; i++) {
+            cache.store(i, i);
+        }
+        cache.invalidateAll();
+        assertEquals(cache.table.length, cache.getNumberOfBucketsToSweep());
+
+        // a store searches only a few buckets
+        cache.store(-1, -1);
+        assertEquals(cache.table.length - LruHashCache.SWEEP_BUCKETS,
+                cache.getNumberOfBucketsToSweep());
+        assertTrue(cache.getNumberOfEntries() > 9000);
+
+        // and enough stores reclaim all the stale entries
+        for (int i = 0; cache.getNumberOfBucketsToSweep() > 0; i++) {
+            cache.store(-2 - i % 10, i);
+        }
+        assertEquals(11, cache.getNumberOfEntries());
+        assertEquals(Integer.valueOf(-1), cache.lookUp(-1));
+    }
+
+    @Test
+    public void probeTest() {
+        LruHashCache<LongPairKey, String> cache = new LruHashCache<LongPairKey, String>(10);
+        LongPairKey.Probe probe = new LongPairKey.Probe();
+        cache.store(new LongPairKey(1, 2), "a");
+        assertEquals("a", cache.lookUp(probe.set(1, 2)));
+        assertNull(cache.lookUp(probe.set(2, 1)));
+
+        cache.store(probe.set(2, 1), "b");
+        assertEquals("b", cache.lookUp(new LongPairKey(2, 1)));
+        cache.store(probe.set(2, 1), "c");
+        assertEquals(2, cache.getNumberOfEntries());
+        assertEquals("c", cache.lookUp(probe.set(2, 1)));
+        assertEquals(3, cache.getHits());
+    }
+
+    @Test
+    public void textProbeTest() {
+        LruHashCache<IntTextKey, Integer> cache = new LruHashCache<IntTextKey, Integer>(10);
+        IntTextKey.Probe probe = new IntTextKey.Probe();
+        StringBuilder text = new StringBuilder("name");
+        cache.store(probe.set(7, text), 1);
+        text.setLength(0);
+        text.append("other");
+        assertNull(cache.lookUp(probe.set(7, text)));
+        assertEquals(Integer.valueOf(1), cache.lookUp(new IntTextKey(7, "name")));
+        text.setLength(0);
+        text.append("name");
+        assertEquals(Integer.valueOf(1), cache.lookUp(probe.set(7, text)));
+        assertEquals(new IntTextKey(7, "name").hashCode(), probe.hash());
+    }
+
+    @Test
+    public void equivalenceTest() {
+        LruHashCache<String, Integer> cache = new LruHashCache<String, Integer>(10, 0.75F,
+                Equivalence.<String>identity());
+        String a = new String("a");
+        cache.store(a, 1);
+        assertNull(cache.lookUp(new String("a")));
+        assertEquals(Integer.valueOf(1), cache.lookUp(a));
+    }
+}
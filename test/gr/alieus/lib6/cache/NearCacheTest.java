@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of NearCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class NearCacheTest {
+
+    private static final int CHECK_INTERVAL = 4;
+
+    private LruHashCache<String, Integer> backing;
+    private NearCache<String, Integer> cache;
+
+    @Before
+    public void setUp() {
+        backing = new LruHashCache<String, Integer>(100);
+        cache = new NearCache<String, Integer>(
+                CacheUtil.synchronizedCache(backing), 16, CHECK_INTERVAL);
+    }
+
+    /** Runs the given task on another thread and waits for it. */
+    private static void onOtherThread(Runnable task) throws InterruptedException {
+        Thread t = new Thread(task);
+        t.start();
+        t.join();
+    }
+
+    @Test
+    public void testRepeatedLookupsServedLocally() {
+        cache.store("a", 1);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+        }
+        // own writes keep the local cache valid, so the shared cache was never asked
+        assertEquals(0, backing.getNumberOfLookUps());
+    }
+
+    @Test
+    public void testOwnWritesVisibleImmediately() {
+        cache.store("a", 1);
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+        cache.store("a", 2);
+        assertEquals(Integer.valueOf(2), cache.lookUp("a"));
+        cache.remove("a");
+        assertNull(cache.lookUp("a"));
+    }
+
+    @Test
+    public void testOtherThreadWritesSeenWithinInterval() throws InterruptedException {
+        cache.store("a", 1);
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+
+        onOtherThread(new Runnable() {
+            @Override
+            public void run() {
+                cache.store("a", 2);
+            }
+        });
+
+        int lookups = 0;
+        while (!Integer.valueOf(2).equals(cache.lookUp("a"))) {
+            lookups++;
+            assertTrue("Stale for "+lookups+" lookups", lookups < CHECK_INTERVAL);
+        }
+    }
+
+    @Test
+    public void testInvalidateAll() throws InterruptedException {
+        cache.store("a", 1);
+        cache.lookUp("a");
+        cache.invalidateAll();
+        assertNull(cache.lookUp("a"));
+    }
+}
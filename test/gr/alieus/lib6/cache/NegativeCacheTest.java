@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of NegativeCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class NegativeCacheTest {
+
+    private long time;
+    private NegativeCache<Integer> negatives;
+
+    @Before
+    public void setUp() {
+        time = 0;
+        negatives = new NegativeCache<Integer>(64 * 1024, 10, TimeUnit.SECONDS) {
+            @Override
+            long now() {
+                return time;
+            }
+        };
+    }
+
+    @Test
+    public void testRecordAbsent_recordPresent() {
+        for (int i = 0; i < 1000; i++) {
+            negatives.recordAbsent(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(negatives.isKnownAbsent(i));
+        }
+        negatives.recordPresent(7);
+        assertFalse(negatives.isKnownAbsent(7));
+        assertTrue(negatives.getMemoryUsage() <= 64 * 1024);
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        for (int i = 0; i < 5000; i++) {
+            negatives.recordAbsent(i);
+        }
+        int falsePositives = 0;
+        for (int i = 5000; i < 105000; i++) {
+            if (negatives.isKnownAbsent(i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: "+falsePositives, falsePositives < 100);
+    }
+
+    @Test
+    public void testRotation() {
+        negatives.recordAbsent(1);
+        time += TimeUnit.SECONDS.toNanos(5);
+        negatives.recordAbsent(2);
+        assertTrue(negatives.isKnownAbsent(1));
+        assertTrue(negatives.isKnownAbsent(2));
+
+        time += TimeUnit.SECONDS.toNanos(5);
+        assertFalse(negatives.isKnownAbsent(1));
+        assertTrue(negatives.isKnownAbsent(2));
+
+        time += TimeUnit.SECONDS.toNanos(5);
+        assertFalse(negatives.isKnownAbsent(2));
+    }
+
+    @Test
+    public void testRecordAbsentTwice() {
+        negatives.recordAbsent(1);
+        negatives.recordAbsent(1);
+        negatives.recordPresent(1);
+        assertFalse(negatives.isKnownAbsent(1));
+
+        // recorded again after a rotation
+        negatives.recordAbsent(2);
+        time += TimeUnit.SECONDS.toNanos(5);
+        negatives.recordAbsent(2);
+        negatives.recordAbsent(2);
+        negatives.recordPresent(2);
+        assertFalse(negatives.isKnownAbsent(2));
+    }
+
+    @Test
+    public void testIdleGap() {
+        negatives.recordAbsent(1);
+        time += TimeUnit.SECONDS.toNanos(1000);
+        assertFalse(negatives.isKnownAbsent(1));
+
+        // a late rotation does not extend the life of the rotated keys
+        negatives.recordAbsent(2);
+        time += TimeUnit.SECONDS.toNanos(8);
+        assertTrue(negatives.isKnownAbsent(2));
+        time += TimeUnit.SECONDS.toNanos(2);
+        assertFalse(negatives.isKnownAbsent(2));
+    }
+
+    @Test
+    public void testFullFilterRotatesEarly() {
+        NegativeCache<Integer> small = new NegativeCache<Integer>(64, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 1000; i++) {
+            small.recordAbsent(i);
+            assertTrue(small.isKnownAbsent(i));
+        }
+    }
+}
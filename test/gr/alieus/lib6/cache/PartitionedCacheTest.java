@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+/**
+ * Test of PartitionedCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class PartitionedCacheTest {
+
+    @Test
+    public void burstTest() {
+        PartitionedCache<String, Integer, Integer> cache = new PartitionedCache<String, Integer, Integer>(10);
+        cache.addNamespace("a", 2, 8);
+        cache.addNamespace("b", 2, 10);
+        Cache<Integer, Integer> a = cache.namespace("a");
+        for (int i = 0; i < 20; i++) {
+            a.store(i, i);
+        }
+        // limited by its own maximum
+        assertEquals(8, cache.getNumberOfEntries("a"));
+        assertEquals(8, cache.getNumberOfEntries());
+        assertNull(a.lookUp(11));
+        assertEquals(Integer.valueOf(19), a.lookUp(19));
+        assertEquals(1, cache.getHits("a"));
+        assertEquals(1, cache.getMisses("a"));
+        assertEquals(0, cache.getHits("b"));
+    }
+
+    @Test
+    public void fairShareTest() {
+        PartitionedCache<String, Integer, Integer> cache = new PartitionedCache<String, Integer, Integer>(10);
+        cache.addNamespace("a", 2, 10);
+        cache.addNamespace("b", 2, 10);
+        Cache<Integer, Integer> a = cache.namespace("a");
+        Cache<Integer, Integer> b = cache.namespace("b");
+        for (int i = 0; i < 10; i++) {
+            a.store(i, i);
+        }
+        assertEquals(10, cache.getNumberOfEntries("a"));
+
+        // b takes space from a until both have their fair share of 5
+        for (int i = 0; i < 3; i++) {
+            b.store(i, i);
+        }
+        assertEquals(7, cache.getNumberOfEntries("a"));
+        assertEquals(3, cache.getNumberOfEntries("b"));
+        assertNull(a.lookUp(0));
+        assertEquals(Integer.valueOf(3), a.lookUp(3));
+
+        for (int i = 3; i < 20; i++) {
+            b.store(i, i);
+        }
+        assertEquals(5, cache.getNumberOfEntries("a"));
+        assertEquals(5, cache.getNumberOfEntries("b"));
+        assertEquals(10, cache.getNumberOfEntries());
+    }
+
+    @Test
+    public void minimumTest() {
+        PartitionedCache<String, Integer, Integer> cache = new PartitionedCache<String, Integer, Integer>(10);
+        cache.addNamespace("small", 3, 3);
+        cache.addNamespace("big", 0, 10);
+        Cache<Integer, Integer> small = cache.namespace("small");
+        Cache<Integer, Integer> big = cache.namespace("big");
+        for (int i = 0; i < 3; i++) {
+            small.store(i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            big.store(i, i);
+        }
+        assertEquals(3, cache.getNumberOfEntries("small"));
+        assertEquals(7, cache.getNumberOfEntries("big"));
+        assertEquals(Integer.valueOf(0), small.lookUp(0));
+
+        assertEquals(Integer.valueOf(99), big.remove(99));
+        assertEquals(9, cache.getNumberOfEntries());
+    }
+
+    @Test
+    public void illegalNamespacesTest() {
+        PartitionedCache<String, Integer, Integer> cache = new PartitionedCache<String, Integer, Integer>(10);
+        cache.addNamespace("a", 6, 10);
+        try {
+            cache.addNamespace("b", 5, 10);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            cache.addNamespace("a", 1, 10);
+            fail();
+        } catch (IllegalStateException ex) {
+        }
+        try {
+            cache.namespace("c");
+            fail();
+        } catch (NoSuchElementException ex) {
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test of SampledLruCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class SampledLruCacheTest {
+
+    @Test
+    public void store_lookUp_removeTest() {
+        SampledLruCache<Integer, String> cache = new SampledLruCache<Integer, String>(100);
+        for (int i = 0; i < 100; i++) {
+            cache.store(i, "v"+i);
+        }
+        assertEquals(100, cache.getNumberOfEntries());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v"+i, cache.lookUp(i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals("v"+i, cache.remove(i));
+        }
+        assertEquals(50, cache.getNumberOfEntries());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? null : "v"+i, cache.lookUp(i));
+        }
+    }
+
+    @Test
+    public void conditionalOperationsTest() {
+        SampledLruCache<String, Integer> cache = new SampledLruCache<String, Integer>(10);
+        assertNull(cache.storeIfAbsent("a", 1));
+        assertEquals(Integer.valueOf(1), cache.storeIfAbsent("a", 2));
+        assertFalse(cache.replace("a", 2, 3));
+        assertTrue(cache.replace("a", 1, 3));
+        assertEquals(Integer.valueOf(3), cache.lookUp("a"));
+        Computation<String, Integer> increment = new Computation<String, Integer>() {
+            @Override
+            public Integer compute(String key, Integer value) {
+                return value == null ? 1 : value + 1;
+            }
+        };
+        assertEquals(Integer.valueOf(4), cache.compute("a", increment));
+        assertEquals(Integer.valueOf(1), cache.compute("b", increment));
+    }
+
+    @Test
+    public void evictionKeepsRecentlyUsedTest() {
+        int size = 100;
+        SampledLruCache<Integer, Integer> cache = new SampledLruCache<Integer, Integer>(size);
+        for (int i = 0; i < 10 * size; i++) {
+            cache.store(i, i);
+            for (int hot = 0; hot < 5; hot++) {
+                cache.lookUp(hot);
+            }
+        }
+        assertEquals(size, cache.getNumberOfEntries());
+        for (int hot = 0; hot < 5; hot++) {
+            assertEquals(Integer.valueOf(hot), cache.lookUp(hot));
+        }
+        // the most recent entry is never the oldest of a sample
+        assertEquals(Integer.valueOf(10 * size - 1), cache.lookUp(10 * size - 1));
+    }
+
+    @Test
+    public void invalidateAllTest() {
+        SampledLruCache<Integer, Integer> cache = new SampledLruCache<Integer, Integer>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.store(i, i);
+        }
+        cache.invalidateAll();
+        assertNull(cache.lookUp(0));
+        assertNull(cache.remove(1));
+        assertFalse(cache.replace(2, 2, 3));
+        assertEquals(7, cache.getNumberOfEntries());
+
+        // stale entries are the first to go
+        for (int i = 10; i < 17; i++) {
+            cache.store(i, i);
+        }
+        cache.store(17, 17);
+        for (int i = 10; i < 18; i++) {
+            assertEquals(Integer.valueOf(i), cache.lookUp(i));
+        }
+    }
+}
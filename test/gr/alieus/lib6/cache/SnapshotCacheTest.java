@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test of SnapshotCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class SnapshotCacheTest {
+
+    @Test
+    public void cacheTest() {
+        SnapshotCache<String, Integer> cache = new SnapshotCache<String, Integer>();
+        assertNull(cache.lookUp("a"));
+        cache.store("a", 1);
+        assertEquals(Integer.valueOf(1), cache.lookUp("a"));
+        assertEquals(Integer.valueOf(1), cache.storeIfAbsent("a", 2));
+        assertNull(cache.storeIfAbsent("b", 2));
+        assertTrue(cache.replace("b", 2, 3));
+        assertFalse(cache.replace("b", 2, 4));
+        assertEquals(Integer.valueOf(3), cache.remove("b"));
+        assertNull(cache.lookUp("b"));
+        assertEquals(Integer.valueOf(2), cache.compute("a", new Computation<String, Integer>() {
+            @Override
+            public Integer compute(String key, Integer value) {
+                return value + 1;
+            }
+        }));
+        assertEquals(1, cache.getNumberOfEntries());
+        cache.invalidateAll();
+        assertNull(cache.lookUp("a"));
+        assertEquals(0, cache.getNumberOfEntries());
+    }
+
+    @Test
+    public void batchTest() {
+        SnapshotCache<Integer, Integer> cache = new SnapshotCache<Integer, Integer>();
+        Map<Integer, Integer> data = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            data.put(i, i);
+        }
+        cache.reload(data);
+        assertEquals(1000, cache.getNumberOfEntries());
+
+        SnapshotCache.Batch<Integer, Integer> batch = cache.batch();
+        for (int i = 0; i < 1000; i += 2) {
+            batch.remove(i);
+        }
+        batch.store(1, -1).store(5000, 5000);
+        assertEquals(Integer.valueOf(0), cache.lookUp(0)); // not committed yet
+        batch.commit();
+
+        assertEquals(501, cache.getNumberOfEntries());
+        assertNull(cache.lookUp(0));
+        assertEquals(Integer.valueOf(-1), cache.lookUp(1));
+        assertEquals(Integer.valueOf(3), cache.lookUp(3));
+        assertEquals(Integer.valueOf(5000), cache.lookUp(5000));
+    }
+
+    @Test
+    public void concurrentReadersTest() throws InterruptedException {
+        final SnapshotCache<Integer, Integer> cache = new SnapshotCache<Integer, Integer>();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        // every batch stores the same value in both keys
+                        Integer a = cache.lookUp(1);
+                        Integer b = cache.lookUp(2);
+                        if (a != null && b != null && a > b) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (int i = 0; i < 2000; i++) {
+            cache.batch().store(1, i).store(2, i).commit();
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, errors.get());
+        assertEquals(Integer.valueOf(1999), cache.lookUp(2));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of WriteBehindCache.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class WriteBehindCacheTest {
+
+    private InMemoryCacheWriter<String, Integer> writer;
+    private long time;
+
+    private WriteBehindCache<String, Integer> newCache(int size, int batchSize) {
+        return new WriteBehindCache<String, Integer>(size, writer, batchSize, 10, TimeUnit.SECONDS) {
+            @Override
+            long now() {
+                return time;
+            }
+        };
+    }
+
+    @Before
+    public void setUp() {
+        writer = new InMemoryCacheWriter<String, Integer>();
+        time = 0;
+    }
+
+    @Test
+    public void testCoalescing() {
+        WriteBehindCache<String, Integer> cache = newCache(10, 3);
+        cache.store("a", 1);
+        cache.store("a", 2);
+        cache.store("b", 1);
+        cache.store("a", 3);
+        assertEquals(2, cache.getNumberOfDirtyEntries());
+        assertEquals(0, writer.getNumberOfBatches());
+
+        cache.flush();
+        assertEquals(0, cache.getNumberOfDirtyEntries());
+        assertEquals(1, writer.getNumberOfBatches());
+        assertEquals(2, writer.getNumberOfWrites());
+        assertEquals(Integer.valueOf(3), writer.getStore().get("a"));
+        assertEquals(Integer.valueOf(3), cache.lookUp("a"));
+    }
+
+    @Test
+    public void testFlushBySize() {
+        WriteBehindCache<String, Integer> cache = newCache(10, 3);
+        cache.store("a", 1);
+        cache.store("b", 2);
+        assertEquals(0, writer.getNumberOfBatches());
+        cache.store("c", 3);
+        assertEquals(1, writer.getNumberOfBatches());
+        assertEquals(3, writer.getStore().size());
+        assertEquals(0, cache.getNumberOfDirtyEntries());
+    }
+
+    @Test
+    public void testFlushByAge() {
+        WriteBehindCache<String, Integer> cache = newCache(10, 100);
+        cache.store("a", 1);
+        time += TimeUnit.SECONDS.toNanos(5);
+        cache.store("b", 2);
+        assertFalse(cache.flushIfDue());
+        assertEquals(0, writer.getNumberOfBatches());
+
+        time += TimeUnit.SECONDS.toNanos(5);
+        assertTrue(cache.flushIfDue());
+        assertEquals(2, writer.getStore().size());
+        assertFalse(cache.flushIfDue());
+    }
+
+    @Test
+    public void testEvictionForcesFlush() {
+        WriteBehindCache<String, Integer> cache = newCache(2, 100);
+        cache.store("a", 1);
+        cache.store("b", 2);
+        cache.store("c", 3); // evicts "a" which is dirty
+        Map<String, Integer> store = writer.getStore();
+        assertEquals(Integer.valueOf(1), store.get("a"));
+        assertEquals(Integer.valueOf(2), store.get("b"));
+        assertNull(cache.lookUp("a"));
+        assertEquals(1, cache.getNumberOfDirtyEntries());
+    }
+
+    @Test
+    public void testFailedWriteKeepsEntriesDirty() {
+        final boolean[] fail = {true};
+        CacheWriter<String, Integer> failing = new CacheWriter<String, Integer>() {
+            @Override
+            public void writeAll(Map<? extends String, ? extends Integer> entries) {
+                if (fail[0]) {
+                    throw new IllegalStateException("store is down");
+                }
+                writer.writeAll(entries);
+            }
+        };
+        WriteBehindCache<String, Integer> cache
+            = new WriteBehindCache<String, Integer>(10, failing, 2, 1, TimeUnit.SECONDS);
+        cache.store("a", 1);
+        try {
+            cache.store("b", 2);
+            fail("Expected the writer failure");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(2, cache.getNumberOfDirtyEntries());
+
+        fail[0] = false;
+        cache.flush();
+        assertEquals(0, cache.getNumberOfDirtyEntries());
+        assertEquals(2, writer.getStore().size());
+    }
+
+    @Test
+    public void testConditionalOperationsMarkDirty() {
+        WriteBehindCache<String, Integer> cache = newCache(10, 100);
+        cache.storeIfAbsent("a", 1);
+        cache.storeIfAbsent("a", 2);
+        cache.replace("a", 1, 3);
+        cache.compute("b", new Computation<String, Integer>() {
+            @Override
+            public Integer compute(String key, Integer value) {
+                return 4;
+            }
+        });
+        assertEquals(2, cache.getNumberOfDirtyEntries());
+        cache.flush();
+        assertEquals(Integer.valueOf(3), writer.getStore().get("a"));
+        assertEquals(Integer.valueOf(4), writer.getStore().get("b"));
+    }
+
+    @Test
+    public void testRemoveForcesFlush() {
+        WriteBehindCache<String, Integer> cache = newCache(10, 100);
+        cache.store("a", 1);
+        cache.store("b", 2);
+        assertEquals(Integer.valueOf(1), cache.remove("a"));
+        assertEquals(0, cache.getNumberOfDirtyEntries());
+        assertEquals(Integer.valueOf(1), writer.getStore().get("a"));
+        assertNull(cache.lookUp("a"));
+    }
+
+    @Test
+    public void testInvalidationFlushes() {
+        WriteBehindCache<String, Integer> cache = newCache(10, 100);
+        cache.store("a", 1, "tag");
+        cache.invalidateTag("tag");
+        assertEquals(Integer.valueOf(1), writer.getStore().get("a"));
+        assertNull(cache.lookUp("a"));
+
+        cache.store("b", 2);
+        cache.invalidateAll();
+        assertEquals(Integer.valueOf(2), writer.getStore().get("b"));
+        assertNull(cache.lookUp("b"));
+    }
+}
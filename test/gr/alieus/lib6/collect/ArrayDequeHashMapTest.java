@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+import org.junit.Test;
+
+/**
+ * Test for class ArrayDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class ArrayDequeHashMapTest {
+
+    @Test
+    public void add_pop_bothEndsTest() {
+        ArrayDequeHashMap<String, Integer> dequeMap = new ArrayDequeHashMap<String, Integer>();
+        LinkedList<Integer> expected = new LinkedList<Integer>();
+
+        // enough values to wrap around and grow several times
+        for (int i = 0; i < 100; i++) {
+            if (i % 3 == 0) {
+                dequeMap.add("a", i);
+                expected.addFirst(i);
+            } else {
+                dequeMap.addLast("a", i);
+                expected.addLast(i);
+            }
+        }
+        assertEquals(expected, dequeMap.getAll("a"));
+        assertEquals(expected.getFirst(), dequeMap.get("a"));
+        assertEquals(expected.getLast(), dequeMap.getLast("a"));
+
+        while (!expected.isEmpty()) {
+            assertEquals(expected.pollFirst(), dequeMap.pop("a"));
+            if (!expected.isEmpty()) {
+                assertEquals(expected.pollLast(), dequeMap.popLast("a"));
+            }
+        }
+        assertFalse(dequeMap.containsKey("a"));
+        assertEquals(0, dequeMap.size());
+        assertNull(dequeMap.pop("a"));
+        assertNull(dequeMap.popLast("a"));
+        assertNull(dequeMap.get("a"));
+    }
+
+    @Test
+    public void indexedAccessTest() {
+        ArrayDequeHashMap<String, Integer> dequeMap = new ArrayDequeHashMap<String, Integer>();
+        List<Integer> expected = new ArrayList<Integer>();
+        List<Integer> view = dequeMap.getAll("a");
+        assertTrue(view instanceof RandomAccess);
+
+        for (int i = 0; i < 20; i++) {
+            dequeMap.add("a", -i);
+            expected.add(0, -i);
+        }
+        // inserts and removals near both ends and in the middle
+        int[] positions = {0, 1, 5, 10, 15, 19, 20};
+        for (int p : positions) {
+            view.add(p, 1000 + p);
+            expected.add(p, 1000 + p);
+            assertEquals(expected, view);
+        }
+        for (int p : positions) {
+            assertEquals(expected.remove(p), view.remove(p));
+            assertEquals(expected, view);
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), view.get(i));
+            view.set(i, i);
+            expected.set(i, i);
+        }
+        assertEquals(expected, dequeMap.getAll("a"));
+
+        try {
+            view.get(expected.size());
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            dequeMap.getAll("b").get(0);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void viewCreatesAndRemovesKeyTest() {
+        ArrayDequeHashMap<String, String> dequeMap = new ArrayDequeHashMap<String, String>();
+        List<String> view = dequeMap.getAll("a");
+
+        ListIterator<String> it = view.listIterator();
+        it.add("a1");
+        it.add("a2");
+        assertEquals(asList("a1", "a2"), dequeMap.getAll("a"));
+
+        it = view.listIterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        assertFalse(dequeMap.containsKey("a"));
+        assertTrue(view.isEmpty());
+
+        view.addAll(asList("x", "y"));
+        assertEquals(asList("x", "y"), dequeMap.getAll("a"));
+        view.clear();
+        assertFalse(dequeMap.containsKey("a"));
+    }
+
+    @Test
+    public void viewIteratorTest() {
+        ArrayDequeHashMap<String, String> dequeMap = new ArrayDequeHashMap<String, String>();
+        dequeMap.addAllLast("a", asList("1", "2", "3", "4"));
+        List<String> view = dequeMap.getAll("a");
+        assertEquals("3", view.get(2));
+
+        Iterator<String> it = view.iterator();
+        while (it.hasNext()) {
+            if (Integer.parseInt(it.next()) % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(asList("1", "3"), dequeMap.getAll("a"));
+
+        it = view.iterator();
+        it.next();
+        dequeMap.addLast("a", "5");
+        try {
+            it.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        assertFalse(dequeMap.getAll("b").iterator().hasNext());
+    }
+
+    @Test
+    public void bulkOperationsTest() {
+        ArrayDequeHashMap<String, String> dequeMap = new ArrayDequeHashMap<String, String>();
+        dequeMap.addAllLast("a", asList("3", "4"));
+        dequeMap.addAll("a", asList("1", "2"));
+        assertEquals(asList("1", "2", "3", "4"), dequeMap.getAll("a"));
+
+        assertEquals(asList("1", "2"), dequeMap.popN("a", 2));
+        assertEquals(asList("4", "3"), dequeMap.popNLast("a", 5));
+        assertFalse(dequeMap.containsKey("a"));
+        assertEquals(0, dequeMap.popN("a", 2).size());
+
+        dequeMap.setAll("a", asList("1", "2"));
+        dequeMap.set("b", "1");
+        assertEquals(asList("2", "1"), dequeMap.popAllLast("a"));
+        assertEquals(asList("1"), dequeMap.popAll("b"));
+        assertEquals(0, dequeMap.size());
+
+        dequeMap.setAll("a", new ArrayList<String>());
+        assertFalse(dequeMap.containsKey("a"));
+    }
+
+    @Test
+    public void equals_asMapTest() {
+        ArrayDequeHashMap<String, String> dequeMap = new ArrayDequeHashMap<String, String>();
+        LinkedDequeHashMap<String, String> linked = new LinkedDequeHashMap<String, String>();
+        dequeMap.setAll("a", asList("1", "2"));
+        dequeMap.set("b", "3");
+        linked.setAll("a", asList("1", "2"));
+        linked.set("b", "3");
+
+        assertEquals(linked, dequeMap);
+        assertEquals(dequeMap, linked);
+        assertEquals(linked.hashCode(), dequeMap.hashCode());
+        assertEquals(linked.asMap(), dequeMap.asMap());
+        assertEquals(asList("1", "2"), dequeMap.asMap().get("a"));
+        assertNull(dequeMap.asMap().get("c"));
+        assertEquals(2, dequeMap.asMap().size());
+
+        dequeMap.addLast("b", "4");
+        assertFalse(linked.equals(dequeMap));
+        try {
+            dequeMap.asMap().get("a").add("5");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Test for class BlockingDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class BlockingDequeHashMapTest {
+
+    @Test
+    public void pollTest() throws InterruptedException {
+        BlockingDequeHashMap<String, String> dequeMap = new BlockingDequeHashMap<String, String>();
+        assertNull(dequeMap.poll("a", 10, TimeUnit.MILLISECONDS));
+        assertNull(dequeMap.poll("a", 0, TimeUnit.MILLISECONDS));
+        assertFalse(dequeMap.containsKey("a"));
+        assertEquals(0, dequeMap.size());
+        assertTrue(dequeMap.asMap().isEmpty());
+
+        dequeMap.addAllLast("a", asList("1", "2", "3"));
+        assertEquals("1", dequeMap.poll("a", 0, TimeUnit.MILLISECONDS));
+        assertEquals("3", dequeMap.pollLast("a", 1, TimeUnit.SECONDS));
+        assertEquals("2", dequeMap.take("a"));
+        assertFalse(dequeMap.containsKey("a"));
+
+        dequeMap.addAllLast("b", asList("1", "2", "3"));
+        List<String> drained = new ArrayList<String>();
+        assertEquals(2, dequeMap.drainTo("b", drained, 2));
+        assertEquals(1, dequeMap.drainTo("b", drained, 2));
+        assertEquals(0, dequeMap.drainTo("b", drained, 2));
+        assertEquals(asList("1", "2", "3"), drained);
+    }
+
+    @Test
+    public void takeTest() throws InterruptedException {
+        final BlockingDequeHashMap<String, String> dequeMap = new BlockingDequeHashMap<String, String>();
+        final AtomicReference<String> taken = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(dequeMap.takeLast("a"));
+                } catch (InterruptedException e) {
+                    taken.set("interrupted");
+                }
+                done.countDown();
+            }
+        };
+        consumer.start();
+
+        // values of other keys do not wake up the consumer
+        dequeMap.add("b", "x");
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        // nor is the waited key visible
+        assertFalse(dequeMap.containsKey("a"));
+        assertEquals(1, dequeMap.size());
+        assertNull(dequeMap.pop("a"));
+
+        dequeMap.addAllLast("a", asList("1", "2"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("2", taken.get());
+        assertEquals(asList("1"), dequeMap.getAll("a"));
+
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    dequeMap.take("c");
+                    taken.set("taken");
+                } catch (InterruptedException e) {
+                    taken.set("interrupted");
+                }
+            }
+        };
+        waiter.start();
+        waiter.interrupt();
+        waiter.join();
+        assertEquals("interrupted", taken.get());
+        assertFalse(dequeMap.containsKey("c"));
+        assertEquals(2, dequeMap.size());
+    }
+
+    @Test
+    public void producersConsumersTest() throws InterruptedException {
+        final BlockingDequeHashMap<Integer, Integer> dequeMap = new BlockingDequeHashMap<Integer, Integer>();
+        final int keys = 3;
+        final int perKey = 5000;
+        final int consumersPerKey = 3;
+        final AtomicInteger consumed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(keys * consumersPerKey);
+
+        for (int k = 0; k < keys; k++) {
+            final int key = k;
+            for (int c = 0; c < consumersPerKey; c++) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            // the last value of a key is -1, one per consumer
+                            while (dequeMap.take(key) >= 0) {
+                                consumed.incrementAndGet();
+                            }
+                        } catch (InterruptedException e) {
+                            // test fails by count
+                        }
+                        done.countDown();
+                    }
+                }.start();
+            }
+        }
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                dequeMap.addLast(k, i);
+            }
+        }
+        for (int k = 0; k < keys; k++) {
+            for (int c = 0; c < consumersPerKey; c++) {
+                dequeMap.addLast(k, -1);
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(keys * perKey, consumed.get());
+        assertEquals(0, dequeMap.size());
+        assertTrue(dequeMap.asMap().isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Test for class ConcurrentDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class ConcurrentDequeHashMapTest {
+
+    @Test
+    public void singleThreadTest() {
+        ConcurrentDequeHashMap<String, String> dequeMap = new ConcurrentDequeHashMap<String, String>();
+        dequeMap.addLast("a", "2");
+        dequeMap.add("a", "1");
+        dequeMap.addAllLast("a", asList("3", "4"));
+        dequeMap.set("b", "x");
+        assertEquals(2, dequeMap.size());
+        assertEquals(asList("1", "2", "3", "4"), dequeMap.getAll("a"));
+        assertEquals("4", dequeMap.getLast("a"));
+
+        Map<String, List<String>> view = dequeMap.asMap();
+        List<String> copy = view.get("a");
+        assertEquals(asList("1", "2"), dequeMap.popN("a", 2));
+        assertEquals(asList("1", "2", "3", "4"), copy);
+        assertEquals(asList("3", "4"), view.get("a"));
+
+        assertEquals(asList("4", "3"), dequeMap.popAllLast("a"));
+        assertFalse(dequeMap.containsKey("a"));
+        assertNull(view.get("a"));
+        assertEquals(1, dequeMap.size());
+
+        dequeMap.getAll("c").add("y");
+        assertEquals("y", dequeMap.get("c"));
+        assertEquals("y", dequeMap.getAll("c").remove(0));
+        assertEquals(1, dequeMap.size());
+        try {
+            dequeMap.getAll("c").get(0);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        dequeMap.clear();
+        assertEquals(0, dequeMap.size());
+        assertTrue(dequeMap.asMap().isEmpty());
+    }
+
+    @Test
+    public void producersConsumersTest() throws InterruptedException {
+        final ConcurrentDequeHashMap<Integer, Long> dequeMap = new ConcurrentDequeHashMap<Integer, Long>();
+        final int keys = 4;
+        final int perProducer = 20000;
+        final int producers = 4;
+        final AtomicInteger remaining = new AtomicInteger(producers * perProducer);
+        final AtomicLong sum = new AtomicLong();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(producers * 2);
+
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        // values of a producer are increasing per key
+                        dequeMap.addLast(i % keys, (long) producer << 32 | i);
+                    }
+                    done.countDown();
+                }
+            }.start();
+            new Thread() {
+                @Override
+                public void run() {
+                    long[] last = new long[producers * keys];
+                    java.util.Arrays.fill(last, -1);
+                    int key = producer;
+                    while (remaining.get() > 0) {
+                        key = (key + 1) % keys;
+                        for (Long value : dequeMap.popN(key, 10)) {
+                            int from = (int) (value >>> 32) * keys + key;
+                            if ((value & 0xFFFFFFFFL) <= last[from]) {
+                                outOfOrder.incrementAndGet();
+                            }
+                            last[from] = value & 0xFFFFFFFFL;
+                            sum.addAndGet(value & 0xFFFFFFFFL);
+                            remaining.decrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+
+        assertEquals(0, outOfOrder.get());
+        assertEquals(producers * ((long) perProducer * (perProducer - 1) / 2), sum.get());
+        assertEquals(0, dequeMap.size());
+        assertTrue(dequeMap.asMap().isEmpty());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import gr.alieus.lib6.io.BinaryCodec;
+import gr.alieus.lib6.io.BinaryCodecs;
+import gr.alieus.lib6.io.BufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test for classes DequeMapEncoder and DequeMapDecoder.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class DequeMapEncoderTest {
+
+    /** Numbers as 4 bytes, everything else in UTF-8. */
+    private static final ValueCodecSelector<String, String> CODECS
+            = new ValueCodecSelector<String, String>() {
+        @Override
+        public BinaryCodec<String> codecOf(String key) {
+            return key.startsWith("n") ? NUMBERS : BinaryCodecs.utf8();
+        }
+    };
+
+    private static final BinaryCodec<String> NUMBERS = new BinaryCodec<String>() {
+        @Override public int sizeOf(String value) {
+            return 4;
+        }
+
+        @Override public void write(String value, ByteBuffer buffer) {
+            buffer.putInt(Integer.parseInt(value));
+        }
+
+        @Override public String read(ByteBuffer buffer, int length) {
+            return Integer.toString(buffer.getInt());
+        }
+    };
+
+    /**
+     * Gives at most 3 bytes per read and nothing every other read.
+     */
+    private static final class TrickleChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private boolean pause;
+
+        TrickleChannel(byte[] data) {
+            this.data = ByteBuffer.wrap(data);
+        }
+
+        @Override public int read(ByteBuffer dst) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            pause = !pause;
+            if (pause) {
+                return 0;
+            }
+            int n = Math.min(3, Math.min(dst.remaining(), data.remaining()));
+            for (int i = 0; i < n; i++) {
+                dst.put(data.get());
+            }
+            return n;
+        }
+
+        @Override public boolean isOpen() {
+            return true;
+        }
+
+        @Override public void close() {
+        }
+    }
+
+    @Test
+    public void incrementalTest() throws IOException {
+        DequeMap<String, String> dequeMap = sample();
+        BufferPool pool = new BufferPool(64, 4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DequeMapEncoder<String, String> encoder
+                = new DequeMapEncoder<String, String>(BinaryCodecs.utf8(), CODECS, pool);
+        long written = encoder.encode(dequeMap, Channels.newChannel(bytes));
+        assertEquals(bytes.size(), written);
+        // buffers go back to the pool, except the one of the large value
+        assertTrue(pool.getNumberOfPooledBuffers() > 0);
+
+        ArrayDequeHashMap<String, String> copy = new ArrayDequeHashMap<String, String>();
+        DequeMapDecoder<String, String> decoder = new DequeMapDecoder<String, String>(
+                BinaryCodecs.utf8(), CODECS, pool, copy);
+        TrickleChannel channel = new TrickleChannel(bytes.toByteArray());
+        int calls = 0;
+        while (!decoder.read(channel)) {
+            calls++;
+        }
+        assertTrue(calls > 10);
+        assertTrue(decoder.isDone());
+        assertEquals(dequeMap, copy);
+
+        // an incomplete deque-map
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), 20);
+        decoder = new DequeMapDecoder<String, String>(BinaryCodecs.utf8(), CODECS, pool,
+                new ArrayDequeHashMap<String, String>());
+        try {
+            decoder.read(Channels.newChannel(new ByteArrayInputStream(truncated)));
+            fail();
+        } catch (EOFException e) {
+        }
+        decoder.close();
+    }
+
+    @Test
+    public void gatheringTest() throws IOException {
+        DequeMap<String, String> dequeMap = sample();
+        BufferPool pool = new BufferPool(16, 0);
+        Pipe pipe = Pipe.open();
+        try {
+            new DequeMapEncoder<String, String>(BinaryCodecs.utf8(), CODECS, pool)
+                    .encode(dequeMap, pipe.sink());
+            pipe.source().configureBlocking(false);
+            LinkedDequeHashMap<String, String> copy = new LinkedDequeHashMap<String, String>();
+            assertTrue(new DequeMapDecoder<String, String>(BinaryCodecs.utf8(), CODECS, pool, copy)
+                    .read(pipe.source()));
+            assertEquals(dequeMap, copy);
+
+            // an empty deque-map
+            new DequeMapEncoder<String, String>(BinaryCodecs.utf8(), BinaryCodecs.utf8(), pool)
+                    .encode(new ArrayDequeHashMap<String, String>(), pipe.sink());
+            assertTrue(new DequeMapDecoder<String, String>(BinaryCodecs.utf8(), BinaryCodecs.utf8(),
+                    pool, copy).read(pipe.source()));
+            assertEquals(dequeMap, copy);
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    @Test
+    public void maxRecordSizeTest() throws IOException {
+        BufferPool pool = new BufferPool(64, 4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DequeMapEncoder<String, String>(BinaryCodecs.utf8(), CODECS, pool)
+                .encode(sample(), Channels.newChannel(bytes));
+        DequeMapDecoder<String, String> decoder = new DequeMapDecoder<String, String>(
+                BinaryCodecs.utf8(), CODECS, pool, new ArrayDequeHashMap<String, String>(), 100);
+        try {
+            decoder.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+            fail();
+        } catch (StreamCorruptedException e) {
+            // the large value
+        }
+        decoder.close();
+
+        // one key of Integer.MAX_VALUE bytes
+        byte[] corrupt = {0, 0, 0, 1, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        decoder = new DequeMapDecoder<String, String>(BinaryCodecs.utf8(), BinaryCodecs.utf8(),
+                pool, new ArrayDequeHashMap<String, String>());
+        try {
+            decoder.read(Channels.newChannel(new ByteArrayInputStream(corrupt)));
+            fail();
+        } catch (StreamCorruptedException e) {
+            // expected
+        }
+        decoder.close();
+    }
+
+    private static DequeMap<String, String> sample() {
+        DequeMap<String, String> dequeMap = new ArrayDequeHashMap<String, String>();
+        dequeMap.addAllLast("numbers", asList("1", "-2", "300000"));
+        dequeMap.addAllLast("words", asList("a", "", "\u03b1\u03b2\u03b3"));
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append("large value ");
+        }
+        dequeMap.addAllLast("large", asList("x", large.toString(), "y"));
+        for (int i = 0; i < 50; i++) {
+            dequeMap.addLast("key "+i, "value "+i);
+        }
+        return dequeMap;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import gr.alieus.lib6.collect.DurableDequeHashMap.SyncPolicy;
+import gr.alieus.lib6.io.BinaryCodec;
+import gr.alieus.lib6.io.BinaryCodecs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for class DurableDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class DurableDequeHashMapTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("durable", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void recoveryTest() throws IOException {
+        DurableDequeHashMap<String, String> dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        dequeMap.addLast("a", "2");
+        dequeMap.add("a", "1");
+        dequeMap.addAllLast("a", asList("3", "4", "5"));
+        dequeMap.addAll("b", asList("x", "y", "z"));
+        List<String> a = dequeMap.getAll("a");
+        a.add(2, "2.5");
+        a.set(0, "one");
+        a.remove(3);
+        assertEquals("5", dequeMap.popLast("a"));
+        assertEquals(asList("x", "y"), dequeMap.popN("b", 2));
+        dequeMap.setAll("c", asList("c1", "c2"));
+        dequeMap.clearKey("c");
+        dequeMap.set("d", "d1");
+        assertEquals(asList("one", "2", "2.5", "4"), dequeMap.getAll("a"));
+
+        // not closed, as after a crash
+        DurableDequeHashMap<String, String> recovered = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        assertEquals(dequeMap, recovered);
+        assertEquals(3, recovered.size());
+        recovered.close();
+        dequeMap.close();
+        try {
+            dequeMap.add("a", "0");
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void batchedTest() throws IOException {
+        DurableDequeHashMap<String, String> dequeMap = new DurableDequeHashMap<String, String>(
+                directory, BinaryCodecs.utf8(), BinaryCodecs.utf8(), SyncPolicy.BATCHED,
+                1000000, 1 << 20, 8);
+        dequeMap.addLast("a", "1");
+        dequeMap.addLast("a", "2");
+        DurableDequeHashMap<String, String> recovered = open(SyncPolicy.OS, 1 << 20, 8);
+        assertEquals(0, recovered.size());
+        recovered.close();
+
+        dequeMap.sync();
+        recovered = open(SyncPolicy.OS, 1 << 20, 8);
+        assertEquals(asList("1", "2"), recovered.getAll("a"));
+        recovered.close();
+        dequeMap.close();
+    }
+
+    @Test
+    public void checkpointTest() throws IOException {
+        DurableDequeHashMap<Integer, String> dequeMap = new DurableDequeHashMap<Integer, String>(
+                directory, new IntCodec(), BinaryCodecs.utf8(), SyncPolicy.OS, 0, 512, 2);
+        LinkedDequeHashMap<Integer, String> expected = new LinkedDequeHashMap<Integer, String>();
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            Integer key = random.nextInt(10);
+            String value = Integer.toString(i);
+            switch (random.nextInt(4)) {
+            case 0:
+                dequeMap.add(key, value);
+                expected.add(key, value);
+                break;
+            case 1:
+                dequeMap.addLast(key, value);
+                expected.addLast(key, value);
+                break;
+            case 2:
+                assertEquals(expected.pop(key), dequeMap.pop(key));
+                break;
+            default:
+                assertEquals(expected.popNLast(key, 2), dequeMap.popNLast(key, 2));
+            }
+            // a checkpoint, the segments after it and the current segment
+            assertTrue(directory.list().length <= 4);
+        }
+        dequeMap.close();
+
+        dequeMap = new DurableDequeHashMap<Integer, String>(
+                directory, new IntCodec(), BinaryCodecs.utf8(), SyncPolicy.OS, 0, 512, 2);
+        assertEquals(expected, dequeMap);
+        dequeMap.clear();
+        dequeMap.checkpoint();
+        dequeMap.close();
+        assertEquals(2, directory.list().length);
+        dequeMap = new DurableDequeHashMap<Integer, String>(
+                directory, new IntCodec(), BinaryCodecs.utf8(), SyncPolicy.OS, 0, 512, 2);
+        assertEquals(0, dequeMap.size());
+        dequeMap.close();
+    }
+
+    @Test
+    public void tornRecordTest() throws IOException {
+        DurableDequeHashMap<String, String> dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        dequeMap.addAllLast("a", asList("1", "2", "3"));
+        dequeMap.pop("a");
+        dequeMap.close();
+
+        // half of a record
+        FileOutputStream out = new FileOutputStream(new File(directory, "0000000000000000.log"), true);
+        out.write(new byte[] {0, 0, 0, 20, 1, 2, 3, 4, 2, 0});
+        out.close();
+
+        dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        assertEquals(asList("2", "3"), dequeMap.getAll("a"));
+        dequeMap.addLast("a", "4");
+        dequeMap.close();
+        dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        assertEquals(asList("2", "3", "4"), dequeMap.getAll("a"));
+        dequeMap.close();
+    }
+
+    @Test
+    public void setAllTest() throws IOException {
+        DurableDequeHashMap<String, String> dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        dequeMap.addAllLast("a", asList("1", "2"));
+        File log = new File(directory, "0000000000000000.log");
+        long length = log.length();
+        dequeMap.setAll("a", asList("3", "4"));
+        dequeMap.close();
+
+        // a set torn by a crash keeps the old values
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(length + 12);
+        file.close();
+        dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        assertEquals(asList("1", "2"), dequeMap.getAll("a"));
+        dequeMap.set("a", "5");
+        dequeMap.setAll("b", asList("6"));
+        dequeMap.setAll("b", asList(new String[0]));
+        dequeMap.close();
+        dequeMap = open(SyncPolicy.EVERY_OPERATION, 1 << 20, 8);
+        assertEquals(asList("5"), dequeMap.getAll("a"));
+        assertEquals(1, dequeMap.size());
+        dequeMap.close();
+    }
+
+    @Test
+    public void mapWindowTest() throws IOException {
+        // records larger than the window and records across windows
+        DurableDequeHashMap<String, String> dequeMap = open(SyncPolicy.OS, 1 << 20, 8);
+        LinkedDequeHashMap<String, String> expected = new LinkedDequeHashMap<String, String>();
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            String key = Integer.toString(random.nextInt(5));
+            String value = new String(new char[random.nextInt(100)]).replace('\0', 'x');
+            dequeMap.addLast(key, value);
+            expected.addLast(key, value);
+        }
+        dequeMap.close();
+        dequeMap = new DurableDequeHashMap<String, String>(directory, BinaryCodecs.utf8(),
+                BinaryCodecs.utf8(), SyncPolicy.OS, 10, 1 << 20, 8, 64);
+        assertEquals(expected, dequeMap);
+        dequeMap.checkpoint();
+        dequeMap.close();
+        dequeMap = new DurableDequeHashMap<String, String>(directory, BinaryCodecs.utf8(),
+                BinaryCodecs.utf8(), SyncPolicy.OS, 10, 1 << 20, 8, 64);
+        assertEquals(expected, dequeMap);
+        dequeMap.close();
+    }
+
+    @Test
+    public void failedEncodeTest() throws IOException {
+        BinaryCodec<String> values = new BinaryCodec<String>() {
+            @Override public int sizeOf(String value) {
+                return BinaryCodecs.utf8().sizeOf(value);
+            }
+
+            @Override public void write(String value, ByteBuffer out) {
+                if (value.equals("bad")) {
+                    out.put((byte) 0);
+                    throw new IllegalArgumentException(value);
+                }
+                BinaryCodecs.utf8().write(value, out);
+            }
+
+            @Override public String read(ByteBuffer in, int length) {
+                return BinaryCodecs.utf8().read(in, length);
+            }
+        };
+        DurableDequeHashMap<String, String> dequeMap = new DurableDequeHashMap<String, String>(
+                directory, BinaryCodecs.utf8(), values, SyncPolicy.BATCHED, 10, 1 << 20, 8);
+        dequeMap.addLast("a", "1");
+        try {
+            dequeMap.addAllLast("a", asList("2", "bad"));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            dequeMap.addLast("a", null);
+            fail();
+        } catch (NullPointerException ex) {
+        }
+        try {
+            dequeMap.getAll("a").set(0, "bad");
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        // the failed changes are neither in memory nor in the log
+        assertEquals(asList("1"), dequeMap.getAll("a"));
+        dequeMap.addLast("a", "3");
+        dequeMap.close();
+        dequeMap = new DurableDequeHashMap<String, String>(
+                directory, BinaryCodecs.utf8(), values, SyncPolicy.BATCHED, 10, 1 << 20, 8);
+        assertEquals(asList("1", "3"), dequeMap.getAll("a"));
+        dequeMap.close();
+    }
+
+    private DurableDequeHashMap<String, String> open(SyncPolicy policy, long segmentSize,
+            int segmentsPerCheckpoint) throws IOException {
+        return new DurableDequeHashMap<String, String>(directory, BinaryCodecs.utf8(),
+                BinaryCodecs.utf8(), policy, 10, segmentSize, segmentsPerCheckpoint);
+    }
+
+    private static class IntCodec implements BinaryCodec<Integer> {
+        @Override public int sizeOf(Integer value) {
+            return 4;
+        }
+
+        @Override public void write(Integer value, ByteBuffer out) {
+            out.putInt(value);
+        }
+
+        @Override public Integer read(ByteBuffer in, int length) {
+            return in.getInt();
+        }
+    }
+}
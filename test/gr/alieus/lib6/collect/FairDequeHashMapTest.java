@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for class FairDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class FairDequeHashMapTest {
+
+    @Test
+    public void popAnyTest() {
+        FairDequeHashMap<String, String> dequeMap = new FairDequeHashMap<String, String>();
+        assertNull(dequeMap.popAny());
+        assertNull(dequeMap.peekAnyKey());
+
+        dequeMap.addAllLast("a", asList("a1", "a2", "a3"));
+        dequeMap.addAllLast("b", asList("b1"));
+        dequeMap.addAllLast("c", asList("c1", "c2"));
+
+        List<String> popped = new ArrayList<String>();
+        popped.add(dequeMap.popAny());
+        popped.add(dequeMap.popAny());
+        // d joins the ring right before c, the current key
+        dequeMap.addLast("d", "d1");
+        assertEquals("c", dequeMap.peekAnyKey());
+        String value;
+        while ((value = dequeMap.popAny()) != null) {
+            popped.add(value);
+        }
+        assertEquals(asList("a1", "b1", "c1", "a2", "d1", "c2", "a3"), popped);
+        assertEquals(0, dequeMap.size());
+
+        // keys emptied by other operations leave the ring
+        dequeMap.addLast("a", "a1");
+        dequeMap.addLast("b", "b1");
+        dequeMap.addLast("c", "c1");
+        assertEquals("a1", dequeMap.pop("a"));
+        dequeMap.clearKey("c");
+        assertEquals("b", dequeMap.peekAnyKey());
+        assertEquals("b1", dequeMap.popAny());
+        assertNull(dequeMap.popAny());
+    }
+
+    @Test
+    public void popOldestTest() {
+        FairDequeHashMap<String, String> dequeMap = new FairDequeHashMap<String, String>();
+        dequeMap.addLast("a", "1");
+        dequeMap.add("b", "2");
+        dequeMap.add("a", "3");
+        dequeMap.getAll("b").add(1, "4");
+        dequeMap.addLast("c", "5");
+        assertEquals(asList("3", "1"), dequeMap.getAll("a"));
+
+        assertEquals("a", dequeMap.peekOldestKey());
+        assertEquals("1", dequeMap.popOldest());
+        assertEquals("4", dequeMap.popLast("b"));
+        assertEquals("2", dequeMap.popOldest());
+        assertEquals("3", dequeMap.popOldest());
+        assertEquals("5", dequeMap.popOldest());
+        assertNull(dequeMap.popOldest());
+        assertEquals(0, dequeMap.size());
+    }
+
+    @Test
+    public void withoutGlobalOrderTest() {
+        FairDequeHashMap<String, String> dequeMap = new FairDequeHashMap<String, String>(false);
+        dequeMap.addAllLast("a", asList("1", "2"));
+        assertEquals(asList("1", "2"), dequeMap.popAll("a"));
+        try {
+            dequeMap.popOldest();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void viewIteratorTest() {
+        // drive an iterator of a view and of a list with the same operations
+        FairDequeHashMap<String, Integer> dequeMap = new FairDequeHashMap<String, Integer>();
+        List<Integer> expected = new LinkedList<Integer>();
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            int index = random.nextInt(expected.size() + 1);
+            ListIterator<Integer> it = dequeMap.getAll("a").listIterator(index);
+            ListIterator<Integer> expectedIt = expected.listIterator(index);
+            boolean canModify = false;
+            for (int step = 0; step < 20; step++) {
+                int value = random.nextInt(100);
+                switch (random.nextInt(6)) {
+                case 0:
+                    assertEquals(expectedIt.hasNext(), it.hasNext());
+                    if (it.hasNext()) {
+                        assertEquals(expectedIt.next(), it.next());
+                        canModify = true;
+                    }
+                    break;
+                case 1:
+                    assertEquals(expectedIt.hasPrevious(), it.hasPrevious());
+                    if (it.hasPrevious()) {
+                        assertEquals(expectedIt.previous(), it.previous());
+                        canModify = true;
+                    }
+                    break;
+                case 2:
+                    if (canModify) {
+                        expectedIt.remove();
+                        it.remove();
+                        canModify = false;
+                    }
+                    break;
+                case 3:
+                    if (canModify) {
+                        expectedIt.set(value);
+                        it.set(value);
+                    }
+                    break;
+                default:
+                    expectedIt.add(value);
+                    it.add(value);
+                    canModify = false;
+                }
+                assertEquals(expectedIt.nextIndex(), it.nextIndex());
+            }
+            assertEquals(expected, dequeMap.getAll("a"));
+            assertEquals(expected.isEmpty(), !dequeMap.containsKey("a"));
+            assertEquals(expected.isEmpty() ? null : "a", dequeMap.peekAnyKey());
+        }
+
+        Iterator<Integer> it = dequeMap.getAll("a").iterator();
+        dequeMap.addLast("a", 1);
+        try {
+            it.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+}
@@ -19,6 +19,11 @@ package gr.alieus.lib6.collect;
 import static org.junit.Assert.*;
 import static java.util.Arrays.asList;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -300,5 +305,113 @@ public class LinkedDequeHashMapTest {
         assertEquals(expected, dequeMap);
     }
     
-   
+    @Test
+    public void singleValueTest() {
+        LinkedDequeHashMap<String, Object> dequeMap = new LinkedDequeHashMap<String, Object>();
+        
+        // a key goes from one value to two and back
+        dequeMap.add("a", "1");
+        assertEquals(1, dequeMap.countOf("a"));
+        assertEquals(asList("1"), dequeMap.getAll("a"));
+        dequeMap.addLast("a", "2");
+        assertEquals(asList("1", "2"), dequeMap.getAll("a"));
+        assertEquals("1", dequeMap.pop("a"));
+        assertEquals(asList("2"), dequeMap.getAll("a"));
+        assertEquals("2", dequeMap.getLast("a"));
+        dequeMap.getAll("a").set(0, "3");
+        assertEquals("3", dequeMap.get("a"));
+        dequeMap.getAll("a").add(1, "4");
+        assertEquals(asList("4"), dequeMap.popNLast("a", 1));
+        assertEquals(asList("3"), dequeMap.popN("a", 5));
+        assertFalse(dequeMap.containsKey("a"));
+        
+        // null values and lists as values
+        List<String> list = new java.util.LinkedList<String>(asList("x"));
+        dequeMap.set("b", null);
+        dequeMap.set("c", list);
+        assertTrue(dequeMap.containsKey("b"));
+        assertEquals(1, dequeMap.countOf("b"));
+        assertNull(dequeMap.pop("b"));
+        assertFalse(dequeMap.containsKey("b"));
+        assertSame(list, dequeMap.get("c"));
+        assertEquals(asList(list), dequeMap.asMap().get("c"));
+        dequeMap.addLast("c", "y");
+        assertSame(list, dequeMap.pop("c"));
+        assertEquals("y", dequeMap.get("c"));
+        
+        // views over single values
+        assertTrue(dequeMap.getAll("c").remove("y"));
+        assertFalse(dequeMap.containsKey("c"));
+        dequeMap.set("d", "1");
+        assertFalse(dequeMap.getAll("d").retainAll(asList("1")));
+        assertTrue(dequeMap.getAll("d").removeAll(asList("1")));
+        assertEquals(0, dequeMap.size());
+        dequeMap.set("e", "1");
+        assertEquals("{e=[1]}", dequeMap.toString());
+        java.util.ListIterator<Object> it = dequeMap.getAll("e").listIterator();
+        it.next();
+        it.add("2");
+        assertEquals(asList("1", "2"), dequeMap.getAll("e"));
+        
+        // iterating a single value keeps it inline
+        dequeMap.set("f", "1");
+        assertEquals(asList("1"), dequeMap.getAll("f"));
+        assertEquals("1", dequeMap.data.get("f"));
+        it = dequeMap.getAll("f").listIterator();
+        assertEquals("1", it.next());
+        assertEquals("1", it.previous());
+        it.set("2");
+        assertEquals(asList("2"), dequeMap.getAll("f"));
+        it.next();
+        it.remove();
+        assertFalse(dequeMap.containsKey("f"));
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serializationTest() throws Exception {
+        LinkedDequeHashMap<String, Object> dequeMap = new LinkedDequeHashMap<String, Object>();
+        dequeMap.addAllLast("a", asList("1", "2", "3"));
+        dequeMap.set("b", "single");
+        dequeMap.set("c", null);
+        dequeMap.set("d", new java.util.LinkedList<String>(asList("x")));
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(dequeMap);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LinkedDequeHashMap<String, Object> copy = (LinkedDequeHashMap<String, Object>) in.readObject();
+        
+        assertEquals(dequeMap, copy);
+        assertEquals(asList("1", "2", "3"), copy.getAll("a"));
+        assertEquals(1, copy.countOf("c"));
+        assertEquals(asList(asList("x")), copy.asMap().get("d"));
+        copy.addLast("b", "more");
+        assertEquals(asList("single", "more"), copy.getAll("b"));
+        assertEquals(4, copy.asMap().size());
+    }
+    
+    @Test
+    public void serializedKeyCountTest() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new LinkedDequeHashMap<String, String>());
+        out.close();
+        
+        // claim Integer.MAX_VALUE keys, the last int before the end of block data
+        byte[] data = bytes.toByteArray();
+        assertEquals(0x78, data[data.length - 1]);
+        data[data.length - 5] = 0x7f;
+        data[data.length - 4] = (byte) 0xff;
+        data[data.length - 3] = (byte) 0xff;
+        data[data.length - 2] = (byte) 0xff;
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            in.readObject();
+            fail();
+        } catch (IOException e) {
+            // expected: the stream ends, without making room for the keys
+        }
+    }
 }
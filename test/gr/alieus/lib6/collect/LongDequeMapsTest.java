@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.RandomAccess;
+
+import org.junit.Test;
+
+/**
+ * Test for classes LongLongDequeMap and LongObjectDequeMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class LongDequeMapsTest {
+
+    @Test
+    public void longLongTest() {
+        LongLongDequeMap dequeMap = new LongLongDequeMap(2);
+        LinkedDequeHashMap<Long, Long> expected = new LinkedDequeHashMap<Long, Long>();
+        Random random = new Random(11);
+        long[] buffer = new long[8];
+
+        for (int step = 0; step < 20000; step++) {
+            long key = random.nextInt(50) * 0x100000000L;
+            long value = random.nextLong();
+            switch (random.nextInt(7)) {
+            case 0:
+                dequeMap.add(key, value);
+                expected.add(key, value);
+                break;
+            case 1:
+            case 2:
+                dequeMap.addLast(key, value);
+                expected.addLast(key, value);
+                break;
+            case 3:
+                if (expected.containsKey(key)) {
+                    assertEquals(expected.pop(key).longValue(), dequeMap.pop(key));
+                }
+                break;
+            case 4:
+                if (expected.containsKey(key)) {
+                    assertEquals(expected.popLast(key).longValue(), dequeMap.popLast(key));
+                }
+                break;
+            case 5:
+                int n = dequeMap.popN(key, buffer, 1, 3);
+                List<Long> popped = expected.popN(key, 3);
+                assertEquals(popped.size(), n);
+                for (int i = 0; i < n; i++) {
+                    assertEquals(popped.get(i).longValue(), buffer[1 + i]);
+                }
+                break;
+            default:
+                n = dequeMap.popNLast(key, buffer, 0, 2);
+                popped = expected.popNLast(key, 2);
+                assertEquals(popped.size(), n);
+                for (int i = 0; i < n; i++) {
+                    assertEquals(popped.get(i).longValue(), buffer[i]);
+                }
+            }
+            assertEquals(expected.countOf(key), dequeMap.countOf(key));
+        }
+        assertEquals(expected.size(), dequeMap.size());
+
+        // cursors visit every key and value
+        LongLongDequeMap.KeyCursor keys = dequeMap.keys();
+        LongLongDequeMap.ValueCursor values = dequeMap.values(-1);
+        assertFalse(values.next());
+        int keyCount = 0;
+        while (keys.next()) {
+            keyCount++;
+            List<Long> expectedValues = expected.getAll(keys.key());
+            assertEquals(expectedValues.size(), keys.count());
+            values.reset(keys.key());
+            for (Long v : expectedValues) {
+                assertTrue(values.next());
+                assertEquals(v.longValue(), values.value());
+            }
+            assertFalse(values.next());
+            assertEquals(expectedValues.get(expectedValues.size() - 1).longValue(),
+                    dequeMap.getLast(keys.key()));
+            assertEquals(expectedValues.get(0).longValue(), dequeMap.get(keys.key(), 0));
+        }
+        assertEquals(expected.size(), keyCount);
+    }
+
+    @Test
+    public void longLongEdgesTest() {
+        LongLongDequeMap dequeMap = new LongLongDequeMap();
+        try {
+            dequeMap.pop(1);
+            fail();
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        dequeMap.addAllLast(1, new long[] {5, 6, 7, 8, 9, 10}, 1, 4);
+        assertEquals(4, dequeMap.countOf(1));
+        assertEquals(6, dequeMap.get(1));
+        assertEquals(9, dequeMap.getLast(1));
+        dequeMap.set(1, 3);
+        assertEquals(1, dequeMap.countOf(1));
+        assertEquals(3, dequeMap.get(1));
+        try {
+            dequeMap.get(1, 1);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        dequeMap.clearKey(1);
+        assertFalse(dequeMap.containsKey(1));
+        assertEquals(0, dequeMap.size());
+    }
+
+    @Test
+    public void longObjectTest() {
+        LongObjectDequeMap<String> dequeMap = new LongObjectDequeMap<String>(1);
+        LinkedDequeHashMap<Long, String> expected = new LinkedDequeHashMap<Long, String>();
+        for (long key = 0; key < 100; key++) {
+            for (int i = 0; i < key % 7; i++) {
+                dequeMap.addLast(key, key+"-"+i);
+                expected.addLast(key, key+"-"+i);
+            }
+        }
+        assertEquals(expected, dequeMap);
+        assertEquals(expected.hashCode(), dequeMap.hashCode());
+
+        List<String> view = dequeMap.getAll(5L);
+        assertTrue(view instanceof RandomAccess);
+        view.add(2, "x");
+        view.add(4, "y");
+        assertEquals(asList("5-0", "5-1", "x", "5-2", "y", "5-3", "5-4"), view);
+        assertEquals("x", view.remove(2));
+        assertEquals("y", view.remove(3));
+        assertEquals(expected.getAll(5L), view);
+
+        assertEquals("6-0", dequeMap.pop(6));
+        assertEquals("6-5", dequeMap.popLast(Long.valueOf(6)));
+        assertEquals(4, dequeMap.countOf(6));
+        dequeMap.set(6, "z");
+        assertEquals(asList("z"), dequeMap.getAll(6L));
+        assertNull(dequeMap.get(7));
+        assertNull(dequeMap.pop(7));
+
+        LongObjectDequeMap<String>.ValueCursor values = dequeMap.values(6);
+        assertTrue(values.next());
+        assertEquals("z", values.value());
+        assertFalse(values.next());
+
+        dequeMap.clear();
+        assertEquals(0, dequeMap.size());
+        assertFalse(dequeMap.keys().next());
+    }
+}
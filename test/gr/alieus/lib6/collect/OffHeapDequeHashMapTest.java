@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import gr.alieus.lib6.io.BinaryCodec;
+import gr.alieus.lib6.io.BinaryCodecs;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for class OffHeapDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class OffHeapDequeHashMapTest {
+
+    @Test
+    public void bothEndsTest() {
+        OffHeapDequeHashMap<String, String> dequeMap
+                = new OffHeapDequeHashMap<String, String>(BinaryCodecs.utf8(), 32, 4);
+        dequeMap.addLast("a", "2");
+        dequeMap.add("a", "1");
+        dequeMap.addLast("a", "three");
+        dequeMap.add("a", "");
+        dequeMap.addAllLast("b", asList("x", "y"));
+        assertEquals(asList("", "1", "2", "three"), dequeMap.getAll("a"));
+        assertEquals(4, dequeMap.countOf("a"));
+        assertEquals("", dequeMap.get("a"));
+        assertEquals("three", dequeMap.getLast("a"));
+        assertEquals("2", dequeMap.getAll("a").get(2));
+        assertEquals(2, dequeMap.size());
+
+        assertEquals("three", dequeMap.popLast("a"));
+        assertEquals("", dequeMap.pop("a"));
+        assertEquals("1", dequeMap.pop("a"));
+        assertEquals("2", dequeMap.popLast("a"));
+        assertFalse(dequeMap.containsKey("a"));
+        assertNull(dequeMap.pop("a"));
+        assertEquals(1, dequeMap.getNumberOfUsedChunks());
+
+        dequeMap.getAll("b").add(0, "w");
+        dequeMap.getAll("b").add("z");
+        assertEquals(asList("w", "x", "y", "z"), dequeMap.getAll("b"));
+        try {
+            dequeMap.getAll("b").add(1, "v");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        dequeMap.clearKey("b");
+        assertEquals(0, dequeMap.getNumberOfUsedChunks());
+    }
+
+    @Test
+    public void chunksTest() {
+        // 10 records of 8 + 4 bytes per chunk
+        OffHeapDequeHashMap<String, String> dequeMap
+                = new OffHeapDequeHashMap<String, String>(BinaryCodecs.utf8(), 120, 2);
+        for (int i = 0; i < 45; i++) {
+            dequeMap.addLast("k", String.format("%04d", i));
+        }
+        for (int i = 0; i < 15; i++) {
+            dequeMap.add("k", String.format("%04d", -i - 1));
+        }
+        assertEquals(60, dequeMap.countOf("k"));
+        assertEquals(7, dequeMap.getNumberOfUsedChunks());
+        assertEquals(4 * 2 * 120, dequeMap.getAllocatedBytes());
+        List<String> all = new ArrayList<String>(dequeMap.getAll("k"));
+        assertEquals("-015", all.get(0));
+        assertEquals("0044", all.get(59));
+        assertEquals("0000", dequeMap.getAll("k").get(15));
+
+        for (int i = 0; i < 30; i++) {
+            dequeMap.pop("k");
+        }
+        assertEquals(4, dequeMap.getNumberOfUsedChunks());
+
+        // freed chunks are reused before allocating
+        for (int i = 0; i < 30; i++) {
+            dequeMap.addLast("j", "abcd");
+        }
+        assertEquals(7, dequeMap.getNumberOfUsedChunks());
+        assertEquals(4 * 2 * 120, dequeMap.getAllocatedBytes());
+
+        try {
+            dequeMap.addLast("k", new String(new char[113]));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        dequeMap.clear();
+        assertEquals(0, dequeMap.size());
+        assertEquals(0, dequeMap.getNumberOfUsedChunks());
+    }
+
+    @Test
+    public void randomTest() {
+        OffHeapDequeHashMap<Integer, String> dequeMap
+                = new OffHeapDequeHashMap<Integer, String>(BinaryCodecs.utf8(), 64, 8);
+        LinkedDequeHashMap<Integer, String> expected = new LinkedDequeHashMap<Integer, String>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            Integer key = random.nextInt(20);
+            String value = Integer.toString(random.nextInt(1 << random.nextInt(30)));
+            switch (random.nextInt(5)) {
+            case 0:
+                dequeMap.add(key, value);
+                expected.add(key, value);
+                break;
+            case 1:
+                dequeMap.addLast(key, value);
+                expected.addLast(key, value);
+                break;
+            case 2:
+                assertEquals(expected.pop(key), dequeMap.pop(key));
+                break;
+            case 3:
+                assertEquals(expected.popLast(key), dequeMap.popLast(key));
+                break;
+            default:
+                assertEquals(expected.getAll(key), dequeMap.getAll(key));
+            }
+        }
+        assertEquals(expected, dequeMap);
+        assertEquals(expected.hashCode(), dequeMap.hashCode());
+    }
+
+    @Test
+    public void failedWriteTest() {
+        // a codec that writes one byte more than it declares for "bad"
+        final BinaryCodec<String> utf8 = BinaryCodecs.utf8();
+        BinaryCodec<String> codec = new BinaryCodec<String>() {
+            @Override
+            public int sizeOf(String value) {
+                return utf8.sizeOf(value) - (value.equals("bad") ? 1 : 0);
+            }
+
+            @Override
+            public void write(String value, ByteBuffer buffer) {
+                utf8.write(value, buffer);
+            }
+
+            @Override
+            public String read(ByteBuffer buffer, int length) {
+                return utf8.read(buffer, length);
+            }
+        };
+        OffHeapDequeHashMap<String, String> dequeMap
+                = new OffHeapDequeHashMap<String, String>(codec, 32, 4);
+        dequeMap.addAllLast("a", asList("1", "2"));
+        for (int i = 0; i < 4; i++) {
+            try {
+                if (i % 2 == 0) {
+                    dequeMap.add(i < 2 ? "a" : "b", "bad");
+                } else {
+                    dequeMap.addLast(i < 2 ? "a" : "b", "bad");
+                }
+                fail();
+            } catch (BufferOverflowException e) {
+                // expected
+            }
+        }
+        assertEquals(asList("1", "2"), dequeMap.getAll("a"));
+        assertFalse(dequeMap.containsKey("b"));
+        assertEquals(1, dequeMap.getNumberOfUsedChunks());
+        dequeMap.add("a", "0");
+        dequeMap.addLast("a", "3");
+        assertEquals(asList("0", "1", "2", "3"), dequeMap.getAll("a"));
+    }
+}
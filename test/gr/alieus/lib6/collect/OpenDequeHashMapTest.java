@@ -0,0 +1,225 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.collect;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for class OpenDequeHashMap.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class OpenDequeHashMapTest {
+
+    /** Key with a chosen hash code, to force collisions. */
+    static final class Key {
+        final int id;
+        final int hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return "k"+id;
+        }
+    }
+
+    @Test
+    public void basicTest() {
+        OpenDequeHashMap<String, String> dequeMap = new OpenDequeHashMap<String, String>();
+        dequeMap.add("a", "2");
+        dequeMap.add("a", "1");
+        dequeMap.addLast("a", "3");
+        dequeMap.addAll("a", asList("x", "y"));
+        dequeMap.addAllLast("b", asList("z"));
+        assertEquals(asList("x", "y", "1", "2", "3"), dequeMap.getAll("a"));
+        assertEquals(2, dequeMap.size());
+        assertEquals("x", dequeMap.get("a"));
+        assertEquals("3", dequeMap.getLast("a"));
+
+        dequeMap.getAll("a").add(2, "m");
+        assertEquals("m", dequeMap.getAll("a").remove(2));
+        assertEquals(asList("x", "y"), dequeMap.popN("a", 2));
+        assertEquals(asList("3", "2", "1"), dequeMap.popNLast("a", 10));
+        assertFalse(dequeMap.containsKey("a"));
+        assertEquals(1, dequeMap.size());
+
+        dequeMap.set(null, "n");
+        assertTrue(dequeMap.containsKey(null));
+        assertEquals("n", dequeMap.asMap().get(null).get(0));
+        assertEquals("n", dequeMap.pop(null));
+        assertFalse(dequeMap.containsKey(null));
+
+        dequeMap.clear();
+        assertEquals(0, dequeMap.size());
+        assertNull(dequeMap.pop("b"));
+    }
+
+    @Test
+    public void collisionsTest() {
+        // remove keys from the middle of runs of colliding keys
+        OpenDequeHashMap<Key, Integer> dequeMap = new OpenDequeHashMap<Key, Integer>(4);
+        LinkedDequeHashMap<Key, Integer> expected = new LinkedDequeHashMap<Key, Integer>();
+        Key[] keys = new Key[40];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(i, i % 3);
+        }
+
+        Random random = new Random(7);
+        for (int step = 0; step < 20000; step++) {
+            Key key = keys[random.nextInt(keys.length)];
+            int value = random.nextInt(100);
+            switch (random.nextInt(6)) {
+            case 0:
+                dequeMap.add(key, value);
+                expected.add(key, value);
+                break;
+            case 1:
+                dequeMap.addLast(key, value);
+                expected.addLast(key, value);
+                break;
+            case 2:
+                assertEquals(expected.pop(key), dequeMap.pop(key));
+                break;
+            case 3:
+                assertEquals(expected.popLast(key), dequeMap.popLast(key));
+                break;
+            case 4:
+                assertEquals(expected.popN(key, 2), dequeMap.popN(key, 2));
+                break;
+            default:
+                if (random.nextInt(10) == 0) {
+                    dequeMap.clearKey(key);
+                    expected.clearKey(key);
+                }
+            }
+            assertEquals(expected.countOf(key), dequeMap.countOf(key));
+        }
+        assertEquals(expected.size(), dequeMap.size());
+        assertEquals(expected, dequeMap);
+        for (Key key : keys) {
+            List<Integer> values = expected.getAll(key);
+            assertEquals(values, dequeMap.getAll(key));
+        }
+    }
+
+    @Test
+    public void viewIteratorTest() {
+        // drive an iterator of a view and of a list with the same operations
+        OpenDequeHashMap<String, Integer> dequeMap = new OpenDequeHashMap<String, Integer>();
+        List<Integer> expected = new LinkedList<Integer>();
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            int index = random.nextInt(expected.size() + 1);
+            ListIterator<Integer> it = dequeMap.getAll("a").listIterator(index);
+            ListIterator<Integer> expectedIt = expected.listIterator(index);
+            boolean canModify = false;
+            for (int step = 0; step < 20; step++) {
+                int value = random.nextInt(100);
+                switch (random.nextInt(6)) {
+                case 0:
+                    assertEquals(expectedIt.hasNext(), it.hasNext());
+                    if (it.hasNext()) {
+                        assertEquals(expectedIt.next(), it.next());
+                        canModify = true;
+                    }
+                    break;
+                case 1:
+                    assertEquals(expectedIt.hasPrevious(), it.hasPrevious());
+                    if (it.hasPrevious()) {
+                        assertEquals(expectedIt.previous(), it.previous());
+                        canModify = true;
+                    }
+                    break;
+                case 2:
+                    if (canModify) {
+                        expectedIt.remove();
+                        it.remove();
+                        canModify = false;
+                    }
+                    break;
+                case 3:
+                    if (canModify) {
+                        expectedIt.set(value);
+                        it.set(value);
+                    }
+                    break;
+                default:
+                    expectedIt.add(value);
+                    it.add(value);
+                    canModify = false;
+                }
+                assertEquals(expectedIt.nextIndex(), it.nextIndex());
+            }
+            assertEquals(expected, dequeMap.getAll("a"));
+            assertEquals(expected.isEmpty(), !dequeMap.containsKey("a"));
+        }
+    }
+
+    @Test
+    public void viewComodificationTest() {
+        OpenDequeHashMap<String, Integer> dequeMap = new OpenDequeHashMap<String, Integer>();
+        dequeMap.addAllLast("a", asList(1, 2));
+        Iterator<Integer> it = dequeMap.getAll("a").iterator();
+        dequeMap.addLast("a", 3);
+        try {
+            it.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+
+        ListIterator<Integer> listIt = dequeMap.getAll("a").listIterator(3);
+        dequeMap.clearKey("a");
+        try {
+            listIt.previous();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        try {
+            listIt.add(4);
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        assertFalse(dequeMap.containsKey("a"));
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test for class KeyedExecutor.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class KeyedExecutorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void orderPerKeyTest() throws InterruptedException {
+        KeyedExecutor<Integer> executor = new KeyedExecutor<Integer>(pool, 3);
+        final int keys = 8;
+        final int perKey = 2000;
+        final int[] next = new int[keys];
+        final boolean[] running = new boolean[keys];
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(keys * perKey);
+
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                final int key = k;
+                final int sequence = i;
+                executor.execute(key, new Runnable() {
+                    @Override
+                    public void run() {
+                        // the tasks of a key are ordered by the executor,
+                        // so plain fields are safe unless it is broken
+                        if (running[key] || next[key] != sequence) {
+                            errors.incrementAndGet();
+                        }
+                        running[key] = true;
+                        next[key] = sequence + 1;
+                        running[key] = false;
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        for (int k = 0; k < keys; k++) {
+            assertEquals(perKey, next[k]);
+        }
+        waitForNoKeys(executor);
+    }
+
+    @Test
+    public void parallelAcrossKeysTest() throws InterruptedException {
+        KeyedExecutor<String> executor = new KeyedExecutor<String>(pool);
+        final CountDownLatch both = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable meet = new Runnable() {
+            @Override
+            public void run() {
+                both.countDown();
+                try {
+                    // only returns if the other key runs at the same time
+                    if (both.await(5, TimeUnit.SECONDS)) {
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    // fails by count
+                }
+            }
+        };
+        executor.execute("a", meet);
+        executor.execute("b", meet);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failingTaskTest() throws InterruptedException {
+        KeyedExecutor<String> executor = new KeyedExecutor<String>(pool);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("expected by the test");
+            }
+        });
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitForNoKeys(executor);
+        assertEquals(0, executor.getNumberOfTasks("a"));
+
+        try {
+            new KeyedExecutor<String>(pool, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectedWorkerTest() throws InterruptedException {
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        final CountDownLatch queued = new CountDownLatch(1);
+        KeyedExecutor<String> executor = new KeyedExecutor<String>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject.get()) {
+                    throw new RejectedExecutionException("expected by the test");
+                }
+                pool.execute(command);
+            }
+        }, 1);
+        Runnable nothing = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        // a rejected first task is not queued
+        try {
+            executor.execute("a", nothing);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(0, executor.getNumberOfTasks("a"));
+
+        // a rejected resubmission leaves the key to the next task
+        reject.set(false);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queued.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // fails by count
+                }
+                reject.set(true);
+            }
+        });
+        executor.execute("a", nothing);
+        queued.countDown();
+        waitForTasks(executor, "a", 1);
+        waitForStalledKeys(executor, 1);
+        reject.set(false);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitForNoKeys(executor);
+    }
+
+    @Test
+    public void stalledKeyTest() throws InterruptedException {
+        final AtomicBoolean reject = new AtomicBoolean(false);
+        KeyedExecutor<String> executor = new KeyedExecutor<String>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject.get()) {
+                    throw new RejectedExecutionException("expected by the test");
+                }
+                pool.execute(command);
+            }
+        }, 1);
+        Runnable nothing = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        // a task of another key resubmits the stalled worker
+        stall(executor, reject, "a");
+        reject.set(false);
+        executor.execute("b", nothing);
+        waitForNoKeys(executor);
+
+        // so does retryStalled, without a task
+        stall(executor, reject, "a");
+        try {
+            executor.retryStalled();
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, executor.getNumberOfStalledKeys());
+        reject.set(false);
+        executor.retryStalled();
+        assertEquals(0, executor.getNumberOfStalledKeys());
+        waitForNoKeys(executor);
+    }
+
+    /**
+     * Queues two tasks of the key, the first of which makes the executor
+     * reject the resubmission of the worker, and waits for the key to stall.
+     */
+    private void stall(KeyedExecutor<String> executor, final AtomicBoolean reject, String key)
+            throws InterruptedException {
+        final CountDownLatch queued = new CountDownLatch(1);
+        executor.execute(key, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queued.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // fails by count
+                }
+                reject.set(true);
+            }
+        });
+        executor.execute(key, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        queued.countDown();
+        waitForStalledKeys(executor, 1);
+        assertEquals(1, executor.getNumberOfTasks(key));
+    }
+
+    private static void waitForStalledKeys(KeyedExecutor<?> executor, int n)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && executor.getNumberOfStalledKeys() != n; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(n, executor.getNumberOfStalledKeys());
+    }
+
+    private static void waitForTasks(KeyedExecutor<String> executor, String key, int n)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && executor.getNumberOfTasks(key) != n; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(n, executor.getNumberOfTasks(key));
+    }
+
+    private static void waitForNoKeys(KeyedExecutor<?> executor) throws InterruptedException {
+        // the last task completes just before its worker removes it
+        for (int i = 0; i < 500 && executor.getNumberOfKeys() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getNumberOfKeys());
+    }
+}
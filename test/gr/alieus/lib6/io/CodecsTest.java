@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Stathis Aliprantis
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License version 3 as published
+ * by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with This program. If not, see http://www.gnu.org/licenses/.
+ */
+
+package gr.alieus.lib6.io;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+/**
+ * Test of BinaryCodecs, DeflateCodec and LzfCodec.
+ * 
+ * @author Stathis Aliprantis - alieus@hotmail.gr
+ */
+public class CodecsTest {
+
+    @Test
+    public void utf8Test() throws Exception {
+        String[] values = {"", "abc", "\u00e9\u03b1\u0436", "\u20ac\u4e2d",
+                "\ud83d\ude00 smile", "bad \ud83d pair"};
+        for (String value : values) {
+            int size = BinaryCodecs.utf8().sizeOf(value);
+            assertEquals(value, value.getBytes("UTF-8").length, size);
+            ByteBuffer buffer = ByteBuffer.allocate(size + 4);
+            buffer.position(2);
+            BinaryCodecs.utf8().write(value, buffer);
+            assertEquals(size + 2, buffer.position());
+            assertArrayEquals(value.getBytes("UTF-8"),
+                    Arrays.copyOfRange(buffer.array(), 2, size + 2));
+            buffer.position(2);
+            String expected = new String(value.getBytes("UTF-8"), "UTF-8");
+            assertEquals(expected, BinaryCodecs.utf8().read(buffer, size));
+            assertEquals(size + 2, buffer.position());
+        }
+    }
+
+    @Test
+    public void deflateTest() {
+        DeflateCodec codec = new DeflateCodec();
+        Random random = new Random(7);
+        for (int n = 0; n < 20; n++) {
+            byte[] data = new byte[random.nextInt(5000)];
+            for (int i = 0; i < data.length; i++) {
+                // mostly repetitive, partly random
+                data[i] = (byte) (i % 7 == 0 ? random.nextInt() : i % 13);
+            }
+            byte[] compressed = codec.compress(data, 0, data.length);
+            assertArrayEquals(data, codec.decompress(compressed, data.length));
+        }
+        byte[] data = new byte[1000];
+        byte[] compressed = codec.compress(data, 0, data.length);
+        try {
+            codec.decompress(Arrays.copyOf(compressed, compressed.length / 2), data.length);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        codec.close();
+    }
+
+    @Test(timeout = 2000)
+    public void deflateDictionaryTest() {
+        byte[] data = new byte[1000];
+        Deflater deflater = new Deflater();
+        deflater.setDictionary(new byte[] {0, 0, 0, 0});
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] compressed = new byte[100];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+
+        // data that needs a preset dictionary cannot be decompressed
+        DeflateCodec codec = new DeflateCodec();
+        try {
+            codec.decompress(Arrays.copyOf(compressed, length), data.length);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        codec.close();
+    }
+
+    @Test
+    public void lzfTest() {
+        LzfCodec codec = new LzfCodec();
+        Random random = new Random(7);
+        for (int n = 0; n < 50; n++) {
+            byte[] data = new byte[random.nextInt(20000)];
+            int period = 1 + random.nextInt(300);
+            for (int i = 0; i < data.length; i++) {
+                // mostly repetitive, partly random
+                data[i] = (byte) (i % 7 == 0 ? random.nextInt() : i % period);
+            }
+            int offset = data.length == 0 ? 0 : random.nextInt(data.length);
+            byte[] compressed = codec.compress(data, offset, data.length - offset);
+            assertArrayEquals(Arrays.copyOfRange(data, offset, data.length),
+                    codec.decompress(compressed, data.length - offset));
+        }
+
+        // random bytes do not compress, long runs compress well
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        byte[] compressed = codec.compress(data, 0, data.length);
+        assertTrue(compressed.length <= data.length + data.length / 32 + 1);
+        assertArrayEquals(data, codec.decompress(compressed, data.length));
+        data = new byte[5000];
+        compressed = codec.compress(data, 0, data.length);
+        assertTrue(compressed.length < 100);
+        assertArrayEquals(data, codec.decompress(compressed, data.length));
+        assertEquals(0, codec.compress(data, 0, 0).length);
+
+        try {
+            codec.decompress(Arrays.copyOf(compressed, compressed.length / 2), data.length);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            codec.decompress(new byte[] {(byte) 0xe0}, data.length);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}